@@ -0,0 +1,65 @@
+package cz.cuni.mff.ufal.textan.benchmarks;
+
+import cz.cuni.mff.ufal.textan.commons.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures JAXB marshalling and unmarshalling of {@link Document}, which is sent in SOAP messages.
+ * The context is shared as in web services, marshallers are created for every call as they are not thread safe.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocumentMarshallingBenchmark {
+
+    /** Number of characters of the document text. */
+    @Param({"1000", "10000", "100000"})
+    public int length;
+
+    private JAXBContext context;
+
+    private Document document;
+
+    private byte[] xml;
+
+    @Setup
+    public void setup() throws JAXBException {
+        context = JAXBContext.newInstance(Document.class);
+        document = new Document(Reports.create(length));
+        xml = marshal();
+    }
+
+    @Benchmark
+    public byte[] marshal() throws JAXBException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(length + 256);
+        final Marshaller marshaller = context.createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
+        marshaller.marshal(document, out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public Object unmarshal() throws JAXBException {
+        return context.createUnmarshaller().unmarshal(new ByteArrayInputStream(xml));
+    }
+}
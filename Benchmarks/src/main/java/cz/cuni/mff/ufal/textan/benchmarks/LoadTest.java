@@ -0,0 +1,397 @@
+package cz.cuni.mff.ufal.textan.benchmarks;
+
+import cz.cuni.mff.ufal.textan.commons.Document;
+import cz.cuni.mff.ufal.textan.commons.ISimpleWebService;
+import cz.cuni.mff.ufal.textan.server.AppEntry;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.eclipse.jetty.server.Server;
+
+import javax.xml.namespace.QName;
+import javax.xml.ws.Service;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test of the SOAP interface of the server.
+ *
+ * Starts the server in this JVM without analysis caches, so repeated documents are analysed again
+ * (or uses a running server), and lets many concurrent clients call
+ * operations of {@link ISimpleWebService} in a configured mix with documents of log-normally
+ * distributed lengths. Latencies are recorded to HdrHistograms, throughput and percentiles are reported
+ * periodically and for the whole measurement, errors are counted over the same intervals.
+ * Without a target rate every client sends its next request when the previous one returns (closed loop).
+ * With a rate, requests are scheduled at fixed intervals and latency is measured from the scheduled time,
+ * so stalls of the server are not hidden by clients waiting for them (coordinated omission).
+ * Settings are described in LoadTest.defprops.
+ */
+public class LoadTest {
+
+    /** Path to default property file. The file should be inside the jar. */
+    private static final String DEFAULT_JAR_PROPERTIES = "LoadTest.defprops";
+
+    private static final String NAMESPACE = "http://server.textan.ufal.mff.cuni.cz/";
+
+    /** Maximal recorded latency in microseconds, longer latencies are recorded as this value. */
+    private static final long MAX_LATENCY = TimeUnit.MINUTES.toMicros(10);
+
+    /** Percentiles printed in reports. */
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final Properties settings;
+
+    private final Operation[] operations;
+
+    /** Cumulative frequencies of operations, an operation is chosen by binary search. */
+    private final int[] cumulativeWeights;
+
+    private final Document[] documents;
+
+    /** Latencies in microseconds of each operation since the last report. */
+    private final Recorder[] recorders;
+
+    /** Latencies in microseconds of each operation during measurement. */
+    private final Histogram[] totals;
+
+    /** Errors of each operation since the last report. */
+    private final AtomicLong[] intervalErrors;
+
+    /** Errors of each operation during measurement. */
+    private final long[] errors;
+
+    private volatile boolean running = true;
+
+    public static void main(String[] args) throws Exception {
+        final Properties settings = new Properties();
+        try (InputStream is = LoadTest.class.getClassLoader().getResourceAsStream(DEFAULT_JAR_PROPERTIES)) {
+            settings.load(is);
+        }
+        settings.putAll(AppEntry.loadSettings(args));
+        new LoadTest(settings).run();
+    }
+
+    /**
+     * Only constructor.
+     * @param settings The settings of load test and server
+     */
+    public LoadTest(Properties settings) {
+        this.settings = settings;
+
+        final List<Operation> operations = new ArrayList<>();
+        final List<Integer> weights = new ArrayList<>();
+        for (String item : settings.getProperty("load.mix").split(",")) {
+            String[] pair = item.trim().split("=");
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight > 0) {
+                operations.add(Operation.fromName(pair[0].trim()));
+                weights.add(weight);
+            }
+        }
+        if (operations.isEmpty()) {
+            throw new IllegalArgumentException("No operation in load.mix");
+        }
+        this.operations = operations.toArray(new Operation[operations.size()]);
+        this.cumulativeWeights = new int[weights.size()];
+        int sum = 0;
+        for (int i = 0; i < weights.size(); i++) {
+            sum += weights.get(i);
+            cumulativeWeights[i] = sum;
+        }
+
+        final Random random = new Random(getLong("load.seed"));
+        final double median = Double.parseDouble(settings.getProperty("load.document.median"));
+        final double sigma = Double.parseDouble(settings.getProperty("load.document.sigma"));
+        final int max = getInt("load.document.max");
+        this.documents = new Document[getInt("load.document.count")];
+        for (int i = 0; i < documents.length; i++) {
+            int length = (int) Math.min(max, Math.max(1, Math.round(median * Math.exp(sigma * random.nextGaussian()))));
+            documents[i] = new Document(Reports.random(length, random));
+        }
+
+        this.recorders = new Recorder[this.operations.length];
+        this.totals = new Histogram[this.operations.length];
+        this.intervalErrors = new AtomicLong[this.operations.length];
+        this.errors = new long[this.operations.length];
+        for (int i = 0; i < this.operations.length; i++) {
+            recorders[i] = new Recorder(MAX_LATENCY, 3);
+            totals[i] = new Histogram(MAX_LATENCY, 3);
+            intervalErrors[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * Runs the load test and prints reports to standard output.
+     * @throws Exception if the server cannot be started or the test is interrupted
+     */
+    public void run() throws Exception {
+        String url = settings.getProperty("load.url", "").trim();
+        Server server = null;
+        if (url.isEmpty()) {
+            settings.setProperty("server.port", settings.getProperty("load.port"));
+            settings.setProperty("db.url", settings.getProperty("load.db.url"));
+            settings.setProperty("analysis.cache.maxBytes", "0");
+            settings.setProperty("analysis.cache.directory", "");
+            settings.setProperty("analysis.sentenceCacheSize", "0");
+            server = AppEntry.createServer(settings);
+            server.start();
+            url = "http://localhost:" + getInt("load.port");
+        }
+
+        final int clients = getInt("load.clients");
+        //connections kept alive by HttpURLConnection, one per client
+        System.setProperty("http.maxConnections", Integer.toString(clients));
+
+        try {
+            final URL wsdl = new URL(url + "/soap/simple?wsdl");
+            final Service service = Service.create(wsdl, new QName(NAMESPACE, "SimpleWebService"));
+            final double rate = Double.parseDouble(settings.getProperty("load.rate"));
+            final long interval = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) * clients / rate) : 0;
+            final long start = System.nanoTime();
+
+            final CountDownLatch finished = new CountDownLatch(clients);
+            for (int i = 0; i < clients; i++) {
+                final ISimpleWebService port = service.getPort(ISimpleWebService.class);
+                final Random random = new Random(getLong("load.seed") + i + 1);
+                //clients with a rate are spread over the interval
+                final long first = start + interval * i / clients;
+                Thread thread = new Thread(() -> {
+                    try {
+                        drive(port, random, first, interval);
+                    } finally {
+                        finished.countDown();
+                    }
+                }, "load-client-" + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
+
+            System.out.printf("%d clients, rate %s, warm-up %d s, measurement %d s, %s%n",
+                    clients, rate > 0 ? rate + " requests/s" : "unlimited",
+                    getInt("load.warmup"), getInt("load.duration"), url);
+
+            final long warmupEnd = start + TimeUnit.SECONDS.toNanos(getInt("load.warmup"));
+            final long end = warmupEnd + TimeUnit.SECONDS.toNanos(getInt("load.duration"));
+            final long reportInterval = TimeUnit.SECONDS.toNanos(getInt("load.reportInterval"));
+            long last = start;
+            while (last < end) {
+                long now = System.nanoTime();
+                long next = Math.min(end, last + reportInterval);
+                if (now < warmupEnd && next > warmupEnd) {
+                    next = warmupEnd;
+                }
+                final boolean warmup = next <= warmupEnd;
+                TimeUnit.NANOSECONDS.sleep(next - now);
+                now = System.nanoTime();
+                report(now - last, warmup);
+                last = now;
+            }
+
+            running = false;
+            finished.await(10, TimeUnit.SECONDS);
+            summarize(end - warmupEnd);
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+
+    /**
+     * Sends requests until the test ends.
+     * @param port The port of the client
+     * @param random The source of randomness of the client
+     * @param first The time of the first request in nanoseconds
+     * @param interval The nanoseconds between requests, 0 to send requests back to back
+     */
+    private void drive(ISimpleWebService port, Random random, long first, long interval) {
+        long scheduled = first;
+        while (running) {
+            if (interval > 0) {
+                long delay = scheduled - System.nanoTime();
+                if (delay > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(delay);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            } else {
+                scheduled = System.nanoTime();
+            }
+
+            int index = choose(random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]));
+            Document document = documents[random.nextInt(documents.length)];
+            try {
+                operations[index].call(port, document);
+                long latency = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - scheduled);
+                recorders[index].recordValue(Math.min(latency, MAX_LATENCY));
+            } catch (RuntimeException e) {
+                intervalErrors[index].incrementAndGet();
+            }
+            scheduled += interval;
+        }
+    }
+
+    /**
+     * Chooses operation by cumulative frequencies.
+     * @param value The random number less than the sum of frequencies
+     * @return Returns index of the operation
+     */
+    private int choose(int value) {
+        int low = 0;
+        int high = cumulativeWeights.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulativeWeights[middle] <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Prints throughput, latencies and errors since the last report and adds them to the totals.
+     * @param elapsed The nanoseconds since the last report
+     * @param warmup Whether the interval is a part of warm-up
+     */
+    private void report(long elapsed, boolean warmup) {
+        final Histogram interval = new Histogram(MAX_LATENCY, 3);
+        long intervalErrorCount = 0;
+        for (int i = 0; i < operations.length; i++) {
+            Histogram histogram = recorders[i].getIntervalHistogram();
+            long errorCount = intervalErrors[i].getAndSet(0);
+            interval.add(histogram);
+            intervalErrorCount += errorCount;
+            if (!warmup) {
+                totals[i].add(histogram);
+                errors[i] += errorCount;
+            }
+        }
+        System.out.printf("%s %8.1f requests/s  p50 %8.2f ms  p99 %8.2f ms  max %8.2f ms  errors %d%n",
+                warmup ? "warm-up" : "measure",
+                interval.getTotalCount() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed,
+                interval.getValueAtPercentile(50) / 1000.0,
+                interval.getValueAtPercentile(99) / 1000.0,
+                interval.getMaxValue() / 1000.0,
+                intervalErrorCount);
+    }
+
+    /**
+     * Prints throughput and latency percentiles of each operation during measurement
+     * and writes latency distributions to the output file.
+     * @param elapsed The nanoseconds of measurement
+     * @throws IOException if the output file cannot be written
+     */
+    private void summarize(long elapsed) throws IOException {
+        final Histogram all = new Histogram(MAX_LATENCY, 3);
+        System.out.println();
+        System.out.printf("%-14s %10s %8s %12s", "operation", "requests", "errors", "requests/s");
+        for (double percentile : PERCENTILES) {
+            System.out.printf(" %10s", "p" + format(percentile));
+        }
+        System.out.printf(" %10s%n", "max");
+        for (int i = 0; i < operations.length; i++) {
+            all.add(totals[i]);
+            summarize(operations[i].label, totals[i], errors[i], elapsed);
+        }
+        long errorCount = 0;
+        for (long error : errors) {
+            errorCount += error;
+        }
+        summarize("total", all, errorCount, elapsed);
+        System.out.println("Latencies in milliseconds.");
+
+        final String output = settings.getProperty("load.output", "").trim();
+        if (!output.isEmpty()) {
+            try (PrintStream out = new PrintStream(new FileOutputStream(output), false, "UTF-8")) {
+                for (int i = 0; i < operations.length; i++) {
+                    out.println("#" + operations[i].label);
+                    totals[i].outputPercentileDistribution(out, 1000.0);
+                }
+                out.println("#total");
+                all.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+    }
+
+    private static void summarize(String name, Histogram histogram, long errors, long elapsed) {
+        System.out.printf("%-14s %10d %8d %12.1f", name, histogram.getTotalCount(), errors,
+                histogram.getTotalCount() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed);
+        for (double percentile : PERCENTILES) {
+            System.out.printf(" %10.2f", histogram.getValueAtPercentile(percentile) / 1000.0);
+        }
+        System.out.printf(" %10.2f%n", histogram.getMaxValue() / 1000.0);
+    }
+
+    private static String format(double percentile) {
+        return percentile == Math.rint(percentile) ? Integer.toString((int) percentile) : Double.toString(percentile);
+    }
+
+    private int getInt(String key) {
+        return Integer.parseInt(settings.getProperty(key).trim());
+    }
+
+    private long getLong(String key) {
+        return Long.parseLong(settings.getProperty(key).trim());
+    }
+
+    /**
+     * Operations of the simple web service.
+     */
+    private enum Operation {
+
+        HELLO_WORLD("helloWorld") {
+            @Override
+            void call(ISimpleWebService service, Document document) {
+                service.helloWorld();
+            }
+        },
+        TO_DOCUMENT("toDocument") {
+            @Override
+            void call(ISimpleWebService service, Document document) {
+                service.toDocument(document.getText());
+            }
+        },
+        FROM_DOCUMENT("fromDocument") {
+            @Override
+            void call(ISimpleWebService service, Document document) {
+                service.fromDocument(document);
+            }
+        },
+        GET_ENTITIES("getEntities") {
+            @Override
+            void call(ISimpleWebService service, Document document) {
+                service.getEntities(document);
+            }
+        };
+
+        final String label;
+
+        Operation(String name) {
+            this.label = name;
+        }
+
+        abstract void call(ISimpleWebService service, Document document);
+
+        static Operation fromName(String name) {
+            for (Operation operation : values()) {
+                if (operation.label.equals(name)) {
+                    return operation;
+                }
+            }
+            throw new IllegalArgumentException("Unknown operation " + name);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package cz.cuni.mff.ufal.textan.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Generates texts of reports used by benchmarks.
+ */
+final class Reports {
+
+    /** Paragraph the reports are made of, it contains names, numbers and punctuation. */
+    private static final String PARAGRAPH =
+            "Dne 12. 3. 2013 v 16:40 byl v Praze na Václavském náměstí zadržen Karel Novák, nar. 1975,"
+            + " který se pokusil odcizit peněženku paní Janě Dvořákové. Podezřelý uvedl, že bydlí"
+            + " v Brně, ulice Kounicova 12, a že poškozenou nezná. Na místě byla přivolána hlídka"
+            + " Policie ČR (služebna Praha 1), která zajistila kamerový záznam.\n";
+
+    /** Template of paragraphs of random reports, it is filled by names, places and numbers. */
+    private static final String TEMPLATE =
+            "Dne %d. %d. %d v %d:%02d byl v obci %s zadržen %s, nar. %d, který se pokusil odcizit"
+            + " peněženku paní %s. Podezřelý uvedl, že bydlí v obci %s, číslo popisné %d, a že poškozenou"
+            + " nezná. Na místě byla přivolána hlídka Policie ČR, která zajistila kamerový záznam.\n";
+
+    private static final String[] MEN = {"Karel Novák", "Jan Svoboda", "Petr Dvořák", "Josef Černý", "Pavel Procházka", "Martin Kučera"};
+
+    private static final String[] WOMEN = {"Jana Dvořáková", "Marie Nováková", "Eva Veselá", "Hana Horáková", "Lenka Marková"};
+
+    private static final String[] PLACES = {"Praha", "Brno", "Ostrava", "Plzeň", "Liberec", "Olomouc", "Kladno", "Zlín"};
+
+    private Reports() {}
+
+    /**
+     * Creates report of given length from repeated paragraphs.
+     * @param length The number of characters of the report
+     * @return Returns the report
+     */
+    static String create(int length) {
+        final StringBuilder report = new StringBuilder(length + PARAGRAPH.length());
+        while (report.length() < length) {
+            report.append(PARAGRAPH);
+        }
+        report.setLength(length);
+        return report.toString();
+    }
+
+    /**
+     * Creates report of given length from paragraphs with random names, places and numbers,
+     * so reports and most of their sentences differ.
+     * @param length The number of characters of the report
+     * @param random The source of randomness
+     * @return Returns the report
+     */
+    static String random(int length, Random random) {
+        final StringBuilder report = new StringBuilder(length + TEMPLATE.length() + 64);
+        while (report.length() < length) {
+            report.append(String.format(TEMPLATE,
+                    1 + random.nextInt(28), 1 + random.nextInt(12), 2000 + random.nextInt(14),
+                    random.nextInt(24), random.nextInt(60),
+                    pick(PLACES, random), pick(MEN, random), 1940 + random.nextInt(60),
+                    pick(WOMEN, random), pick(PLACES, random), 1 + random.nextInt(2000)));
+        }
+        report.setLength(length);
+        return report.toString();
+    }
+
+    private static String pick(String[] items, Random random) {
+        return items[random.nextInt(items.length)];
+    }
+}
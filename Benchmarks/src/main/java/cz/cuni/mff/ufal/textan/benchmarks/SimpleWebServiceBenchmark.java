@@ -0,0 +1,96 @@
+package cz.cuni.mff.ufal.textan.benchmarks;
+
+import cz.cuni.mff.ufal.textan.commons.Document;
+import cz.cuni.mff.ufal.textan.commons.Entity;
+import cz.cuni.mff.ufal.textan.commons.ISimpleWebService;
+import cz.cuni.mff.ufal.textan.server.AppEntry;
+import org.eclipse.jetty.server.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.namespace.QName;
+import javax.xml.ws.Service;
+import java.net.URL;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures round trips of {@link ISimpleWebService} calls over SOAP to a server running in the benchmark JVM.
+ *
+ * The server is created by {@link AppEntry#createServer(Properties)} with default settings,
+ * except that it listens on a separate port, uses an in-memory database and caches neither
+ * analysis results nor labels of sentences, so every call of getEntities is analysed.
+ * The document is a random report, so its sentences differ as in real reports.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimpleWebServiceBenchmark {
+
+    private static final String NAMESPACE = "http://server.textan.ufal.mff.cuni.cz/";
+
+    private static final int PORT = 9190;
+
+    /** Number of characters of the document text. */
+    @Param({"1000", "10000"})
+    public int length;
+
+    private Server server;
+
+    private ISimpleWebService service;
+
+    private Document document;
+
+    @Setup
+    public void setup() throws Exception {
+        final Properties settings = AppEntry.loadSettings(new String[0]);
+        settings.setProperty("server.port", Integer.toString(PORT));
+        settings.setProperty("server.keepalive.enabled", "false");
+        settings.setProperty("server.monitor.interval", "0");
+        settings.setProperty("db.url", "jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1");
+        settings.setProperty("analysis.cache.maxBytes", "0");
+        settings.setProperty("analysis.cache.directory", "");
+        settings.setProperty("analysis.sentenceCacheSize", "0");
+        server = AppEntry.createServer(settings);
+        server.start();
+
+        final URL wsdl = new URL("http://localhost:" + PORT + "/soap/simple?wsdl");
+        service = Service.create(wsdl, new QName(NAMESPACE, "SimpleWebService")).getPort(ISimpleWebService.class);
+        document = new Document(Reports.random(length, new Random(length)));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Benchmark
+    public String helloWorld() {
+        return service.helloWorld();
+    }
+
+    @Benchmark
+    public Document toDocument() {
+        return service.toDocument(document.getText());
+    }
+
+    @Benchmark
+    public List<Entity> getEntities() {
+        return service.getEntities(document);
+    }
+}
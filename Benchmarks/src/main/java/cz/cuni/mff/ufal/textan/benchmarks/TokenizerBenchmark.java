@@ -0,0 +1,46 @@
+package cz.cuni.mff.ufal.textan.benchmarks;
+
+import cz.cuni.mff.ufal.textan.commons.utils.Tokenizer;
+import cz.cuni.mff.ufal.textan.commons.utils.Tokens;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures splitting of reports to words, punctuation and spaces, the client splits every report
+ * displayed for marking of entities ({@code ReportEntitiesController#setReport}) this way.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark {
+
+    /** Number of characters of the report. */
+    @Param({"1000", "10000", "100000"})
+    public int length;
+
+    private String report;
+
+    @Setup
+    public void setup() {
+        report = Reports.create(length);
+    }
+
+    @Benchmark
+    public Tokens tokenize() {
+        return Tokenizer.tokenize(report);
+    }
+}
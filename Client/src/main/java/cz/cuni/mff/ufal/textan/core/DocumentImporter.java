@@ -0,0 +1,75 @@
+package cz.cuni.mff.ufal.textan.core;
+
+import cz.cuni.mff.ufal.textan.commons.DocumentData;
+import cz.cuni.mff.ufal.textan.commons.IDocumentIngestionService;
+import cz.cuni.mff.ufal.textan.commons.IngestionResult;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import javafx.concurrent.Task;
+import javax.activation.DataHandler;
+import javax.activation.FileDataSource;
+
+/**
+ * Task importing text files as new documents. Tasks are created by {@link ServiceExecutor}.
+ *
+ * Files are sent to the server in batches as MTOM attachments which are read straight
+ * from the files while the request is being sent, so files of any size are imported
+ * without loading them into memory. Progress of the task is the number of bytes
+ * of files of finished batches, results are in the same order as the files.
+ */
+public class DocumentImporter extends Task<List<IngestionResult>> {
+
+    /** Locator of clients of the server. */
+    private final ServiceLocator locator;
+
+    /** Imported files. */
+    private final List<File> files;
+
+    /** Number of files sent in one request. */
+    private final int batchSize;
+
+    /**
+     * Only constructor.
+     * @param locator locator of clients of the server
+     * @param files UTF-8 encoded text files to import
+     * @param batchSize number of files sent in one request
+     */
+    DocumentImporter(final ServiceLocator locator, final List<File> files, final int batchSize) {
+        this.locator = locator;
+        this.files = new ArrayList<>(files);
+        this.batchSize = Math.max(batchSize, 1);
+        updateMessage("Čekání na spuštění...");
+    }
+
+    @Override
+    protected List<IngestionResult> call() throws Exception {
+        updateMessage("Připojování k serveru...");
+        final IDocumentIngestionService service = locator.getDocumentIngestionService();
+
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        long done = 0;
+        updateProgress(done, Math.max(total, 1));
+
+        final List<IngestionResult> results = new ArrayList<>(files.size());
+        for (int from = 0; from < files.size(); from += batchSize) {
+            if (isCancelled()) {
+                return results;
+            }
+            final int to = Math.min(from + batchSize, files.size());
+            final List<DocumentData> batch = new ArrayList<>(to - from);
+            for (File file : files.subList(from, to)) {
+                batch.add(new DocumentData(file.getName(), new DataHandler(new FileDataSource(file))));
+                done += file.length();
+            }
+            updateMessage(String.format("Importování souborů %d až %d z %d...", from + 1, to, files.size()));
+            results.addAll(service.ingestDocuments(batch));
+            updateProgress(done, Math.max(total, 1));
+        }
+        updateMessage("Hotovo");
+        return results;
+    }
+}
@@ -0,0 +1,157 @@
+package cz.cuni.mff.ufal.textan.core;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import cz.cuni.mff.ufal.textan.commons.Document;
+import cz.cuni.mff.ufal.textan.commons.Entity;
+import cz.cuni.mff.ufal.textan.commons.ISimpleWebService;
+import cz.cuni.mff.ufal.textan.commons.json.JsonCodec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.xml.ws.WebServiceException;
+
+/**
+ * Client of {@link ISimpleWebService} using JSON over HTTP instead of SOAP.
+ * See {@link JsonCodec} for description of the protocol.
+ */
+public class JsonSimpleWebService implements ISimpleWebService {
+
+    /** Size of chunks of request body, documents are streamed without buffering. */
+    private static final int CHUNK_SIZE = 8192;
+
+    /** URL of server root, e.g. http://localhost:9100. */
+    private final String serverUrl;
+
+    /** Whether gzipped responses are accepted. */
+    private final boolean compression;
+
+    /** Whether requests are gzipped. */
+    private final boolean requestCompression;
+
+    /**
+     * Only constructor.
+     * @param serverUrl URL of server root
+     * @param compression whether gzipped responses are accepted
+     * @param requestCompression whether requests are gzipped, the server must accept gzipped requests
+     */
+    public JsonSimpleWebService(final String serverUrl, final boolean compression, final boolean requestCompression) {
+        this.serverUrl = serverUrl.endsWith("/") ? serverUrl.substring(0, serverUrl.length() - 1) : serverUrl;
+        this.compression = compression;
+        this.requestCompression = requestCompression;
+    }
+
+    @Override
+    public String helloWorld() {
+        return call("helloWorld", null, null, JsonParser::getValueAsString);
+    }
+
+    @Override
+    public String hello(final String name) {
+        return call("hello", "name", g -> g.writeString(name), JsonParser::getValueAsString);
+    }
+
+    @Override
+    public Document toDocument(final String text) {
+        return call("toDocument", "text", g -> g.writeString(text), JsonCodec::readDocument);
+    }
+
+    @Override
+    public String fromDocument(final Document document) {
+        return call("fromDocument", "document", g -> JsonCodec.writeDocument(g, document), JsonParser::getValueAsString);
+    }
+
+    @Override
+    public List<Entity> getEntities(final Document document) {
+        return call("getEntities", "document", g -> JsonCodec.writeDocument(g, document), JsonCodec::readEntities);
+    }
+
+    /**
+     * Calls operation with at most one parameter.
+     * @param operation name of operation
+     * @param parameter name of parameter or null if there is no parameter
+     * @param writer writer of value of parameter
+     * @param reader reader of result, the parser is positioned at the start of result
+     * @param <T> type of result
+     * @return result of operation
+     * @throws WebServiceException if the call fails
+     */
+    private <T> T call(final String operation, final String parameter, final ValueWriter writer, final ValueReader<T> reader) {
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) new URL(serverUrl + JsonCodec.SIMPLE_PATH + operation).openConnection();
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", JsonCodec.CONTENT_TYPE);
+            connection.setRequestProperty("Accept", JsonCodec.CONTENT_TYPE);
+            connection.setDoOutput(true);
+            connection.setChunkedStreamingMode(CHUNK_SIZE);
+            if (compression) {
+                connection.setRequestProperty("Accept-Encoding", "gzip");
+            }
+            if (requestCompression) {
+                connection.setRequestProperty("Content-Encoding", "gzip");
+            }
+            try (final OutputStream os = requestCompression ? new GZIPOutputStream(connection.getOutputStream(), CHUNK_SIZE) : connection.getOutputStream();
+                 final JsonGenerator generator = JsonCodec.FACTORY.createGenerator(os)) {
+                generator.writeStartObject();
+                if (parameter != null) {
+                    generator.writeFieldName(parameter);
+                    writer.write(generator);
+                }
+                generator.writeEndObject();
+            }
+
+            final boolean ok = connection.getResponseCode() == HttpURLConnection.HTTP_OK;
+            try (final InputStream is = ok ? connection.getInputStream() : connection.getErrorStream()) {
+                if (is == null) {
+                    throw new WebServiceException("HTTP " + connection.getResponseCode());
+                }
+                final boolean gzipped = "gzip".equalsIgnoreCase(connection.getContentEncoding());
+                try (final JsonParser parser = JsonCodec.FACTORY.createParser(gzipped ? new GZIPInputStream(is) : is)) {
+                    parser.nextToken();
+                    JsonCodec.expect(parser, JsonToken.START_OBJECT);
+                    T result = null;
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        final String field = parser.getCurrentName();
+                        parser.nextToken();
+                        if (JsonCodec.RETURN.equals(field)) {
+                            result = reader.read(parser);
+                        } else if (JsonCodec.ERROR.equals(field)) {
+                            throw new WebServiceException(parser.getValueAsString());
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    if (!ok) {
+                        throw new WebServiceException("HTTP " + connection.getResponseCode());
+                    }
+                    return result;
+                }
+            }
+        } catch (IOException e) {
+            throw new WebServiceException(e);
+        }
+    }
+
+    /**
+     * Writer of value of parameter.
+     */
+    @FunctionalInterface
+    private interface ValueWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    /**
+     * Reader of result.
+     * @param <T> type of result
+     */
+    @FunctionalInterface
+    private interface ValueReader<T> {
+        T read(JsonParser parser) throws IOException;
+    }
+}
@@ -0,0 +1,136 @@
+package cz.cuni.mff.ufal.textan.core;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
+import javafx.event.EventHandler;
+
+/**
+ * Runs all calls of the server in background, so the JavaFX application thread never waits for the server.
+ *
+ * Calls are run by a fixed number of threads and at most a fixed number of calls wait in queue,
+ * the oldest waiting call is cancelled when the queue is full, as the user is no longer
+ * interested in its result most likely. Calls with equal keys are coalesced, a call submitted
+ * while an equal call is unfinished gets the unfinished task.
+ * Methods must be called from the JavaFX application thread.
+ */
+public class ServiceExecutor {
+
+    /** Locator of clients of the server. */
+    private final ServiceLocator locator;
+
+    /** Threads calling the server. */
+    private final ThreadPoolExecutor executor;
+
+    /** Unfinished tasks by their keys. */
+    private final Map<Object, ServiceTask<?>> tasks = new HashMap<>();
+
+    /** Number of files sent to the server in one request of import. */
+    private final int importBatchSize;
+
+    /**
+     * Only constructor.
+     * Property "client.threads" is the number of threads and
+     * property "client.queue" is the maximal number of waiting calls and
+     * property "import.batchSize" is the number of files sent in one request of import.
+     * @param locator locator of clients of the server
+     * @param settings settings of the application
+     */
+    public ServiceExecutor(final ServiceLocator locator, final Properties settings) {
+        this.locator = locator;
+        final int threads = Integer.parseInt(settings.getProperty("client.threads", "4"));
+        final int queue = Integer.parseInt(settings.getProperty("client.queue", "32"));
+        importBatchSize = Integer.parseInt(settings.getProperty("import.batchSize", "16"));
+        final AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queue),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "server-call-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, pool) -> {
+                    if (pool.isShutdown()) {
+                        ((Task<?>) runnable).cancel(false);
+                        return;
+                    }
+                    final Runnable oldest = pool.getQueue().poll();
+                    if (oldest != null) {
+                        ((Task<?>) oldest).cancel(false);
+                    }
+                    pool.execute(runnable);
+                });
+    }
+
+    /**
+     * Submits call of the server.
+     * @param <T> type of result
+     * @param key key of the call or null if the call should not be coalesced
+     * @param call call of the server
+     * @return task of the call, it is the unfinished task of equal key if there is any
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ServiceTask<T> submit(final Object key, final ServiceTask.Call<T> call) {
+        if (key != null) {
+            final ServiceTask<?> unfinished = tasks.get(key);
+            if (unfinished != null) {
+                return (ServiceTask<T>) unfinished;
+            }
+        }
+        final ServiceTask<T> task = new ServiceTask<>(locator.getSimpleWebService(), call);
+        if (key != null) {
+            tasks.put(key, task);
+            final EventHandler<WorkerStateEvent> remove = e -> tasks.remove(key, task);
+            task.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, remove);
+            task.addEventHandler(WorkerStateEvent.WORKER_STATE_FAILED, remove);
+            task.addEventHandler(WorkerStateEvent.WORKER_STATE_CANCELLED, remove);
+        }
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Starts import of text files as new documents. The import runs in its own thread,
+     * so it is never cancelled by a full queue and other calls do not wait for it.
+     * @param files UTF-8 encoded text files to import
+     * @return task of the import
+     */
+    public DocumentImporter importFiles(final List<File> files) {
+        final DocumentImporter importer = new DocumentImporter(locator, files, importBatchSize);
+        final Thread thread = new Thread(importer, "document-import");
+        thread.setDaemon(true);
+        thread.start();
+        return importer;
+    }
+
+    /**
+     * Cancels unfinished call. Callers sharing the coalesced task are affected too.
+     * @param key key of the call
+     */
+    public void cancel(final Object key) {
+        final ServiceTask<?> task = tasks.get(key);
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * Cancels all calls and stops the threads.
+     */
+    public void shutdown() {
+        for (ServiceTask<?> task : tasks.values().toArray(new ServiceTask<?>[tasks.size()])) {
+            task.cancel();
+        }
+        for (Runnable waiting : executor.shutdownNow()) {
+            ((Task<?>) waiting).cancel(false);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package cz.cuni.mff.ufal.textan.core;
+
+import cz.cuni.mff.ufal.textan.commons.IDocumentIngestionService;
+import cz.cuni.mff.ufal.textan.commons.ISimpleWebService;
+import cz.cuni.mff.ufal.textan.commons.ISimpleWebServiceAsync;
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import javax.xml.namespace.QName;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.Service;
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.handler.MessageContext;
+import javax.xml.ws.soap.SOAPBinding;
+
+/**
+ * Creates clients of the server once and shares them.
+ *
+ * SOAP ports are built from WSDL bundled with the client or from a local copy
+ * given by property "server.wsdl", so no request is sent to the server until
+ * the first call. Only the endpoint address is taken from property "server.url".
+ * Building a port takes a while, so it is done by background thread which is started
+ * in the constructor. Ports are safe to share as their request context is not
+ * changed after they are built, and HTTP connections are kept alive between calls.
+ * The port of document ingestion service is built without WSDL when it is needed first.
+ */
+public class ServiceLocator {
+
+    /** Namespace of services published by the server. */
+    private static final String NAMESPACE = "http://server.textan.ufal.mff.cuni.cz/";
+
+    /** WSDL of simple web service bundled with the client. */
+    private static final String SIMPLE_WSDL = "SimpleWebService.wsdl";
+
+    /** Size of chunks of streamed requests of document ingestion. */
+    private static final int CHUNK_SIZE = 8192;
+
+    /** Properties of the JAX-WS implementation of the JRE and of the standalone one enabling chunked streaming. */
+    private static final String[] CHUNK_SIZE_PROPERTIES = {
+        "com.sun.xml.internal.ws.transport.http.client.streaming.chunk.size",
+        "com.sun.xml.ws.transport.http.client.streaming.chunk.size"
+    };
+
+    /** Settings of the application. */
+    private final Properties settings;
+
+    /** Client of simple web service, completed by background thread. */
+    private final CompletableFuture<ISimpleWebService> simpleWebService = new CompletableFuture<>();
+
+    /** Client of document ingestion service, null until it is needed. */
+    private IDocumentIngestionService documentIngestionService = null;
+
+    /**
+     * Only constructor. Starts building clients in background.
+     * @param settings settings of the application
+     */
+    public ServiceLocator(final Properties settings) {
+        this.settings = settings;
+        final Thread thread = new Thread(() -> {
+            try {
+                simpleWebService.complete(createSimpleWebService());
+            } catch (MalformedURLException | RuntimeException e) {
+                simpleWebService.completeExceptionally(e);
+            }
+        }, "service-locator");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns client of simple web service. Actions chained to the future
+     * run in background thread if the client is not built yet.
+     * @return future client of simple web service
+     */
+    public CompletableFuture<ISimpleWebService> getSimpleWebService() {
+        return simpleWebService;
+    }
+
+    /**
+     * Returns client of document ingestion service, it is built by the first call,
+     * so the method should not be called from the JavaFX application thread.
+     * Documents are sent as MTOM attachments and requests are streamed in chunks,
+     * so attachments are read from their data sources while the request is being sent
+     * and no document is held in memory as a whole.
+     * @return client of document ingestion service
+     */
+    public synchronized IDocumentIngestionService getDocumentIngestionService() {
+        if (documentIngestionService == null) {
+            final String serverUrl = settings.getProperty("server.url", "http://localhost:9100");
+            final QName portName = new QName(NAMESPACE, "DocumentIngestionServicePort");
+            final Service service = Service.create(new QName(NAMESPACE, "DocumentIngestionService"));
+            service.addPort(portName, SOAPBinding.SOAP11HTTP_MTOM_BINDING, serverUrl + "/soap/ingest");
+            final IDocumentIngestionService port = service.getPort(portName, IDocumentIngestionService.class);
+            final Map<String, Object> context = ((BindingProvider) port).getRequestContext();
+            for (String property : CHUNK_SIZE_PROPERTIES) {
+                context.put(property, CHUNK_SIZE);
+            }
+            documentIngestionService = port;
+        }
+        return documentIngestionService;
+    }
+
+    /**
+     * Creates client of simple web service using transport selected by settings.
+     * Property "server.transport" selects "soap" or "json", property "server.url" is the server root
+     * property "server.compression" lets the server gzip responses and property "server.compression.requests"
+     * gzips requests, the server must accept them, so it is disabled by default.
+     * @return client of simple web service
+     * @throws MalformedURLException if url of server or wsdl is not valid
+     */
+    private ISimpleWebService createSimpleWebService() throws MalformedURLException {
+        final String serverUrl = settings.getProperty("server.url", "http://localhost:9100");
+        final boolean compression = settings.getProperty("server.compression", "true").equals("true");
+        final boolean requestCompression = settings.getProperty("server.compression.requests", "false").equals("true");
+        if (settings.getProperty("server.transport", "soap").equals("json")) {
+            return new JsonSimpleWebService(serverUrl, compression, requestCompression);
+        }
+
+        final Service service = Service.create(getWsdl(SIMPLE_WSDL), new QName(NAMESPACE, "SimpleWebService"));
+        final ISimpleWebServiceAsync port = service.getPort(ISimpleWebServiceAsync.class);
+        final Map<String, Object> context = ((BindingProvider) port).getRequestContext();
+        context.put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY, serverUrl + "/soap/simple");
+        //JAX-WS gzips the request body when Content-Encoding is set and inflates gzipped responses
+        final Map<String, List<String>> headers = new HashMap<>();
+        if (compression) {
+            headers.put("Accept-Encoding", Collections.singletonList("gzip"));
+        }
+        if (requestCompression) {
+            headers.put("Content-Encoding", Collections.singletonList("gzip"));
+        }
+        if (!headers.isEmpty()) {
+            context.put(MessageContext.HTTP_REQUEST_HEADERS, headers);
+        }
+        return port;
+    }
+
+    /**
+     * Returns URL of WSDL. Local copy from property "server.wsdl" is preferred
+     * to the bundled WSDL, so a client can be used with changed server without rebuilding.
+     * @param bundled name of bundled WSDL
+     * @return URL of WSDL
+     * @throws MalformedURLException if the local copy has invalid path
+     */
+    private URL getWsdl(final String bundled) throws MalformedURLException {
+        final String local = settings.getProperty("server.wsdl", "");
+        if (!local.isEmpty() && new File(local).isFile()) {
+            return new File(local).toURI().toURL();
+        }
+        final URL url = ServiceLocator.class.getResource(bundled);
+        if (url == null) {
+            throw new WebServiceException("Missing bundled " + bundled);
+        }
+        return url;
+    }
+}
@@ -0,0 +1,107 @@
+package cz.cuni.mff.ufal.textan.core;
+
+import cz.cuni.mff.ufal.textan.commons.ISimpleWebService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
+
+/**
+ * Task calling the server in background. Tasks are created by {@link ServiceExecutor}.
+ * Handlers, state and message of the task are updated in the JavaFX application thread,
+ * so controllers can bind their controls to them.
+ * @param <T> type of result
+ */
+public class ServiceTask<T> extends Task<T> {
+
+    /**
+     * Call of the server.
+     * @param <T> type of result
+     */
+    @FunctionalInterface
+    public interface Call<T> {
+
+        /**
+         * Calls the server.
+         * @param service client of simple web service
+         * @return result of the call
+         * @throws Exception if the call fails
+         */
+        T call(ISimpleWebService service) throws Exception;
+    }
+
+    /** Client of simple web service, it may not be built yet. */
+    private final CompletableFuture<ISimpleWebService> service;
+
+    /** Call of the server. */
+    private final Call<T> call;
+
+    /**
+     * Only constructor.
+     * @param service future client of simple web service
+     * @param call call of the server
+     */
+    ServiceTask(final CompletableFuture<ISimpleWebService> service, final Call<T> call) {
+        this.service = service;
+        this.call = call;
+        updateMessage("Čekání ve frontě...");
+    }
+
+    /**
+     * Adds handlers of result. Several handlers can be added, e.g. by callers sharing coalesced task.
+     * Cancellation, e.g. by {@link ServiceExecutor} when its queue overflows, is not reported.
+     * @param onSuccess handler of result
+     * @param onFailure handler of exception
+     * @return this task
+     */
+    public ServiceTask<T> whenDone(final Consumer<T> onSuccess, final Consumer<Throwable> onFailure) {
+        return whenDone(onSuccess, onFailure, () -> { });
+    }
+
+    /**
+     * Adds handlers of result. Several handlers can be added, e.g. by callers sharing coalesced task.
+     * A handler of task which is already finished is called immediately.
+     * Must be called in the JavaFX application thread.
+     * @param onSuccess handler of result
+     * @param onFailure handler of exception
+     * @param onCancelled handler of cancellation, e.g. by {@link ServiceExecutor} when its queue overflows
+     * @return this task
+     */
+    public ServiceTask<T> whenDone(final Consumer<T> onSuccess, final Consumer<Throwable> onFailure, final Runnable onCancelled) {
+        switch (getState()) {
+            case SUCCEEDED:
+                onSuccess.accept(getValue());
+                break;
+            case FAILED:
+                onFailure.accept(getException());
+                break;
+            case CANCELLED:
+                onCancelled.run();
+                break;
+            default:
+                addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, e -> onSuccess.accept(getValue()));
+                addEventHandler(WorkerStateEvent.WORKER_STATE_FAILED, e -> onFailure.accept(getException()));
+                addEventHandler(WorkerStateEvent.WORKER_STATE_CANCELLED, e -> onCancelled.run());
+        }
+        return this;
+    }
+
+    @Override
+    protected T call() throws Exception {
+        updateMessage("Připojování k serveru...");
+        final ISimpleWebService client;
+        try {
+            client = service.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+        if (isCancelled()) {
+            return null;
+        }
+        updateMessage("Čekání na odpověď serveru...");
+        final T result = call.call(client);
+        updateMessage("Hotovo");
+        return result;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * This package contains clients of the server.
+ */
+package cz.cuni.mff.ufal.textan.core;
\ No newline at end of file
@@ -1,14 +1,13 @@
 package cz.cuni.mff.ufal.textan.gui;
 
-import cz.cuni.mff.ufal.textan.commons.Document;
-import cz.cuni.mff.ufal.textan.commons.ISimpleWebService;
+import cz.cuni.mff.ufal.textan.core.ServiceExecutor;
+import cz.cuni.mff.ufal.textan.core.ServiceLocator;
 import cz.cuni.mff.ufal.textan.utils.UnclosableStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.URL;
 import java.util.List;
 import java.util.Properties;
 import javafx.application.Application;
@@ -17,9 +16,6 @@ import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
-import javax.xml.namespace.QName;
-import javax.xml.ws.Service;
-import javax.xml.ws.soap.SOAPBinding;
 import org.controlsfx.dialog.Dialogs;
 
 /**
@@ -54,22 +50,14 @@ public class TextAn extends Application {
     /** Application controller. */
     TextAnController controller;
 
-    @Override
-    public void start(final Stage stage) throws Exception {
-
-        Service service = Service.create(new URL("http://localhost:9100/soap/simple?wsdl"), new QName("http://server.textan.ufal.mff.cuni.cz/", "SimpleWebService"));
-        // Endpoint Address
-        String endpointAddress = "http://localhost:9100/soap/simple";
-
-        // Add a port to the Service
-        service.addPort(new QName("http://server.textan.ufal.mff.cuni.cz/SimpleWebService", "SimpleWebServicePort"), SOAPBinding.SOAP11HTTP_BINDING, endpointAddress);
-
-        ISimpleWebService hw = service.getPort(ISimpleWebService.class);
-        System.out.println(hw.hello("World"));
+    /** Locator of clients of the server. */
+    ServiceLocator serviceLocator;
 
-        Document doc = hw.toDocument("Testing document");
-        System.out.println(doc.getText());
+    /** Executor of all calls of the server. */
+    ServiceExecutor serviceExecutor;
 
+    @Override
+    public void start(final Stage stage) throws Exception {
 
         System.out.printf("Starting...\n");
         //load default properties
@@ -106,6 +94,17 @@ public class TextAn extends Application {
             }
         }
 
+        //clients of the server are built in background while the window is created
+        serviceLocator = new ServiceLocator(settings);
+        serviceExecutor = new ServiceExecutor(serviceLocator, settings);
+        serviceExecutor.submit(null, service -> service.hello("World")).whenDone(
+            greeting -> System.out.println(greeting),
+            e -> {
+                System.err.printf("Error while connecting to the server\n");
+                e.printStackTrace();
+            }
+        );
+
         //ask for login if needed
         if (settings.getProperty("username", "").equals("")) {
             final String login = Dialogs.create()
@@ -130,6 +129,7 @@ public class TextAn extends Application {
         final Parent root = (Parent) loader.load();
         controller = loader.getController();
         controller.setSettings(settings);
+        controller.setServiceExecutor(serviceExecutor);
         final Scene scene = new Scene(root);
         scene.getStylesheets().addAll(TextAn.class.getResource("/org/controlsfx/dialog/dialogs.css").toExternalForm()); //without this the first dialog in too small window could mess up its content
         stage.setScene(scene);
@@ -175,6 +175,7 @@ public class TextAn extends Application {
     public void stop() {
         System.out.println("Closing...\n");
         controller.stop();
+        serviceExecutor.shutdown();
         if (!propertyFile.equals("-")) {
             try (final OutputStream os = new FileOutputStream(propertyFile)) {
                 settings.store(os, null);
@@ -1,5 +1,6 @@
 package cz.cuni.mff.ufal.textan.gui;
 
+import cz.cuni.mff.ufal.textan.core.ServiceExecutor;
 import cz.cuni.mff.ufal.textan.gui.reportwizard.ReportWizard;
 import cz.cuni.mff.ufal.textan.gui.reportwizard.ReportWizardStage;
 import java.net.URL;
@@ -47,6 +48,9 @@ public class TextAnController implements Initializable {
     /** Properties with application settings. */
     protected Properties settings = null;
 
+    /** Executor of calls of the server. */
+    protected ServiceExecutor serviceExecutor = null;
+
     /** Property binded to stage titleProperty. */
     StringProperty titleProperty = new SimpleStringProperty(TITLE);
 
@@ -66,10 +70,10 @@ public class TextAnController implements Initializable {
     @FXML
     private void reportWizard() {
         if (settings.getProperty(INDEPENDENT_WINDOW, "false").equals("false")) {
-            final ReportWizard wizard = new ReportWizard(settings);
+            final ReportWizard wizard = new ReportWizard(settings, serviceExecutor);
             content.getChildren().add(wizard);
         } else {
-            final ReportWizardStage stage = new ReportWizardStage(settings);
+            final ReportWizardStage stage = new ReportWizardStage(settings, serviceExecutor);
             children.add(stage);
             stage.show();
         }
@@ -103,6 +107,14 @@ public class TextAnController implements Initializable {
         );
     }
 
+    /**
+     * Sets executor of calls of the server.
+     * @param serviceExecutor executor of calls of the server
+     */
+    public void setServiceExecutor(final ServiceExecutor serviceExecutor) {
+        this.serviceExecutor = serviceExecutor;
+    }
+
     /**
      * Returns title property.
      * @return title property
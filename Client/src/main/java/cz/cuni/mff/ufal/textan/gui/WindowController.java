@@ -1,5 +1,6 @@
 package cz.cuni.mff.ufal.textan.gui;
 
+import cz.cuni.mff.ufal.textan.core.ServiceExecutor;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -26,6 +27,9 @@ public abstract class WindowController implements Initializable {
     /** Stage displaying the view. It can be null if in Window. */
     protected Stage stage = null;
 
+    /** Executor of calls of the server. */
+    protected ServiceExecutor serviceExecutor = null;
+
     /**
      * Returns suitable owner of a lightweight dialog. Eg. {@link #stage} if it is not
      * null, parameter root otherwise.
@@ -40,6 +44,10 @@ public abstract class WindowController implements Initializable {
         this.settings = settings;
     }
 
+    public void setServiceExecutor(final ServiceExecutor serviceExecutor) {
+        this.serviceExecutor = serviceExecutor;
+    }
+
     public void setWindow(final Window window) {
         this.window = window;
     }
@@ -89,6 +97,7 @@ public abstract class WindowController implements Initializable {
             final Parent loadedRoot = (Parent) loader.load();
             controller = loader.getController();
             controller.setSettings(settings);
+            controller.setServiceExecutor(serviceExecutor);
             if (window != null) {
                 window.getContentPane().getChildren().clear();
                 controller.setWindow(window);
@@ -1,38 +1,159 @@
 package cz.cuni.mff.ufal.textan.gui.reportwizard;
 
+import cz.cuni.mff.ufal.textan.commons.Document;
+import cz.cuni.mff.ufal.textan.commons.Entity;
+import cz.cuni.mff.ufal.textan.core.ServiceTask;
 import cz.cuni.mff.ufal.textan.gui.WindowController;
+import cz.cuni.mff.ufal.textan.utils.Pair;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.ResourceBundle;
+import java.util.Set;
+import javafx.animation.PauseTransition;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
+import javafx.scene.control.ListView;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.TextArea;
+import javafx.util.Duration;
 
 /**
  * Controls editing the report.
+ * Entities are suggested while the report is typed. When typing pauses,
+ * only paragraphs whose entities are not known yet are sent to the server,
+ * so usually just the edited paragraph is analysed.
  */
 public class ReportEditController extends WindowController {
 
     static final String TEST_TEXT = "Ahoj, toto je testovaci zprava urcena pro vyzkouseni vsech moznosti oznacovani textu.";
 
+    /** Default milliseconds without typing after which the report is analysed. */
+    static final String DEFAULT_DEBOUNCE = "100";
+
     @FXML
     TextArea textArea;
 
     @FXML
     ScrollPane scrollPane;
 
+    @FXML
+    ListView<String> entityList;
+
+    /** Entities of analysed paragraphs by text of paragraph, offsets are relative to the paragraph. */
+    final Map<String, List<Entity>> paragraphEntities = new HashMap<>();
+
+    /** Unfinished requests of entities by text of paragraph. */
+    final Map<String, ServiceTask<List<Entity>>> requests = new HashMap<>();
+
+    /** Waits for pause in typing. */
+    final PauseTransition debounce = new PauseTransition(Duration.millis(Double.parseDouble(DEFAULT_DEBOUNCE)));
+
     @FXML
     private void cancel() {
+        stopAnalysis();
         closeContainer();
     }
 
     @FXML
     private void next() {
+        stopAnalysis();
         final ReportEntitiesController controller = nextFrame("03_ReportEntities.fxml");
         controller.setReport(textArea.getText());
     }
 
+    @Override
+    public void setSettings(final Properties settings) {
+        super.setSettings(settings);
+        debounce.setDuration(Duration.millis(Double.parseDouble(settings.getProperty("report.edit.debounce", DEFAULT_DEBOUNCE))));
+    }
+
+    /**
+     * Requests entities of paragraphs which are not analysed yet.
+     * Entities and requests of paragraphs no longer in the report are dropped.
+     */
+    void analyse() {
+        if (serviceExecutor == null) {
+            return;
+        }
+        final Set<String> paragraphs = new HashSet<>(Arrays.asList(textArea.getText().split("\n", -1)));
+        paragraphEntities.keySet().retainAll(paragraphs);
+        for (Iterator<Map.Entry<String, ServiceTask<List<Entity>>>> it = requests.entrySet().iterator(); it.hasNext(); ) {
+            final Map.Entry<String, ServiceTask<List<Entity>>> request = it.next();
+            if (!paragraphs.contains(request.getKey())) {
+                request.getValue().cancel();
+                it.remove();
+            }
+        }
+
+        for (String paragraph : paragraphs) {
+            if (paragraph.trim().isEmpty() || paragraphEntities.containsKey(paragraph) || requests.containsKey(paragraph)) {
+                continue;
+            }
+            final ServiceTask<List<Entity>> task = serviceExecutor.submit(
+                    new Pair<>("getEntities", paragraph),
+                    service -> service.getEntities(new Document(paragraph)));
+            requests.put(paragraph, task);
+            task.whenDone(
+                entities -> {
+                    if (requests.remove(paragraph, task)) {
+                        paragraphEntities.put(paragraph, entities);
+                        showEntities();
+                    }
+                },
+                e -> {
+                    requests.remove(paragraph, task);
+                    e.printStackTrace();
+                },
+                //cancelled by overflow of the queue, the paragraph is requested again by the next analysis
+                () -> requests.remove(paragraph, task)
+            );
+        }
+        showEntities();
+    }
+
+    /**
+     * Displays entities of analysed paragraphs in order of the report.
+     */
+    void showEntities() {
+        final ObservableList<String> items = FXCollections.observableArrayList();
+        for (String paragraph : textArea.getText().split("\n", -1)) {
+            final List<Entity> entities = paragraphEntities.get(paragraph);
+            if (entities != null) {
+                for (Entity entity : entities) {
+                    items.add(String.format("%s (%s)", paragraph.substring(entity.getStart(), entity.getEnd()), entity.getType()));
+                }
+            }
+        }
+        entityList.setItems(items);
+    }
+
+    /**
+     * Stops waiting for pause in typing and cancels unfinished requests.
+     */
+    void stopAnalysis() {
+        debounce.stop();
+        for (ServiceTask<List<Entity>> task : requests.values()) {
+            task.cancel();
+        }
+        requests.clear();
+    }
+
     @Override
     public void initialize(URL url, ResourceBundle rb) {
+        debounce.setOnFinished(e -> analyse());
+        textArea.textProperty().addListener(
+            (ObservableValue<? extends String> ov, String oldVal, String newVal) -> {
+                debounce.playFromStart();
+            }
+        );
         textArea.setText(TEST_TEXT);
     }
 }
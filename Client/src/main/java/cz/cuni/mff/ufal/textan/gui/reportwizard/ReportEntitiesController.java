@@ -1,17 +1,29 @@
 package cz.cuni.mff.ufal.textan.gui.reportwizard;
 
+import cz.cuni.mff.ufal.textan.commons.Entity;
+import cz.cuni.mff.ufal.textan.commons.utils.TokenType;
+import cz.cuni.mff.ufal.textan.commons.utils.Tokenizer;
+import cz.cuni.mff.ufal.textan.commons.utils.Tokens;
+import cz.cuni.mff.ufal.textan.core.ServiceTask;
 import cz.cuni.mff.ufal.textan.gui.WindowController;
+import cz.cuni.mff.ufal.textan.utils.Pair;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.WeakHashMap;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.scene.Node;
-import javafx.scene.control.ScrollPane;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.input.MouseDragEvent;
+import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.text.Text;
 import javafx.scene.text.TextFlow;
@@ -19,39 +31,165 @@ import org.controlsfx.dialog.Dialogs;
 
 /**
  * Controls editing entities.
+ * The report is displayed as a virtualized list of lines (paragraphs or their parts),
+ * so scene graph nodes exist only for tokens of the visible lines.
+ * Selection is kept as a range of token indices, when it changes only tokens
+ * between the old and the new bounds are restyled.
+ * Entities are requested from the server in background and highlighted when they arrive.
  */
 public class ReportEntitiesController extends WindowController {
 
-    static final Set<Character> separators = Collections.unmodifiableSet(new HashSet<>(Arrays.asList('\n', '\t', '\r', ' ', ',', '.', ';', '!')));
-
     static final String SELECTED = "selected";
 
-    static void addSelectedClass(Iterable<Node> list) {
-        list.forEach(node -> node.getStyleClass().add("selected"));
+    static final String ENTITY = "entity";
+
+    /** Maximal number of tokens in one line of the list, longer paragraphs are split. */
+    static final int MAX_LINE_TOKENS = 200;
+
+    /** Horizontal space taken by list cell and scrollbar. */
+    static final double LINE_PADDING = 30;
+
+    /**
+     * Splits tokens to lines. Line ends after space containing new line
+     * or after space when it has {@link #MAX_LINE_TOKENS} tokens.
+     * Space containing more new lines is followed by an empty line for each
+     * additional new line, so blank lines of the report are kept.
+     * Line i consists of tokens from the i-th to the (i+1)-th element of the result (exclusive).
+     * @param report text of the report
+     * @param tokens tokens of the report
+     * @return index of the first token of each line followed by number of tokens of the report
+     */
+    static int[] splitLines(final String report, final Tokens tokens) {
+        int[] starts = new int[tokens.size() / MAX_LINE_TOKENS + 16];
+        int count = 0;
+        starts[count++] = 0;
+        for (int i = 0; i < tokens.size() - 1; ++i) {
+            if (tokens.getType(i) != TokenType.SPACE) {
+                continue;
+            }
+            int breaks = countLineBreaks(report, tokens, i);
+            if (breaks == 0 && i + 1 - starts[count - 1] >= MAX_LINE_TOKENS) {
+                breaks = 1;
+            }
+            for (; breaks > 0; --breaks) {
+                if (count + 1 >= starts.length) {
+                    starts = Arrays.copyOf(starts, 2 * starts.length);
+                }
+                starts[count++] = i + 1;
+            }
+        }
+        starts[count++] = tokens.size();
+        return Arrays.copyOf(starts, count);
     }
 
-    static void removeSelectedClass(Iterable<Node> list) {
-        list.forEach(node -> node.getStyleClass().remove("selected"));
+    /**
+     * Returns number of new lines in the token.
+     * @param report text of the report
+     * @param tokens tokens of the report
+     * @param index index of the token
+     * @return number of new lines, 0 if the token is not space
+     */
+    static int countLineBreaks(final String report, final Tokens tokens, final int index) {
+        if (tokens.getType(index) != TokenType.SPACE) {
+            return 0;
+        }
+        int count = 0;
+        for (int i = tokens.getStart(index); i < tokens.getEnd(index); ++i) {
+            if (report.charAt(i) == '\n') {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns whether the token is space containing new line.
+     * @param report text of the report
+     * @param tokens tokens of the report
+     * @param index index of the token
+     * @return true if the token breaks line
+     */
+    static boolean isLineBreak(final String report, final Tokens tokens, final int index) {
+        return countLineBreaks(report, tokens, index) > 0;
+    }
+
+    /**
+     * Adds or removes style class of the node.
+     * @param node node to style
+     * @param styleClass style class
+     * @param set true to add the class, false to remove it
+     */
+    static void setStyleClass(final Node node, final String styleClass, final boolean set) {
+        if (!set) {
+            node.getStyleClass().remove(styleClass);
+        } else if (!node.getStyleClass().contains(styleClass)) {
+            node.getStyleClass().add(styleClass);
+        }
+    }
+
+    /**
+     * Returns index of token displayed by the node.
+     * @param node node to check, can be null
+     * @return index of token or -1 if the node does not display a token
+     */
+    static int tokenIndex(final Node node) {
+        final Object data = node == null ? null : node.getUserData();
+        return data instanceof Integer ? (Integer) data : -1;
     }
 
     @FXML
     BorderPane root;
 
     @FXML
-    ScrollPane scrollPane;
+    ListView<Integer> listView;
+
+    @FXML
+    Label statusLabel;
 
     @FXML
-    TextFlow textFlow;
+    ProgressIndicator progressIndicator;
+
+    /** Text of the report. */
+    String report = "";
+
+    /** Tokens of the report. */
+    Tokens tokens = Tokenizer.tokenize(report);
+
+    /**
+     * Index of the first token of each line followed by number of tokens,
+     * empty lines have the same start as the next line.
+     */
+    int[] lineStarts = {0};
+
+    /**
+     * Cells created by the list, tokens are restyled through the lines they currently display.
+     * Held weakly, so cells dropped by the list are collected.
+     */
+    final Set<LineCell> cells = Collections.newSetFromMap(new WeakHashMap<>());
 
     int startTextIndex = -1;
 
+    /** Index of the first selected token, -1 if nothing is selected. */
+    int selectionMin = -1;
+
+    /** Index of the last selected token, -1 if nothing is selected. */
+    int selectionMax = -1;
+
+    /** Whether each token is part of an entity. */
+    boolean[] entityTokens = new boolean[0];
+
+    /** Task finding entities in the report, null if there is none. */
+    ServiceTask<List<Entity>> analysis = null;
+
     @FXML
     private void cancel() {
+        cancelAnalysis();
         closeContainer();
     }
 
     @FXML
     private void next() {
+        cancelAnalysis();
         Dialogs.create()
                 .owner(getDialogOwner(root))
                 .title("Hotovo!")
@@ -62,60 +200,257 @@ public class ReportEntitiesController extends WindowController {
     }
 
     public void setReport(final String report) {
-        final List<String> words = new ArrayList<>();
-        int start = 0;
-        for(int i = 0; i < report.length(); ++i) {
-            if (separators.contains(report.charAt(i))) {
-                if (start < i) {
-                    words.add(report.substring(start, i));
-                }
-                words.add(report.substring(i, i + 1));
-                start = i + 1;
-            }
-        }
-        if (start < report.length()) {
-            words.add(report.substring(start, report.length()));
+        this.report = report;
+        tokens = Tokenizer.tokenize(report);
+        lineStarts = splitLines(report, tokens);
+        entityTokens = new boolean[tokens.size()];
+        startTextIndex = -1;
+        selectionMin = -1;
+        selectionMax = -1;
+
+        final ObservableList<Integer> lines = FXCollections.observableArrayList();
+        for (int i = 0; i < lineStarts.length - 1; ++i) {
+            lines.add(i);
         }
+        listView.setItems(lines);
+        analyse();
+    }
 
-        final List<Node> texts = textFlow.getChildren();
-        texts.clear();
-        for (String word: words) {
-            final Text text = new Text(word);
-            text.setOnMousePressed(e -> {
-                if (!text.getStyleClass().contains(SELECTED)) {
-                    System.out.println("pressed");
-                    removeSelectedClass(texts);
-                    startTextIndex = texts.indexOf(text);
-                    text.getStyleClass().add(SELECTED);
-                    //text.setMouseTransparent(true);
+    /**
+     * Requests entities of the report from the server. Status of the request
+     * is displayed until the entities arrive.
+     */
+    void analyse() {
+        cancelAnalysis();
+        if (serviceExecutor == null) {
+            return;
+        }
+        final String text = report;
+        final ServiceTask<List<Entity>> task = serviceExecutor.submit(
+                new Pair<>("getEntities", text),
+                service -> service.getEntities(service.toDocument(text)));
+        analysis = task;
+        progressIndicator.visibleProperty().bind(task.runningProperty());
+        statusLabel.textProperty().bind(task.messageProperty());
+        task.whenDone(
+            entities -> {
+                if (analysis == task) {
+                    analysisDone("");
+                    setEntities(entities);
                 }
-            });
-            text.setOnDragDetected(e -> {
-                text.startFullDrag();
-            });
-            text.setOnMouseDragEntered(e -> {
-                if (startTextIndex != -1) {
-                    System.out.println("dragged");
-                    removeSelectedClass(texts);
-                    final int myIndex = texts.indexOf(text);
-                    final int min = Math.min(startTextIndex, myIndex);
-                    final int max = Math.max(startTextIndex, myIndex);
-                    addSelectedClass(texts.subList(min, max + 1));
+            },
+            e -> {
+                if (analysis == task) {
+                    analysisDone("Chyba při hledání entit!");
+                    e.printStackTrace();
                 }
-            });
-            text.setOnMouseReleased(e -> {
-                if (startTextIndex != -1) {
-                    System.out.println("release");
-                    startTextIndex = -1;
-                    //text.setMouseTransparent(false);
+            },
+            () -> {
+                //cancelled by overflow of the queue, not by cancelAnalysis
+                if (analysis == task) {
+                    analysisDone("Hledání entit bylo zrušeno");
                 }
-            });
-            texts.add(text);
+            }
+        );
+    }
+
+    /**
+     * Cancels request of entities if it is not finished.
+     */
+    void cancelAnalysis() {
+        if (analysis != null) {
+            analysis.cancel();
+            analysisDone("");
+        }
+    }
+
+    /**
+     * Stops displaying status of request of entities.
+     * @param status text displayed instead of the status
+     */
+    void analysisDone(final String status) {
+        analysis = null;
+        progressIndicator.visibleProperty().unbind();
+        progressIndicator.setVisible(false);
+        statusLabel.textProperty().unbind();
+        statusLabel.setText(status);
+    }
+
+    /**
+     * Highlights tokens of entities.
+     * @param entities entities of the report
+     */
+    void setEntities(final List<Entity> entities) {
+        for (Entity entity : entities) {
+            final int first = firstTokenEndingAfter(entity.getStart());
+            int i = first;
+            for (; i < tokens.size() && tokens.getStart(i) < entity.getEnd(); ++i) {
+                if (tokens.getType(i) != TokenType.SPACE) {
+                    entityTokens[i] = true;
+                }
+            }
+            restyle(first, i - 1);
+        }
+    }
+
+    /**
+     * Finds the first token ending after the offset.
+     * @param offset offset in the report
+     * @return index of the token or number of tokens if there is no such token
+     */
+    int firstTokenEndingAfter(final int offset) {
+        int low = 0;
+        int high = tokens.size();
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (tokens.getEnd(middle) <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns whether the token is selected.
+     * @param index index of the token
+     * @return true if the token is selected
+     */
+    boolean isTokenSelected(final int index) {
+        return selectionMin <= index && index <= selectionMax;
+    }
+
+    /**
+     * Selects range of tokens. Only displayed tokens whose selection changed are restyled.
+     * @param min index of the first selected token
+     * @param max index of the last selected token
+     */
+    void select(final int min, final int max) {
+        final int oldMin = selectionMin;
+        final int oldMax = selectionMax;
+        if (min == oldMin && max == oldMax) {
+            return;
+        }
+        selectionMin = min;
+        selectionMax = max;
+
+        if (oldMin == -1 || max < oldMin || oldMax < min) {
+            //ranges do not overlap
+            restyle(oldMin, oldMax);
+            restyle(min, max);
+        } else {
+            restyle(Math.min(oldMin, min), Math.max(oldMin, min) - 1);
+            restyle(Math.min(oldMax, max) + 1, Math.max(oldMax, max));
+        }
+    }
+
+    /**
+     * Updates style of displayed tokens according to current selection and entities.
+     * @param from index of the first token to restyle
+     * @param to index of the last token to restyle, nothing is done if less than from
+     */
+    void restyle(final int from, final int to) {
+        if (to < from) {
+            return;
+        }
+        for (LineCell cell : cells) {
+            //cells kept for reuse are hidden or detached, they are styled again when they get a line
+            if (cell.isVisible() && cell.getParent() != null) {
+                cell.restyle(from, to);
+            }
         }
     }
 
     @Override
     public void initialize(URL url, ResourceBundle rb) {
-        textFlow.prefWidthProperty().bind(scrollPane.widthProperty());
+        listView.setCellFactory(view -> {
+            final LineCell cell = new LineCell();
+            cells.add(cell);
+            return cell;
+        });
+        listView.addEventFilter(MouseEvent.MOUSE_PRESSED, e -> {
+            final int index = tokenIndex(e.getPickResult().getIntersectedNode());
+            if (index != -1 && !isTokenSelected(index)) {
+                startTextIndex = index;
+                select(index, index);
+            }
+        });
+        listView.addEventFilter(MouseEvent.DRAG_DETECTED, e -> {
+            if (startTextIndex != -1) {
+                listView.startFullDrag();
+            }
+        });
+        listView.addEventFilter(MouseDragEvent.MOUSE_DRAG_OVER, e -> {
+            final int index = tokenIndex(e.getPickResult().getIntersectedNode());
+            if (startTextIndex != -1 && index != -1) {
+                select(Math.min(startTextIndex, index), Math.max(startTextIndex, index));
+            }
+        });
+        listView.addEventFilter(MouseEvent.MOUSE_RELEASED, e -> {
+            startTextIndex = -1;
+        });
+    }
+
+    /**
+     * Cell displaying one line of the report as TextFlow with one Text per token.
+     * Index of token is stored as user data of its Text.
+     * More cells can display the same line, each of them is restyled.
+     */
+    class LineCell extends ListCell<Integer> {
+
+        final TextFlow textFlow = new TextFlow();
+
+        LineCell() {
+            textFlow.getStyleClass().add("text-flow");
+            textFlow.maxWidthProperty().bind(listView.widthProperty().subtract(LINE_PADDING));
+            setPrefWidth(0);
+        }
+
+        @Override
+        protected void updateItem(final Integer line, final boolean empty) {
+            super.updateItem(line, empty);
+            textFlow.getChildren().clear();
+            if (empty || line == null) {
+                setGraphic(null);
+                return;
+            }
+
+            final int end = lineStarts[line + 1];
+            for (int i = lineStarts[line]; i < end; ++i) {
+                if (i == end - 1 && isLineBreak(report, tokens, i)) {
+                    break; //the line break is represented by the cell itself
+                }
+                final Text text = new Text(tokens.getText(report, i));
+                text.setUserData(i);
+                setStyleClass(text, SELECTED, isTokenSelected(i));
+                setStyleClass(text, ENTITY, entityTokens[i]);
+                textFlow.getChildren().add(text);
+            }
+            if (textFlow.getChildren().isEmpty()) {
+                textFlow.getChildren().add(new Text()); //keeps height of an empty line
+            }
+            setGraphic(textFlow);
+        }
+
+        /**
+         * Updates style of displayed tokens according to current selection and entities.
+         * @param from index of the first token to restyle
+         * @param to index of the last token to restyle
+         */
+        void restyle(final int from, final int to) {
+            final Integer line = getItem();
+            if (isEmpty() || line == null || line + 1 >= lineStarts.length
+                    || to < lineStarts[line] || lineStarts[line + 1] <= from) {
+                return;
+            }
+            for (Node node : textFlow.getChildren()) {
+                final int index = tokenIndex(node);
+                if (from <= index && index <= to) {
+                    setStyleClass(node, SELECTED, isTokenSelected(index));
+                    setStyleClass(node, ENTITY, entityTokens[index]);
+                }
+            }
+        }
     }
 }
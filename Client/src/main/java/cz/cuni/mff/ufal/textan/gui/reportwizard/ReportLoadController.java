@@ -1,11 +1,18 @@
 package cz.cuni.mff.ufal.textan.gui.reportwizard;
 
+import cz.cuni.mff.ufal.textan.commons.IngestionResult;
+import cz.cuni.mff.ufal.textan.core.DocumentImporter;
 import cz.cuni.mff.ufal.textan.gui.WindowController;
+import java.io.File;
 import java.net.URL;
+import java.util.List;
 import java.util.ResourceBundle;
 import javafx.fxml.FXML;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.RadioButton;
 import javafx.scene.layout.BorderPane;
+import javafx.stage.FileChooser;
 import org.controlsfx.dialog.Dialogs;
 
 /**
@@ -13,20 +20,44 @@ import org.controlsfx.dialog.Dialogs;
  */
 public class ReportLoadController extends WindowController {
 
+    /** Maximal number of failed files listed in summary of import. */
+    private static final int MAX_LISTED_FAILURES = 10;
+
     @FXML
     private BorderPane root;
 
+    @FXML
+    private RadioButton fileRadioButton;
+
     @FXML
     private RadioButton emptyMessageRadioButton;
 
+    @FXML
+    private Label statusLabel;
+
+    @FXML
+    private ProgressIndicator progressIndicator;
+
+    /** Running import of files, null if there is none. */
+    private DocumentImporter importer = null;
+
     @FXML
     private void cancel() {
+        if (importer != null) {
+            importer.cancel();
+            importDone("");
+        }
         closeContainer();
     }
 
     @FXML
     private void next() {
-        if (!emptyMessageRadioButton.isSelected()) {
+        if (importer != null) {
+            return;
+        }
+        if (fileRadioButton.isSelected()) {
+            importFiles();
+        } else if (!emptyMessageRadioButton.isSelected()) {
             callWithContentBackup(() -> {
                 Dialogs.create()
                         .owner(getDialogOwner(root))
@@ -40,6 +71,97 @@ public class ReportLoadController extends WindowController {
         }
     }
 
+    /**
+     * Imports text files chosen by user as new documents. Progress of the import
+     * is displayed until it finishes, then its summary is shown.
+     */
+    private void importFiles() {
+        final FileChooser chooser = new FileChooser();
+        chooser.setTitle("Import textových souborů");
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Textové soubory (UTF-8)", "*.txt"),
+                new FileChooser.ExtensionFilter("Všechny soubory", "*.*"));
+        final List<File> files = chooser.showOpenMultipleDialog(root.getScene().getWindow());
+        if (files == null || files.isEmpty() || serviceExecutor == null) {
+            return;
+        }
+
+        final DocumentImporter task = serviceExecutor.importFiles(files);
+        importer = task;
+        progressIndicator.visibleProperty().bind(task.runningProperty());
+        progressIndicator.progressProperty().bind(task.progressProperty());
+        statusLabel.textProperty().bind(task.messageProperty());
+        task.setOnSucceeded(e -> {
+            importDone("");
+            callWithContentBackup(() -> {
+                Dialogs.create()
+                        .owner(getDialogOwner(root))
+                        .title("Import dokončen")
+                        .message(summarize(task.getValue()))
+                        .lightweight()
+                        .showInformation();
+            });
+            closeContainer();
+        });
+        task.setOnFailed(e -> {
+            importDone("Chyba při importu souborů!");
+            callWithContentBackup(() -> {
+                Dialogs.create()
+                        .owner(getDialogOwner(root))
+                        .title("Chyba při importu souborů!")
+                        .lightweight()
+                        .showException(task.getException());
+            });
+        });
+    }
+
+    /**
+     * Stops displaying progress of import.
+     * @param status text displayed instead of the progress
+     */
+    private void importDone(final String status) {
+        importer = null;
+        progressIndicator.visibleProperty().unbind();
+        progressIndicator.setVisible(false);
+        progressIndicator.progressProperty().unbind();
+        statusLabel.textProperty().unbind();
+        statusLabel.setText(status);
+    }
+
+    /**
+     * Creates summary of import.
+     * @param results results of imported files
+     * @return counts of imported, near duplicate, duplicate and failed files followed by the first failures
+     */
+    private static String summarize(final List<IngestionResult> results) {
+        int imported = 0;
+        int similar = 0;
+        int duplicates = 0;
+        final StringBuilder failures = new StringBuilder();
+        int failed = 0;
+        for (IngestionResult result : results) {
+            switch (result.getStatus()) {
+                case OK:
+                    imported++;
+                    break;
+                case NEAR_DUPLICATE:
+                    imported++;
+                    similar++;
+                    break;
+                case DUPLICATE:
+                    duplicates++;
+                    break;
+                default:
+                    if (failed++ < MAX_LISTED_FAILURES) {
+                        failures.append('\n').append(result.getName()).append(": ").append(result.getMessage());
+                    }
+                    break;
+            }
+        }
+        return String.format("Importováno: %d (z toho podobných bez analýzy: %d), duplikáty: %d, chyby: %d",
+                imported, similar, duplicates, failed) + failures;
+    }
+
     @Override
     public void initialize(URL url, ResourceBundle rb) {
 
@@ -1,5 +1,6 @@
 package cz.cuni.mff.ufal.textan.gui.reportwizard;
 
+import cz.cuni.mff.ufal.textan.core.ServiceExecutor;
 import java.io.IOException;
 import java.util.Properties;
 import javafx.beans.property.BooleanProperty;
@@ -28,6 +29,9 @@ public class ReportWizard extends Window {
      */
     protected Properties settings;
 
+    /** Executor of calls of the server. */
+    protected ServiceExecutor serviceExecutor;
+
     /** Flag whether the window maximized. */
     protected BooleanProperty maximized = new SimpleBooleanProperty();
 
@@ -62,10 +66,12 @@ public class ReportWizard extends Window {
     /**
      * Only constructor.
      * @param settings properties with settings
+     * @param serviceExecutor executor of calls of the server
      */
-    public ReportWizard(final Properties settings) {
+    public ReportWizard(final Properties settings, final ServiceExecutor serviceExecutor) {
         super(TITLE);
         this.settings = settings;
+        this.serviceExecutor = serviceExecutor;
         //
         parentProperty().addListener(
             (ObservableValue<? extends Parent> ov, Parent oldVal, Parent newVal) -> {
@@ -124,6 +130,7 @@ public class ReportWizard extends Window {
             final Parent root = (Parent) loader.load();
             final ReportLoadController controller = loader.getController();
             controller.setSettings(settings);
+            controller.setServiceExecutor(serviceExecutor);
             controller.setWindow(this);
             getContentPane().getChildren().add(root);
         } catch (IOException e) {
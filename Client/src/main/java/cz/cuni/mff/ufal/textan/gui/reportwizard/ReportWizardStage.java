@@ -1,5 +1,6 @@
 package cz.cuni.mff.ufal.textan.gui.reportwizard;
 
+import cz.cuni.mff.ufal.textan.core.ServiceExecutor;
 import java.io.IOException;
 import java.util.Properties;
 import javafx.fxml.FXMLLoader;
@@ -23,14 +24,19 @@ public class ReportWizardStage extends Stage {
      */
     protected Properties settings;
 
+    /** Executor of calls of the server. */
+    protected ServiceExecutor serviceExecutor;
+
     /**
      * Only constructor.
      * @param settings properties with settings
+     * @param serviceExecutor executor of calls of the server
      */
-    public ReportWizardStage(final Properties settings) {
+    public ReportWizardStage(final Properties settings, final ServiceExecutor serviceExecutor) {
         setTitle(TITLE);
         addEventFilter(MouseEvent.MOUSE_PRESSED, e -> this.toFront());
         this.settings = settings;
+        this.serviceExecutor = serviceExecutor;
         //TODO init from settings
         setWidth(300);
         setHeight(200);
@@ -40,6 +46,7 @@ public class ReportWizardStage extends Stage {
             final Parent root = (Parent) loader.load();
             final ReportLoadController controller = loader.getController();
             controller.setSettings(settings);
+            controller.setServiceExecutor(serviceExecutor);
             controller.setStage(this);
             setScene(new Scene(root));
         } catch (IOException e) {
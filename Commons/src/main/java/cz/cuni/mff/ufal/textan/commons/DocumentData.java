@@ -0,0 +1,64 @@
+package cz.cuni.mff.ufal.textan.commons;
+
+import javax.activation.DataHandler;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlMimeType;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
+
+/**
+ * Document transferred as MTOM/XOP attachment.
+ * The content is UTF-8 encoded text of the document; it is not inlined into the SOAP envelope,
+ * so it can be streamed by both sides.
+ */
+@XmlRootElement
+public class DocumentData {
+
+    @XmlElement
+    private String name;
+
+    @XmlElement
+    @XmlMimeType("application/octet-stream")
+    private DataHandler content;
+
+    public DocumentData() {}
+
+    public DocumentData(String name, DataHandler content) {
+        setName(name);
+        setContent(content);
+    }
+
+    /**
+     * Gets name of document given by client, eg. name of the imported file.
+     * @return name The name of document.
+     */
+    @XmlTransient
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Sets name of document.
+     * @param name The name to set.
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Gets content of document.
+     * @return content The UTF-8 encoded text of document.
+     */
+    @XmlTransient
+    public DataHandler getContent() {
+        return content;
+    }
+
+    /**
+     * Sets content of document.
+     * @param content The UTF-8 encoded text to set.
+     */
+    public void setContent(DataHandler content) {
+        this.content = content;
+    }
+}
@@ -0,0 +1,100 @@
+package cz.cuni.mff.ufal.textan.commons;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
+
+/**
+ * Named entity recognized in text of document.
+ */
+@XmlRootElement
+public class Entity {
+
+    @XmlElement
+    private int start;
+
+    @XmlElement
+    private int end;
+
+    @XmlElement
+    private String type;
+
+    @XmlElement
+    private int objectId = -1;
+
+    public Entity() {}
+
+    public Entity(int start, int end, String type) {
+        setStart(start);
+        setEnd(end);
+        setType(type);
+    }
+
+    /**
+     * Gets offset of the first character of entity in text of document.
+     * @return start The start offset.
+     */
+    @XmlTransient
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * Sets start offset of entity.
+     * @param start The offset to set.
+     */
+    public void setStart(int start) {
+        this.start = start;
+    }
+
+    /**
+     * Gets offset after the last character of entity in text of document.
+     * @return end The end offset (exclusive).
+     */
+    @XmlTransient
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * Sets end offset of entity.
+     * @param end The offset to set.
+     */
+    public void setEnd(int end) {
+        this.end = end;
+    }
+
+    /**
+     * Gets type of entity.
+     * @return type The type of entity.
+     */
+    @XmlTransient
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Sets type of entity.
+     * @param type The type to set.
+     */
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    /**
+     * Gets id of object the entity refers to, -1 if the entity was not linked to any object.
+     * @return objectId The id of object.
+     */
+    @XmlTransient
+    public int getObjectId() {
+        return objectId;
+    }
+
+    /**
+     * Sets id of object the entity refers to.
+     * @param objectId The id to set.
+     */
+    public void setObjectId(int objectId) {
+        this.objectId = objectId;
+    }
+}
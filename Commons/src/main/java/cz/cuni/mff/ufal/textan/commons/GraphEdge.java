@@ -0,0 +1,80 @@
+package cz.cuni.mff.ufal.textan.commons;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
+
+/**
+ * Edge of graph of objects, both objects are members of the relation.
+ */
+@XmlRootElement
+public class GraphEdge {
+
+    @XmlElement
+    private int source;
+
+    @XmlElement
+    private int target;
+
+    @XmlElement
+    private int relationId;
+
+    public GraphEdge() {}
+
+    public GraphEdge(int source, int target, int relationId) {
+        setSource(source);
+        setTarget(target);
+        setRelationId(relationId);
+    }
+
+    /**
+     * Gets id of object the edge was reached from.
+     * @return source The id of object.
+     */
+    @XmlTransient
+    public int getSource() {
+        return source;
+    }
+
+    /**
+     * Sets id of source object.
+     * @param source The id to set.
+     */
+    public void setSource(int source) {
+        this.source = source;
+    }
+
+    /**
+     * Gets id of object the edge leads to.
+     * @return target The id of object.
+     */
+    @XmlTransient
+    public int getTarget() {
+        return target;
+    }
+
+    /**
+     * Sets id of target object.
+     * @param target The id to set.
+     */
+    public void setTarget(int target) {
+        this.target = target;
+    }
+
+    /**
+     * Gets id of relation connecting the objects.
+     * @return relationId The id of relation.
+     */
+    @XmlTransient
+    public int getRelationId() {
+        return relationId;
+    }
+
+    /**
+     * Sets id of relation connecting the objects.
+     * @param relationId The id to set.
+     */
+    public void setRelationId(int relationId) {
+        this.relationId = relationId;
+    }
+}
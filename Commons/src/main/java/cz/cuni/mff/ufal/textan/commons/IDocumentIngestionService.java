@@ -0,0 +1,19 @@
+package cz.cuni.mff.ufal.textan.commons;
+
+import javax.jws.WebService;
+import java.util.List;
+
+/**
+ * Interface for batch ingestion of documents.
+ * Documents are expected to be sent as MTOM/XOP attachments.
+ */
+@WebService
+public interface IDocumentIngestionService {
+
+    /**
+     * Ingests documents one by one in the order they were sent.
+     * @param documents The documents to ingest.
+     * @return Returns results in the same order as documents.
+     */
+    List<IngestionResult> ingestDocuments(List<DocumentData> documents);
+}
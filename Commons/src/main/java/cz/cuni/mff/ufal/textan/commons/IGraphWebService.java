@@ -0,0 +1,36 @@
+package cz.cuni.mff.ufal.textan.commons;
+
+import javax.jws.WebService;
+import java.util.List;
+
+/**
+ * Interface for queries on graph of objects connected by relations.
+ */
+@WebService
+public interface IGraphWebService {
+
+    /**
+     * Gets objects which are in some relation with the object.
+     * @param objectId The id of object.
+     * @return Returns ids of neighbouring objects in increasing order.
+     */
+    List<Integer> getNeighbours(int objectId);
+
+    /**
+     * Gets edges of objects reachable from the object by at most the given number of relations.
+     * @param objectId The id of object.
+     * @param hops The maximal distance of objects.
+     * @param limit The maximal number of edges.
+     * @return Returns edges in breadth-first order, the source of each edge is the object it was reached from.
+     */
+    List<GraphEdge> getNeighbourhood(int objectId, int hops, int limit);
+
+    /**
+     * Finds the shortest chain of relations connecting two objects.
+     * @param fromObjectId The id of the first object.
+     * @param toObjectId The id of the last object.
+     * @param maxHops The maximal length of path.
+     * @return Returns ids of objects on the path including both ends, empty list if there is no such path.
+     */
+    List<Integer> getShortestPath(int fromObjectId, int toObjectId, int maxHops);
+}
@@ -0,0 +1,25 @@
+package cz.cuni.mff.ufal.textan.commons;
+
+import javax.jws.WebService;
+
+/**
+ * Interface for joining objects which represent the same entity.
+ */
+@WebService
+public interface IObjectMergeService {
+
+    /**
+     * Creates new object joining two objects, references to the objects are rewritten in background.
+     * @param objectId1 The id of the first object.
+     * @param objectId2 The id of the second object.
+     * @return Returns progress of the started job.
+     */
+    MergeProgress joinObjects(int objectId1, int objectId2);
+
+    /**
+     * Gets progress of job joining objects.
+     * @param jobId The id of job.
+     * @return Returns progress of the job or null if the job is unknown.
+     */
+    MergeProgress getMergeProgress(int jobId);
+}
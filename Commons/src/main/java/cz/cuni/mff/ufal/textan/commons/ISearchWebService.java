@@ -0,0 +1,19 @@
+package cz.cuni.mff.ufal.textan.commons;
+
+import javax.jws.WebService;
+import java.util.List;
+
+/**
+ * Interface for full-text search of documents.
+ */
+@WebService
+public interface ISearchWebService {
+
+    /**
+     * Finds documents containing words of query or mentioning object the query is an alias of.
+     * @param query The searched words.
+     * @param limit The maximal number of hits.
+     * @return Returns hits ordered by decreasing score.
+     */
+    List<SearchHit> search(String query, int limit);
+}
@@ -1,6 +1,7 @@
 package cz.cuni.mff.ufal.textan.commons;
 
 import javax.jws.WebService;
+import java.util.List;
 
 /**
  * Interface for simple web service.
@@ -14,4 +15,6 @@ public interface ISimpleWebService {
     Document toDocument(String text);
 
     String fromDocument(Document document);
+
+    List<Entity> getEntities(Document document);
 }
@@ -0,0 +1,38 @@
+package cz.cuni.mff.ufal.textan.commons;
+
+import cz.cuni.mff.ufal.textan.commons.jaxws.ToDocumentResponse;
+
+import javax.jws.WebMethod;
+import javax.jws.WebParam;
+import javax.jws.WebService;
+import javax.xml.ws.AsyncHandler;
+import javax.xml.ws.RequestWrapper;
+import javax.xml.ws.Response;
+import javax.xml.ws.ResponseWrapper;
+import java.util.concurrent.Future;
+
+/**
+ * Client-side view of {@link ISimpleWebService} with asynchronous variants of long-running operations.
+ * The server implements only {@link ISimpleWebService}, both interfaces describe the same port type.
+ * Results of asynchronous operations are delivered in response wrappers (see JAX-WS specification).
+ */
+@WebService(name = "ISimpleWebService")
+public interface ISimpleWebServiceAsync extends ISimpleWebService {
+
+    //synchronous operations are redeclared so that their asynchronous variants are matched in this interface
+    @Override
+    @WebMethod
+    @RequestWrapper(localName = "toDocument", className = "cz.cuni.mff.ufal.textan.commons.jaxws.ToDocument")
+    @ResponseWrapper(localName = "toDocumentResponse", className = "cz.cuni.mff.ufal.textan.commons.jaxws.ToDocumentResponse")
+    Document toDocument(@WebParam(name = "arg0") String text);
+
+    @WebMethod(operationName = "toDocument")
+    @RequestWrapper(localName = "toDocument", className = "cz.cuni.mff.ufal.textan.commons.jaxws.ToDocument")
+    @ResponseWrapper(localName = "toDocumentResponse", className = "cz.cuni.mff.ufal.textan.commons.jaxws.ToDocumentResponse")
+    Response<ToDocumentResponse> toDocumentAsync(@WebParam(name = "arg0") String text);
+
+    @WebMethod(operationName = "toDocument")
+    @RequestWrapper(localName = "toDocument", className = "cz.cuni.mff.ufal.textan.commons.jaxws.ToDocument")
+    @ResponseWrapper(localName = "toDocumentResponse", className = "cz.cuni.mff.ufal.textan.commons.jaxws.ToDocumentResponse")
+    Future<?> toDocumentAsync(@WebParam(name = "arg0") String text, @WebParam(name = "asyncHandler", targetNamespace = "") AsyncHandler<ToDocumentResponse> asyncHandler);
+}
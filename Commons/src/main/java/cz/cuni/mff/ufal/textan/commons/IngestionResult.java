@@ -0,0 +1,101 @@
+package cz.cuni.mff.ufal.textan.commons;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
+
+/**
+ * Result of ingestion of one document.
+ */
+@XmlRootElement
+public class IngestionResult {
+
+    @XmlElement
+    private String name;
+
+    @XmlElement
+    private int id = -1;
+
+    @XmlElement
+    private IngestionStatus status;
+
+    @XmlElement
+    private String message;
+
+    public IngestionResult() {}
+
+    public IngestionResult(String name, int id, IngestionStatus status, String message) {
+        setName(name);
+        setId(id);
+        setStatus(status);
+        setMessage(message);
+    }
+
+    /**
+     * Gets name of document as it was sent by client.
+     * @return name The name of document.
+     */
+    @XmlTransient
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Sets name of document.
+     * @param name The name to set.
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Gets id assigned to document, -1 if document was not accepted.
+     * @return id The id of document.
+     */
+    @XmlTransient
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Sets id of document.
+     * @param id The id to set.
+     */
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Gets status of ingestion.
+     * @return status The status of ingestion.
+     */
+    @XmlTransient
+    public IngestionStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Sets status of ingestion.
+     * @param status The status to set.
+     */
+    public void setStatus(IngestionStatus status) {
+        this.status = status;
+    }
+
+    /**
+     * Gets error message if ingestion failed.
+     * @return message The error message or null.
+     */
+    @XmlTransient
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Sets error message.
+     * @param message The message to set.
+     */
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
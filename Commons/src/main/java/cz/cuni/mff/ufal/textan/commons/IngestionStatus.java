@@ -0,0 +1,21 @@
+package cz.cuni.mff.ufal.textan.commons;
+
+import javax.xml.bind.annotation.XmlEnum;
+
+/**
+ * Status of one document in batch ingestion.
+ */
+@XmlEnum
+public enum IngestionStatus {
+    /** Document was accepted. */
+    OK,
+    /** Document duplicates an accepted document, it was not saved and id is the id of the accepted document. */
+    DUPLICATE,
+    /**
+     * Document is similar to an accepted document, it was saved without analysis linked to the similar document,
+     * id is its own id and message names the similar document.
+     */
+    NEAR_DUPLICATE,
+    /** Document could not be read or processed. */
+    FAILED
+}
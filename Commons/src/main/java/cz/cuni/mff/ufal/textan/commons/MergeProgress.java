@@ -0,0 +1,122 @@
+package cz.cuni.mff.ufal.textan.commons;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
+
+/**
+ * Progress of job joining two objects into a new object.
+ */
+@XmlRootElement
+public class MergeProgress {
+
+    @XmlElement
+    private int jobId;
+
+    @XmlElement
+    private int newObjectId;
+
+    @XmlElement
+    private MergeStatus status;
+
+    @XmlElement
+    private int processedRows;
+
+    @XmlElement
+    private int totalRows;
+
+    public MergeProgress() {}
+
+    public MergeProgress(int jobId, int newObjectId, MergeStatus status, int processedRows, int totalRows) {
+        setJobId(jobId);
+        setNewObjectId(newObjectId);
+        setStatus(status);
+        setProcessedRows(processedRows);
+        setTotalRows(totalRows);
+    }
+
+    /**
+     * Gets id of job.
+     * @return jobId The id of job.
+     */
+    @XmlTransient
+    public int getJobId() {
+        return jobId;
+    }
+
+    /**
+     * Sets id of job.
+     * @param jobId The id to set.
+     */
+    public void setJobId(int jobId) {
+        this.jobId = jobId;
+    }
+
+    /**
+     * Gets id of object the objects are joined into.
+     * @return newObjectId The id of object.
+     */
+    @XmlTransient
+    public int getNewObjectId() {
+        return newObjectId;
+    }
+
+    /**
+     * Sets id of new object.
+     * @param newObjectId The id to set.
+     */
+    public void setNewObjectId(int newObjectId) {
+        this.newObjectId = newObjectId;
+    }
+
+    /**
+     * Gets status of job.
+     * @return status The status of job.
+     */
+    @XmlTransient
+    public MergeStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Sets status of job.
+     * @param status The status to set.
+     */
+    public void setStatus(MergeStatus status) {
+        this.status = status;
+    }
+
+    /**
+     * Gets number of rewritten references.
+     * @return processedRows The number of rows.
+     */
+    @XmlTransient
+    public int getProcessedRows() {
+        return processedRows;
+    }
+
+    /**
+     * Sets number of rewritten references.
+     * @param processedRows The number to set.
+     */
+    public void setProcessedRows(int processedRows) {
+        this.processedRows = processedRows;
+    }
+
+    /**
+     * Gets number of references to rewrite, 0 until the job starts.
+     * @return totalRows The number of rows.
+     */
+    @XmlTransient
+    public int getTotalRows() {
+        return totalRows;
+    }
+
+    /**
+     * Sets number of references to rewrite.
+     * @param totalRows The number to set.
+     */
+    public void setTotalRows(int totalRows) {
+        this.totalRows = totalRows;
+    }
+}
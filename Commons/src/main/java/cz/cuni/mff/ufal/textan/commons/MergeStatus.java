@@ -0,0 +1,18 @@
+package cz.cuni.mff.ufal.textan.commons;
+
+import javax.xml.bind.annotation.XmlEnum;
+
+/**
+ * Status of job joining two objects.
+ */
+@XmlEnum
+public enum MergeStatus {
+    /** Job waits for other jobs. */
+    QUEUED,
+    /** References to joined objects are being rewritten. */
+    RUNNING,
+    /** Objects were joined. */
+    DONE,
+    /** Job failed, the objects were not marked as joined. */
+    FAILED
+}
@@ -0,0 +1,121 @@
+package cz.cuni.mff.ufal.textan.commons;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
+
+/**
+ * Document found by search.
+ */
+@XmlRootElement
+public class SearchHit {
+
+    @XmlElement
+    private int documentId;
+
+    @XmlElement
+    private float score;
+
+    @XmlElement
+    private int snippetStart;
+
+    @XmlElement
+    private int snippetEnd;
+
+    @XmlElement
+    private String snippet;
+
+    public SearchHit() {}
+
+    public SearchHit(int documentId, float score, int snippetStart, int snippetEnd) {
+        setDocumentId(documentId);
+        setScore(score);
+        setSnippetStart(snippetStart);
+        setSnippetEnd(snippetEnd);
+    }
+
+    /**
+     * Gets id of found document.
+     * @return documentId The id of document.
+     */
+    @XmlTransient
+    public int getDocumentId() {
+        return documentId;
+    }
+
+    /**
+     * Sets id of found document.
+     * @param documentId The id to set.
+     */
+    public void setDocumentId(int documentId) {
+        this.documentId = documentId;
+    }
+
+    /**
+     * Gets relevance of document, higher is better.
+     * @return score The score of document.
+     */
+    @XmlTransient
+    public float getScore() {
+        return score;
+    }
+
+    /**
+     * Sets relevance of document.
+     * @param score The score to set.
+     */
+    public void setScore(float score) {
+        this.score = score;
+    }
+
+    /**
+     * Gets offset of the first character of snippet around the first match in text of document.
+     * @return snippetStart The start offset.
+     */
+    @XmlTransient
+    public int getSnippetStart() {
+        return snippetStart;
+    }
+
+    /**
+     * Sets start offset of snippet.
+     * @param snippetStart The offset to set.
+     */
+    public void setSnippetStart(int snippetStart) {
+        this.snippetStart = snippetStart;
+    }
+
+    /**
+     * Gets offset after the last character of snippet in text of document.
+     * @return snippetEnd The end offset (exclusive).
+     */
+    @XmlTransient
+    public int getSnippetEnd() {
+        return snippetEnd;
+    }
+
+    /**
+     * Sets end offset of snippet.
+     * @param snippetEnd The offset to set.
+     */
+    public void setSnippetEnd(int snippetEnd) {
+        this.snippetEnd = snippetEnd;
+    }
+
+    /**
+     * Gets text of snippet, it is the text of document between the snippet offsets.
+     * @return snippet The text of snippet or null if the text is not available.
+     */
+    @XmlTransient
+    public String getSnippet() {
+        return snippet;
+    }
+
+    /**
+     * Sets text of snippet.
+     * @param snippet The text to set.
+     */
+    public void setSnippet(String snippet) {
+        this.snippet = snippet;
+    }
+}
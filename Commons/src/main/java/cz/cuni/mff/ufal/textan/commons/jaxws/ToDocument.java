@@ -0,0 +1,27 @@
+package cz.cuni.mff.ufal.textan.commons.jaxws;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * Request wrapper of toDocument operation.
+ */
+@XmlRootElement(name = "toDocument", namespace = "http://commons.textan.ufal.mff.cuni.cz/")
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "toDocument", namespace = "http://commons.textan.ufal.mff.cuni.cz/")
+public class ToDocument {
+
+    @XmlElement(name = "arg0")
+    private String arg0;
+
+    public String getArg0() {
+        return arg0;
+    }
+
+    public void setArg0(String arg0) {
+        this.arg0 = arg0;
+    }
+}
@@ -0,0 +1,29 @@
+package cz.cuni.mff.ufal.textan.commons.jaxws;
+
+import cz.cuni.mff.ufal.textan.commons.Document;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * Response wrapper of toDocument operation.
+ */
+@XmlRootElement(name = "toDocumentResponse", namespace = "http://commons.textan.ufal.mff.cuni.cz/")
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "toDocumentResponse", namespace = "http://commons.textan.ufal.mff.cuni.cz/")
+public class ToDocumentResponse {
+
+    @XmlElement(name = "return")
+    private Document _return;
+
+    public Document getReturn() {
+        return _return;
+    }
+
+    public void setReturn(Document _return) {
+        this._return = _return;
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * Request and response wrappers of web service operations.
+ * They are needed by asynchronous client methods, see {@link cz.cuni.mff.ufal.textan.commons.ISimpleWebServiceAsync}.
+ */
+package cz.cuni.mff.ufal.textan.commons.jaxws;
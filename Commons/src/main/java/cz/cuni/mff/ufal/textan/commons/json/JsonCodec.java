@@ -0,0 +1,149 @@
+package cz.cuni.mff.ufal.textan.commons.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import cz.cuni.mff.ufal.textan.commons.Document;
+import cz.cuni.mff.ufal.textan.commons.Entity;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming JSON encoding of {@link cz.cuni.mff.ufal.textan.commons.ISimpleWebService} operations.
+ *
+ * An operation is called by POST to {@link #SIMPLE_PATH} followed by the name of operation.
+ * The request body is an object with parameters named as in the interface, the response body
+ * is an object with the result in field "return" or with an error message in field "error".
+ * Values are read and written token by token, so no tree of the whole message is built.
+ */
+public final class JsonCodec {
+
+    /** Path of operations of the simple web service relative to the server root. */
+    public static final String SIMPLE_PATH = "/json/simple/";
+
+    /** Content type of requests and responses. */
+    public static final String CONTENT_TYPE = "application/json; charset=UTF-8";
+
+    /** Name of field with result of operation. */
+    public static final String RETURN = "return";
+
+    /** Name of field with error message. */
+    public static final String ERROR = "error";
+
+    /** Shared thread-safe factory of parsers and generators. */
+    public static final JsonFactory FACTORY = new JsonFactory();
+
+    private JsonCodec() {}
+
+    /**
+     * Writes document as object or null.
+     * @param generator The generator
+     * @param document The document to write, can be null
+     * @throws IOException if the output fails
+     */
+    public static void writeDocument(JsonGenerator generator, Document document) throws IOException {
+        if (document == null) {
+            generator.writeNull();
+            return;
+        }
+        generator.writeStartObject();
+        generator.writeStringField("text", document.getText());
+        generator.writeEndObject();
+    }
+
+    /**
+     * Reads document, the parser must be at the start of object or at null.
+     * @param parser The parser
+     * @return Returns the document or null
+     * @throws IOException if the input fails or is not valid
+     */
+    public static Document readDocument(JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, JsonToken.START_OBJECT);
+        final Document document = new Document();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("text".equals(field)) {
+                document.setText(parser.getValueAsString());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return document;
+    }
+
+    /**
+     * Writes entities as array of objects.
+     * @param generator The generator
+     * @param entities The entities to write
+     * @throws IOException if the output fails
+     */
+    public static void writeEntities(JsonGenerator generator, List<Entity> entities) throws IOException {
+        generator.writeStartArray();
+        for (Entity entity : entities) {
+            generator.writeStartObject();
+            generator.writeNumberField("start", entity.getStart());
+            generator.writeNumberField("end", entity.getEnd());
+            generator.writeStringField("type", entity.getType());
+            generator.writeNumberField("objectId", entity.getObjectId());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    /**
+     * Reads entities, the parser must be at the start of array.
+     * @param parser The parser
+     * @return Returns the entities
+     * @throws IOException if the input fails or is not valid
+     */
+    public static List<Entity> readEntities(JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_ARRAY);
+        final List<Entity> entities = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            Entity entity = new Entity();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "start":
+                        entity.setStart(parser.getIntValue());
+                        break;
+                    case "end":
+                        entity.setEnd(parser.getIntValue());
+                        break;
+                    case "type":
+                        entity.setType(parser.getValueAsString());
+                        break;
+                    case "objectId":
+                        entity.setObjectId(parser.getIntValue());
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            entities.add(entity);
+        }
+        expect(parser, JsonToken.END_ARRAY);
+        return entities;
+    }
+
+    /**
+     * Checks the current token.
+     * @param parser The parser
+     * @param token The expected token
+     * @throws JsonParseException if the current token is different
+     */
+    public static void expect(JsonParser parser, JsonToken token) throws JsonParseException {
+        if (parser.getCurrentToken() != token) {
+            throw new JsonParseException("Expected " + token + " but found " + parser.getCurrentToken(), parser.getCurrentLocation());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package cz.cuni.mff.ufal.textan.commons.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Splits text read from a reader to tokens one by one, so text of any length is tokenized in bounded memory.
+ *
+ * Tokens are the same as tokens of {@link Tokenizer}, only the characters of the current token
+ * and of the unread part of the last read chunk are held, so the buffer grows only for tokens
+ * longer than the buffer. Offsets of tokens are relative to the start of the read text.
+ */
+public final class ReaderTokenizer {
+
+    /** Initial size of the buffer. */
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+
+    /** Characters of the current token followed by characters not tokenized yet. */
+    private char[] buffer = new char[BUFFER_SIZE];
+
+    /** Offset of the first character of the buffer in the text. */
+    private long offset = 0;
+
+    /** Index of the first character of the current token in the buffer. */
+    private int start = 0;
+
+    /** Index after the last character of the current token in the buffer. */
+    private int position = 0;
+
+    /** Number of characters in the buffer. */
+    private int limit = 0;
+
+    /** Whether the whole text has been read. */
+    private boolean eof = false;
+
+    /** Type of the current token, null before the first token. */
+    private TokenType type = null;
+
+    /**
+     * Only constructor.
+     * @param reader The reader of the text to tokenize, it is not closed by the tokenizer
+     */
+    public ReaderTokenizer(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the next token.
+     * @return Returns true if the next token was read, false at the end of the text
+     * @throws IOException if the text cannot be read
+     */
+    public boolean next() throws IOException {
+        start = position;
+        if (!ensure(1)) {
+            return false;
+        }
+        final int c = codePoint();
+        type = Tokenizer.classify(c);
+        position += Character.charCount(c);
+
+        if (type != TokenType.PUNCTUATION) {
+            while (ensure(1)) {
+                final int next = codePoint();
+                if (Tokenizer.classify(next) != type) {
+                    break;
+                }
+                position += Character.charCount(next);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets offset of the first character of the current token.
+     * @return Returns offset in the text
+     */
+    public long getStart() {
+        return offset + start;
+    }
+
+    /**
+     * Gets offset after the last character of the current token.
+     * @return Returns offset in the text
+     */
+    public long getEnd() {
+        return offset + position;
+    }
+
+    /**
+     * Gets type of the current token.
+     * @return Returns type of the token
+     */
+    public TokenType getType() {
+        return type;
+    }
+
+    /**
+     * Gets text of the current token.
+     * @return Returns text of the token
+     */
+    public String getText() {
+        return new String(buffer, start, position - start);
+    }
+
+    /**
+     * Reads text until the buffer holds given number of characters after the current position.
+     * @param count The number of characters
+     * @return Returns true if the characters are buffered, false if the text ends before them
+     * @throws IOException if the text cannot be read
+     */
+    private boolean ensure(int count) throws IOException {
+        while (limit - position < count) {
+            if (eof) {
+                return false;
+            }
+            fill();
+        }
+        return true;
+    }
+
+    /**
+     * Gets code point at the current position, both characters of a surrogate pair are read if needed.
+     * @return Returns the code point
+     * @throws IOException if the text cannot be read
+     */
+    private int codePoint() throws IOException {
+        if (Character.isHighSurrogate(buffer[position])) {
+            ensure(2);
+        }
+        return Character.codePointAt(buffer, position, limit);
+    }
+
+    /**
+     * Reads the next chunk of text, characters before the current token are discarded.
+     * @throws IOException if the text cannot be read
+     */
+    private void fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, limit - start);
+            offset += start;
+            position -= start;
+            limit -= start;
+            start = 0;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+        }
+        final int read = reader.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+}
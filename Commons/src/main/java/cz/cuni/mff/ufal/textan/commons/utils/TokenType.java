@@ -0,0 +1,13 @@
+package cz.cuni.mff.ufal.textan.commons.utils;
+
+/**
+ * Type of token produced by {@link Tokenizer}.
+ */
+public enum TokenType {
+    /** Maximal sequence of letters, digits and combining marks. */
+    WORD,
+    /** Single character which is neither part of word nor space. */
+    PUNCTUATION,
+    /** Maximal sequence of whitespace and space separator characters. */
+    SPACE
+}
@@ -0,0 +1,78 @@
+package cz.cuni.mff.ufal.textan.commons.utils;
+
+/**
+ * Splits text to words, punctuation and spaces.
+ *
+ * The text is processed by code points, so characters outside of the BMP are never split,
+ * and characters are classified by their Unicode category rather than by a fixed set of separators:
+ * letters, digits and combining marks (e.g. decomposed Czech diacritics) form words,
+ * whitespace and space separators (including no-break space) form spaces
+ * and every other character is a single punctuation token.
+ * Concatenation of all tokens is always the whole tokenized text.
+ */
+public final class Tokenizer {
+
+    private Tokenizer() {}
+
+    /**
+     * Tokenizes text.
+     * @param text The text to tokenize
+     * @return Returns tokens of the text
+     */
+    public static Tokens tokenize(CharSequence text) {
+        return tokenize(text, 0, text.length(), new Tokens(text.length() / 4 + 1));
+    }
+
+    /**
+     * Tokenizes part of text, offsets of tokens are relative to the start of the text.
+     * @param text The text to tokenize
+     * @param from The offset of the first character to tokenize
+     * @param to The offset after the last character to tokenize
+     * @param tokens The list the tokens are appended to
+     * @return Returns the list of tokens
+     */
+    public static Tokens tokenize(CharSequence text, int from, int to, Tokens tokens) {
+        int i = from;
+        while (i < to) {
+            final int start = i;
+            final int c = Character.codePointAt(text, i);
+            final TokenType type = classify(c);
+            i += Character.charCount(c);
+
+            if (type != TokenType.PUNCTUATION) {
+                while (i < to) {
+                    final int next = Character.codePointAt(text, i);
+                    if (classify(next) != type) {
+                        break;
+                    }
+                    i += Character.charCount(next);
+                }
+            }
+            tokens.add(start, i, type);
+        }
+        return tokens;
+    }
+
+    /**
+     * Gets type of token the character belongs to.
+     * @param c The code point of character
+     * @return Returns type of token
+     */
+    public static TokenType classify(int c) {
+        if (Character.isLetterOrDigit(c)) {
+            return TokenType.WORD;
+        }
+        switch (Character.getType(c)) {
+            case Character.NON_SPACING_MARK:
+            case Character.COMBINING_SPACING_MARK:
+            case Character.ENCLOSING_MARK:
+                return TokenType.WORD;
+            default:
+                break;
+        }
+        if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+            return TokenType.SPACE;
+        }
+        return TokenType.PUNCTUATION;
+    }
+}
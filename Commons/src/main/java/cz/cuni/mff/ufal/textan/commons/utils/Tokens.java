@@ -0,0 +1,113 @@
+package cz.cuni.mff.ufal.textan.commons.utils;
+
+import java.util.Arrays;
+
+/**
+ * Tokens of text stored as offsets into the text.
+ *
+ * Start and end offsets are kept in one primitive array and types in another one,
+ * no strings are created unless {@link #getText(CharSequence, int)} is called.
+ * The instance can be reused for another text after {@link #clear()}.
+ */
+public final class Tokens {
+
+    /** Types indexed by ordinal. */
+    private static final TokenType[] TYPES = TokenType.values();
+
+    /** Start offset of i-th token at index 2i, end offset (exclusive) at index 2i+1. */
+    private int[] offsets;
+
+    /** Ordinal of type of i-th token. */
+    private byte[] types;
+
+    /** Number of tokens. */
+    private int size;
+
+    /**
+     * Creates empty list of tokens.
+     * @param capacity The expected number of tokens
+     */
+    public Tokens(int capacity) {
+        capacity = Math.max(capacity, 1);
+        offsets = new int[2 * capacity];
+        types = new byte[capacity];
+    }
+
+    /**
+     * Gets number of tokens.
+     * @return Returns number of tokens
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets start offset of token.
+     * @param index The index of token
+     * @return Returns offset of the first character of token
+     */
+    public int getStart(int index) {
+        checkIndex(index);
+        return offsets[2 * index];
+    }
+
+    /**
+     * Gets end offset of token.
+     * @param index The index of token
+     * @return Returns offset after the last character of token
+     */
+    public int getEnd(int index) {
+        checkIndex(index);
+        return offsets[2 * index + 1];
+    }
+
+    /**
+     * Gets type of token.
+     * @param index The index of token
+     * @return Returns type of token
+     */
+    public TokenType getType(int index) {
+        checkIndex(index);
+        return TYPES[types[index]];
+    }
+
+    /**
+     * Gets text of token.
+     * @param text The tokenized text
+     * @param index The index of token
+     * @return Returns new string with text of token
+     */
+    public String getText(CharSequence text, int index) {
+        return text.subSequence(getStart(index), getEnd(index)).toString();
+    }
+
+    /**
+     * Removes all tokens, allocated arrays are kept.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Appends token.
+     * @param start The start offset of token
+     * @param end The end offset of token
+     * @param type The type of token
+     */
+    void add(int start, int end, TokenType type) {
+        if (size == types.length) {
+            types = Arrays.copyOf(types, 2 * size);
+            offsets = Arrays.copyOf(offsets, 4 * size);
+        }
+        offsets[2 * size] = start;
+        offsets[2 * size + 1] = end;
+        types[size] = (byte) type.ordinal();
+        size++;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
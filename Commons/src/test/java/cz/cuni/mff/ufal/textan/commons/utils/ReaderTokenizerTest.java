@@ -0,0 +1,141 @@
+package cz.cuni.mff.ufal.textan.commons.utils;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that {@link ReaderTokenizer} produces the same tokens as {@link Tokenizer}
+ * however the text is split to chunks by the reader.
+ */
+public class ReaderTokenizerTest {
+
+    /** Pieces of random texts, they include characters outside of the BMP and decomposed diacritics. */
+    private static final String[] PIECES = {
+            "a", "Ž", "ř", "7", "e\u0301", "𝐀", "😀", "👍🏽",
+            " ", "\u00A0", "\t", "\n", ".", ",", "-", "\"", "…"
+    };
+
+    @Test
+    public void testEmptyText() throws IOException {
+        final ReaderTokenizer tokenizer = new ReaderTokenizer(new StringReader(""));
+        assertFalse(tokenizer.next());
+        assertNull(tokenizer.getType());
+    }
+
+    @Test
+    public void testSurrogatePairsSplitBetweenReads() throws IOException {
+        //letters and emoji outside of the BMP, every read ends inside some surrogate pair
+        final String text = "a𝐀𝐁b 😀😀.𝐂";
+        for (int chunk = 1; chunk <= 4; chunk++) {
+            assertSameTokens(text, new ChunkedReader(text, chunk));
+        }
+    }
+
+    @Test
+    public void testTokensSplitBetweenReads() throws IOException {
+        final String text = "Policie zadržela  řidiče, který nadýchal 1,5 promile.";
+        for (int chunk = 1; chunk <= text.length(); chunk++) {
+            assertSameTokens(text, new ChunkedReader(text, chunk));
+        }
+    }
+
+    @Test
+    public void testTokenLongerThanBuffer() throws IOException {
+        final StringBuilder text = new StringBuilder("start ");
+        for (int i = 0; i < 20000; i++) {
+            text.append(i % 2 == 0 ? "a" : "𝐀");
+        }
+        text.append(" end");
+        assertSameTokens(text.toString(), new StringReader(text.toString()));
+        assertSameTokens(text.toString(), new ChunkedReader(text.toString(), 4093));
+    }
+
+    @Test
+    public void testLoneSurrogateAtEnd() throws IOException {
+        final String text = "ab\uD83D";
+        assertSameTokens(text, new ChunkedReader(text, 1));
+        assertSameTokens(text, new StringReader(text));
+    }
+
+    @Test
+    public void testRandomTextsAndChunks() throws IOException {
+        final Random random = new Random(13);
+        for (int round = 0; round < 500; round++) {
+            final StringBuilder text = new StringBuilder();
+            final int pieces = random.nextInt(round < 450 ? 50 : 5000);
+            for (int i = 0; i < pieces; i++) {
+                //repeated pieces make longer tokens
+                final String piece = PIECES[random.nextInt(PIECES.length)];
+                final int repeat = 1 + (random.nextInt(4) == 0 ? random.nextInt(10) : 0);
+                for (int j = 0; j < repeat; j++) {
+                    text.append(piece);
+                }
+            }
+            final int[] chunks = new int[1 + random.nextInt(5)];
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = random.nextInt(20);
+            }
+            chunks[0] = 1 + random.nextInt(19);
+            assertSameTokens(text.toString(), new ChunkedReader(text.toString(), chunks));
+        }
+    }
+
+    private static void assertSameTokens(String text, Reader reader) throws IOException {
+        final Tokens expected = Tokenizer.tokenize(text);
+        final ReaderTokenizer tokenizer = new ReaderTokenizer(reader);
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue("Missing token " + i + " of " + text, tokenizer.next());
+            assertEquals(expected.getType(i), tokenizer.getType());
+            assertEquals(expected.getText(text, i), tokenizer.getText());
+            assertEquals(expected.getStart(i), tokenizer.getStart());
+            assertEquals(expected.getEnd(i), tokenizer.getEnd());
+        }
+        assertFalse(tokenizer.next());
+    }
+
+    /**
+     * Reader returning at most given numbers of characters by each read, the numbers are repeated cyclically.
+     * Zero means a read returning no characters.
+     */
+    private static final class ChunkedReader extends Reader {
+
+        private final String text;
+
+        private final int[] chunks;
+
+        private int position = 0;
+
+        /** Index of the number of characters returned by the next read. */
+        private int read = 0;
+
+        ChunkedReader(String text, int... chunks) {
+            this.text = text;
+            this.chunks = chunks;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (position == text.length()) {
+                return -1;
+            }
+            final int count = Math.min(Math.min(chunks[read], length), text.length() - position);
+            read = (read + 1) % chunks.length;
+            text.getChars(position, position + count, buffer, offset);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
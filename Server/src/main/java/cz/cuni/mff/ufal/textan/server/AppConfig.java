@@ -1,6 +1,37 @@
 package cz.cuni.mff.ufal.textan.server;
 
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import cz.cuni.mff.ufal.textan.server.analysis.AnalysisCache;
+import cz.cuni.mff.ufal.textan.server.analysis.AnalysisPipeline;
+import cz.cuni.mff.ufal.textan.server.analysis.ITaggerFactory;
+import cz.cuni.mff.ufal.textan.server.analysis.MockTagger;
+import cz.cuni.mff.ufal.textan.server.data.AliasIndex;
+import cz.cuni.mff.ufal.textan.server.data.DocumentStore;
+import cz.cuni.mff.ufal.textan.server.data.DocumentWriter;
+import cz.cuni.mff.ufal.textan.server.data.IdGenerator;
+import cz.cuni.mff.ufal.textan.server.data.ObjectMerger;
+import cz.cuni.mff.ufal.textan.server.graph.GraphStore;
+import cz.cuni.mff.ufal.textan.server.index.DuplicateIndex;
+import cz.cuni.mff.ufal.textan.server.index.InvertedIndex;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.DataSourceInitializer;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.jmx.export.annotation.AnnotationMBeanExporter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by Petr Fanta on 8.12.13.
@@ -11,4 +42,283 @@ import org.springframework.context.annotation.Configuration;
  */
 @Configuration
 public class AppConfig {
+
+    /** Server settings, see TextAnServer.defprops */
+    @Autowired
+    private Environment environment;
+
+    /**
+     * Creates exporter of beans annotated by @ManagedResource to the platform MBean server.
+     * It is declared explicitly, as @EnableMBeanExport reads this class by ASM of Spring 3.2,
+     * which does not support Java 8 class files
+     * @return Returns MBean exporter
+     */
+    @Bean
+    public AnnotationMBeanExporter mbeanExporter() {
+        return new AnnotationMBeanExporter();
+    }
+
+    /**
+     * Creates registry of metrics of the request path, metrics are published by JMX and, if enabled, by the /metrics endpoint
+     * @return Returns metric registry
+     */
+    @Bean
+    public MetricRegistry metricRegistry() {
+        return new MetricRegistry();
+    }
+
+    /**
+     * Creates reporter publishing metrics as MBeans of the platform MBean server
+     * @return Returns JMX reporter
+     */
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public JmxReporter jmxReporter() {
+        return JmxReporter.forRegistry(metricRegistry())
+                .inDomain("cz.cuni.mff.ufal.textan.metrics")
+                .convertDurationsTo(TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Creates executor for long-running operations of web services
+     * @return Returns executor with bounded number of threads and bounded queue
+     */
+    @Bean
+    public ThreadPoolTaskExecutor workerExecutor() {
+        int threads = environment.getProperty("worker.threads", Integer.class);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(environment.getProperty("worker.queueCapacity", Integer.class));
+        executor.setThreadNamePrefix("worker-");
+        return executor;
+    }
+
+    /**
+     * Creates invoker running operations of web services asynchronously using continuations
+     * @return Returns invoker
+     */
+    @Bean
+    public ContinuationInvoker continuationInvoker() {
+        return new ContinuationInvoker(workerExecutor(), environment.getProperty("worker.timeout", Long.class));
+    }
+
+    /**
+     * Creates factory of taggers used by analysis pipeline
+     * @return Returns factory of pure Java mock taggers, native taggers are to be bound here
+     */
+    @Bean
+    public ITaggerFactory taggerFactory() {
+        return MockTagger::new;
+    }
+
+    /**
+     * Creates pipeline analysing documents, its workers load their taggers when the context starts
+     * @return Returns analysis pipeline
+     */
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public AnalysisPipeline analysisPipeline() throws IOException {
+        int workers = environment.getProperty("analysis.workers", Integer.class);
+        if (workers <= 0) {
+            workers = Runtime.getRuntime().availableProcessors();
+        }
+        return new AnalysisPipeline(
+                taggerFactory(),
+                workers,
+                environment.getProperty("analysis.batchSize", Integer.class),
+                environment.getProperty("analysis.queueCapacity", Integer.class),
+                environment.getProperty("analysis.submitTimeout", Long.class),
+                environment.getProperty("analysis.sentenceCacheSize", Integer.class),
+                analysisCache(),
+                metricRegistry());
+    }
+
+    /**
+     * Creates cache of analysis results, its counters are exported by JMX
+     * @return Returns analysis cache
+     * @throws IOException if directory of the disk tier cannot be created
+     */
+    @Bean
+    public AnalysisCache analysisCache() throws IOException {
+        return new AnalysisCache(
+                environment.getProperty("analysis.modelVersion"),
+                environment.getProperty("analysis.cache.maxBytes", Long.class),
+                environment.getProperty("analysis.cache.directory"));
+    }
+
+    /**
+     * Creates pool of database connections, prepared statements are cached for each connection
+     * @return Returns data source
+     */
+    @Bean(destroyMethod = "close")
+    public BasicDataSource dataSource() {
+        BasicDataSource dataSource = new BasicDataSource();
+        dataSource.setDriverClassName(environment.getProperty("db.driver"));
+        dataSource.setUrl(environment.getProperty("db.url"));
+        dataSource.setUsername(environment.getProperty("db.user"));
+        dataSource.setPassword(environment.getProperty("db.password"));
+        dataSource.setMaxActive(environment.getProperty("db.pool.maxActive", Integer.class));
+        dataSource.setMaxIdle(environment.getProperty("db.pool.maxIdle", Integer.class));
+        dataSource.setMaxWait(environment.getProperty("db.pool.maxWait", Long.class));
+        dataSource.setPoolPreparedStatements(true);
+        dataSource.setMaxOpenPreparedStatements(environment.getProperty("db.statementCache", Integer.class));
+        return dataSource;
+    }
+
+    /**
+     * Creates initializer creating missing tables of schema.sql
+     * @return Returns database initializer
+     */
+    @Bean
+    public DataSourceInitializer dataSourceInitializer() {
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
+        populator.addScript(new ClassPathResource("schema.sql"));
+
+        DataSourceInitializer initializer = new DataSourceInitializer();
+        initializer.setDataSource(dataSource());
+        initializer.setDatabasePopulator(populator);
+        initializer.setEnabled(environment.getProperty("db.initSchema", Boolean.class));
+        return initializer;
+    }
+
+    /**
+     * Creates template for JDBC statements
+     * @return Returns JDBC template
+     */
+    @Bean
+    public JdbcTemplate jdbcTemplate() {
+        return new JdbcTemplate(dataSource());
+    }
+
+    /**
+     * Creates manager of transactions of the data source
+     * @return Returns transaction manager
+     */
+    @Bean
+    public DataSourceTransactionManager transactionManager() {
+        return new DataSourceTransactionManager(dataSource());
+    }
+
+    /**
+     * Creates generator of primary keys
+     * @return Returns id generator
+     */
+    @Bean
+    public IdGenerator idGenerator() {
+        return new IdGenerator(jdbcTemplate());
+    }
+
+    /**
+     * Creates index resolving aliases to objects, it is loaded when the context starts
+     * @return Returns alias index
+     */
+    @Bean(initMethod = "load")
+    @DependsOn("dataSourceInitializer")
+    public AliasIndex aliasIndex() {
+        return new AliasIndex(jdbcTemplate(), environment.getProperty("alias.index.maxSize", Integer.class));
+    }
+
+    /**
+     * Creates store of texts of documents, segments are mapped and locations of texts are loaded when the context starts.
+     * A relative directory is resolved next to the file of the database, see {@link #resolveNextToDatabase(String)}
+     * @return Returns document store
+     */
+    @Bean(initMethod = "open", destroyMethod = "close")
+    @DependsOn("dataSourceInitializer")
+    public DocumentStore documentStore() {
+        return new DocumentStore(
+                jdbcTemplate(),
+                resolveNextToDatabase(environment.getProperty("documents.directory")),
+                environment.getProperty("documents.segmentSize", Long.class),
+                environment.getProperty("documents.sync", Boolean.class));
+    }
+
+    /**
+     * Creates writer saving analysed documents
+     * @return Returns document writer
+     */
+    @Bean
+    public DocumentWriter documentWriter() {
+        DocumentWriter writer = new DocumentWriter(jdbcTemplate(), transactionManager(), idGenerator(), aliasIndex(), documentStore());
+        writer.addListener(invertedIndex());
+        writer.addListener(graphStore());
+        writer.addListener(duplicateIndex());
+        return writer;
+    }
+
+    /**
+     * Creates full-text index of documents, it is built from the document store and the database when the context starts
+     * and updated by documents saved by {@link #documentWriter()}
+     * @return Returns inverted index
+     */
+    @Bean(initMethod = "rebuild")
+    @DependsOn("dataSourceInitializer")
+    public InvertedIndex invertedIndex() {
+        return new InvertedIndex(jdbcTemplate(), aliasIndex(), documentStore());
+    }
+
+    /**
+     * Creates index finding duplicates of ingested documents, it is built from the document store when the context starts
+     * and updated by documents saved by {@link #documentWriter()}
+     * @return Returns duplicate index
+     */
+    @Bean(initMethod = "rebuild")
+    public DuplicateIndex duplicateIndex() {
+        return new DuplicateIndex(documentStore(), environment.getProperty("dedup.maxDistance", Integer.class));
+    }
+
+    /**
+     * Creates store of graph of objects, the graph is loaded when the context starts
+     * and updated by documents saved by {@link #documentWriter()}
+     * @return Returns graph store
+     */
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @DependsOn("dataSourceInitializer")
+    public GraphStore graphStore() {
+        return new GraphStore(jdbcTemplate(), environment.getProperty("graph.compactionInterval", Long.class));
+    }
+
+    /**
+     * Creates merger joining objects in background, unfinished joins are resumed when the context starts
+     * @return Returns object merger
+     */
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @DependsOn("dataSourceInitializer")
+    public ObjectMerger objectMerger() {
+        ObjectMerger merger = new ObjectMerger(jdbcTemplate(), transactionManager(), idGenerator(), aliasIndex(),
+                environment.getProperty("merge.batchSize", Integer.class), environment.getProperty("merge.retryDelay", Long.class));
+        merger.addListener(invertedIndex());
+        merger.addListener(graphStore());
+        return merger;
+    }
+
+    /**
+     * Resolves relative path against the directory of the embedded H2 database file, so files kept beside
+     * the database follow it. Paths of other databases (in memory, remote) are resolved against the working directory.
+     * @param path The path
+     * @return Returns the resolved path
+     */
+    private String resolveNextToDatabase(String path) {
+        final String url = environment.getProperty("db.url");
+        final String prefix = "jdbc:h2:";
+        if (Paths.get(path).isAbsolute() || !url.startsWith(prefix)) {
+            return path;
+        }
+        String database = url.substring(prefix.length());
+        final int settings = database.indexOf(';');
+        if (settings >= 0) {
+            database = database.substring(0, settings);
+        }
+        if (database.startsWith("file:")) {
+            database = database.substring("file:".length());
+        } else if (database.matches("^[a-z]{2,}:.*")) {
+            //mem:, tcp:, ssl:, zip: and other protocols
+            return path;
+        }
+        if (database.startsWith("~")) {
+            database = System.getProperty("user.home") + database.substring(1);
+        }
+        final Path parent = Paths.get(database).getParent();
+        return parent != null ? parent.resolve(path).normalize().toString() : path;
+    }
 }
@@ -1,16 +1,41 @@
 package cz.cuni.mff.ufal.textan.server;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.jetty9.InstrumentedConnectionFactory;
+import com.codahale.metrics.jetty9.InstrumentedHandler;
 import org.apache.cxf.transport.servlet.CXFServlet;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.FilterHolder;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.servlets.GzipFilter;
+import org.eclipse.jetty.servlets.QoSFilter;
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
-import org.springframework.context.support.AbstractApplicationContext;
+import org.springframework.core.env.PropertiesPropertySource;
 import org.springframework.web.context.ContextLoaderListener;
 import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
 
+import javax.servlet.DispatcherType;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumSet;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 /**
  * User: Petr Fanta
  * Date: 19.11.13
@@ -21,23 +46,100 @@ public class AppEntry {
 
     private static Logger LOG = LoggerFactory.getLogger(AppEntry.class);
 
+    /** Path to default property file. The file should be inside the jar. */
+    private static final String DEFAULT_JAR_PROPERTIES = "TextAnServer.defprops";
+
+    /** Default path to property file. */
+    private static final String DEFAULT_PROPERTIES = "TextAnServer.properties";
+
     public static void main(String[] args) throws Exception {
 
-        //Create root aplication context
-        AbstractApplicationContext context = new AnnotationConfigApplicationContext(AppConfig.class);
+        Server server = createServer(loadSettings(args));
+
+        LOG.info("Start server.");
+        server.start();
+
+        LOG.info("Server running...");
+        server.join();
+    }
+
+    /**
+     * Creates server with web services configured by settings, the server is not started.
+     * The root application context is created immediately and closed when the server stops.
+     * @param settings The server settings
+     * @return Returns new server
+     */
+    public static Server createServer(Properties settings) {
+
+        //Create root aplication context, settings are available through its environment
+        final AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new PropertiesPropertySource("settings", settings));
+        context.register(AppConfig.class);
+        context.refresh();
         context.registerShutdownHook();
+        MetricRegistry metrics = context.getBean(MetricRegistry.class);
 
-        Server server = new Server(9100);
+        //Setup thread pool with bounded queue of waiting jobs
+        final BlockingQueue<Runnable> jobQueue = new BlockingArrayQueue<>(
+                getInt(settings, "server.threads.queueCapacity"),
+                0,
+                getInt(settings, "server.threads.queueCapacity"));
+        final QueuedThreadPool threadPool = new QueuedThreadPool(
+                getInt(settings, "server.threads.max"),
+                getInt(settings, "server.threads.min"),
+                getInt(settings, "server.threads.idleTimeout"),
+                jobQueue);
+        threadPool.setName("jetty");
+        metrics.register("jetty.threads", (Gauge<Integer>) threadPool::getThreads);
+        metrics.register("jetty.threads.idle", (Gauge<Integer>) threadPool::getIdleThreads);
+        metrics.register("jetty.queue", (Gauge<Integer>) jobQueue::size);
+
+        Server server = new Server(threadPool);
+        server.addConnector(createConnector(server, settings, metrics, "server.port", "server.connector.idleTimeout"));
+        if (Boolean.parseBoolean(settings.getProperty("server.keepalive.enabled"))) {
+            server.addConnector(createConnector(server, settings, metrics, "server.keepalive.port", "server.keepalive.idleTimeout"));
+        }
 
         ServletHolder servletHolder = new ServletHolder(new CXFServlet());
+        servletHolder.setAsyncSupported(true);
 
         //Setup servlet handler
         ServletContextHandler servletContextHandler = new ServletContextHandler();
         servletContextHandler.setContextPath("/");
+        servletContextHandler.setMaxFormContentSize(getInt(settings, "server.requests.maxFormContentSize"));
         servletContextHandler.addServlet(servletHolder, "/soap/*");
+        if (Boolean.parseBoolean(settings.getProperty("server.json.enabled"))) {
+            ServletHolder jsonHolder = new ServletHolder(new JsonServlet());
+            jsonHolder.setAsyncSupported(true);
+            jsonHolder.setInitOrder(1);
+            servletContextHandler.addServlet(jsonHolder, "/json/*");
+        }
+        if (Boolean.parseBoolean(settings.getProperty("server.metrics.enabled"))) {
+            servletContextHandler.addServlet(new ServletHolder(new MetricsServlet()), "/metrics");
+        }
+        if (Boolean.parseBoolean(settings.getProperty("server.gzip.enabled"))) {
+            //SOAP endpoints are compressed by CXF, see WebAppConfig#cxf(), the filter compresses JSON responses
+            FilterHolder gzipHolder = new FilterHolder(GzipFilter.class);
+            gzipHolder.setAsyncSupported(true);
+            gzipHolder.setInitParameter("minGzipSize", settings.getProperty("server.gzip.threshold"));
+            gzipHolder.setInitParameter("mimeTypes", "application/json");
+            gzipHolder.setInitParameter("methods", "GET,POST");
+            servletContextHandler.addFilter(gzipHolder, "/json/*", EnumSet.of(DispatcherType.REQUEST));
+            servletContextHandler.addFilter(gzipHolder, "/metrics", EnumSet.of(DispatcherType.REQUEST));
+        }
         //servletContextHandler.setInitParameter("contextClass", AnnotationConfigWebApplicationContext.class.getName());
         servletContextHandler.setInitParameter("contextConfigLocation", WebAppConfig.class.getName());
 
+        //Limit number of concurrently processed requests, the others wait suspended without holding a thread
+        int maxRequests = getInt(settings, "server.requests.max");
+        if (maxRequests > 0) {
+            FilterHolder qosHolder = new FilterHolder(QoSFilter.class);
+            qosHolder.setAsyncSupported(true);
+            qosHolder.setInitParameter("maxRequests", Integer.toString(maxRequests));
+            qosHolder.setInitParameter("suspendMs", settings.getProperty("server.requests.maxWait"));
+            servletContextHandler.addFilter(qosHolder, "/*", EnumSet.of(DispatcherType.REQUEST));
+        }
+
         //Create root spring's web application context for servlets
         AnnotationConfigWebApplicationContext webContext = new AnnotationConfigWebApplicationContext();
         webContext.setParent(context);
@@ -46,12 +148,108 @@ public class AppEntry {
         //Register root context
         servletContextHandler.addEventListener(new ContextLoaderListener(webContext));
 
-        server.setHandler(servletContextHandler);
+        //Record latencies, active requests and responses by status of all requests
+        InstrumentedHandler instrumentedHandler = new InstrumentedHandler(metrics);
+        instrumentedHandler.setName("jetty");
+        instrumentedHandler.setHandler(servletContextHandler);
+        server.setHandler(instrumentedHandler);
 
-        LOG.info("Start server.");
-        server.start();
+        //Report thread pool usage periodically while the server runs, close the root context when it stops
+        final int monitorInterval = getInt(settings, "server.monitor.interval");
+        server.addLifeCycleListener(new AbstractLifeCycle.AbstractLifeCycleListener() {
 
-        LOG.info("Server running...");
-        server.join();
+            private ScheduledExecutorService monitorExecutor;
+
+            @Override
+            public void lifeCycleStarted(LifeCycle event) {
+                if (monitorInterval > 0) {
+                    monitorExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread thread = new Thread(r, "thread-pool-monitor");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    monitorExecutor.scheduleAtFixedRate(new ThreadPoolMonitor(threadPool, jobQueue), monitorInterval, monitorInterval, TimeUnit.MILLISECONDS);
+                }
+            }
+
+            @Override
+            public void lifeCycleStopped(LifeCycle event) {
+                if (monitorExecutor != null) {
+                    monitorExecutor.shutdownNow();
+                    monitorExecutor = null;
+                }
+                context.close();
+            }
+        });
+
+        return server;
+    }
+
+    /**
+     * Creates HTTP connector configured by settings.
+     * @param server The server the connector belongs to
+     * @param settings The server settings
+     * @param metrics The registry of metrics, durations of connections are recorded to it
+     * @param portKey The key of property with port
+     * @param idleTimeoutKey The key of property with idle timeout of connections
+     * @return Returns new connector
+     */
+    private static ServerConnector createConnector(Server server, Properties settings, MetricRegistry metrics, String portKey, String idleTimeoutKey) {
+        HttpConfiguration httpConfig = new HttpConfiguration();
+        httpConfig.setRequestHeaderSize(getInt(settings, "server.connector.requestHeaderSize"));
+        httpConfig.setOutputBufferSize(getInt(settings, "server.connector.outputBufferSize"));
+        httpConfig.setSendServerVersion(false);
+
+        ServerConnector connector = new ServerConnector(
+                server, null, null, null,
+                getInt(settings, "server.connector.acceptors"),
+                getInt(settings, "server.connector.selectors"),
+                new InstrumentedConnectionFactory(new HttpConnectionFactory(httpConfig),
+                        metrics.timer("jetty.connections." + getInt(settings, portKey))));
+        String host = settings.getProperty("server.host", "");
+        if (!host.isEmpty()) {
+            connector.setHost(host);
+        }
+        connector.setPort(getInt(settings, portKey));
+        connector.setIdleTimeout(getInt(settings, idleTimeoutKey));
+        connector.setAcceptQueueSize(getInt(settings, "server.connector.acceptQueueSize"));
+        return connector;
+    }
+
+    /**
+     * Loads settings from default property file inside the jar and then from property file
+     * given as the first argument or from {@link #DEFAULT_PROPERTIES} if it exists.
+     * @param args The command line arguments
+     * @return Returns server settings
+     * @throws IOException if default properties cannot be read
+     */
+    public static Properties loadSettings(String[] args) throws IOException {
+        //defaults are loaded into the same object (not as Properties defaults) to be visible as Map entries
+        Properties settings = new Properties();
+        try (InputStream is = AppEntry.class.getClassLoader().getResourceAsStream(DEFAULT_JAR_PROPERTIES)) {
+            settings.load(is);
+        }
+
+        String propertyFile = args.length > 0 ? args[0] : DEFAULT_PROPERTIES;
+        try (InputStream is = new FileInputStream(propertyFile)) {
+            settings.load(is);
+            LOG.info("Loaded settings from {}", propertyFile);
+        } catch (IOException e) {
+            if (args.length > 0) {
+                throw e;
+            }
+            LOG.info("Property file {} not found, using defaults", propertyFile);
+        }
+        return settings;
+    }
+
+    /**
+     * Gets integer property.
+     * @param settings The settings
+     * @param key The key of property
+     * @return Returns value of property
+     */
+    private static int getInt(Properties settings, String key) {
+        return Integer.parseInt(settings.getProperty(key).trim());
     }
 }
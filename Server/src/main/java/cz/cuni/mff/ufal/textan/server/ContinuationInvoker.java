@@ -0,0 +1,142 @@
+package cz.cuni.mff.ufal.textan.server;
+
+import org.apache.cxf.continuations.Continuation;
+import org.apache.cxf.continuations.ContinuationProvider;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.ws.WebServiceException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs operations of web services on worker threads.
+ *
+ * The request is suspended by CXF continuation while the operation runs, so it does not hold
+ * a Jetty thread. When the operation finishes, the continuation is resumed and the web service
+ * method is invoked again to return the result.
+ */
+public class ContinuationInvoker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ContinuationInvoker.class);
+
+    /** Executor running the operations. */
+    private final Executor executor;
+
+    /** Time in milliseconds after which the operation is cancelled. */
+    private final long timeout;
+
+    /**
+     * Only constructor.
+     * @param executor The executor running the operations
+     * @param timeout The time in milliseconds after which suspended operation is cancelled
+     */
+    public ContinuationInvoker(Executor executor, long timeout) {
+        this.executor = executor;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Invokes operation asynchronously if the transport supports continuations, synchronously otherwise.
+     * It must be called from web service method and its result must be returned as result of the method.
+     * @param operation The operation to run
+     * @param <T> The type of result
+     * @return Returns result of operation or null if the request was suspended
+     * @throws WebServiceException if the operation failed, timed out or was rejected
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T invoke(Callable<T> operation) {
+        Message message = PhaseInterceptorChain.getCurrentMessage();
+        if (message == null) {
+            return call(operation);
+        }
+
+        //the request was resumed, the continuation must not be requested again as it would restart async processing
+        Exchange exchange = message.getExchange();
+        FutureTask<T> task = (FutureTask<T>) exchange.get(FutureTask.class);
+        if (task != null) {
+            return getResult(task);
+        }
+
+        ContinuationProvider provider = (ContinuationProvider) message.get(ContinuationProvider.class.getName());
+        if (provider == null) {
+            return call(operation);
+        }
+
+        final Continuation continuation = provider.getContinuation();
+        synchronized (continuation) {
+            task = new FutureTask<T>(operation) {
+                @Override
+                protected void done() {
+                    synchronized (continuation) {
+                        continuation.resume();
+                    }
+                }
+            };
+            exchange.put(FutureTask.class, task);
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                exchange.remove(FutureTask.class);
+                LOG.warn("Operation rejected, all workers are busy");
+                throw new WebServiceException("Server is overloaded", e);
+            }
+            continuation.suspend(timeout);
+            return null;
+        }
+    }
+
+    /**
+     * Gets result of finished operation.
+     * @param task The task of the operation
+     * @param <T> The type of result
+     * @return Returns result of operation
+     * @throws WebServiceException if the operation failed or did not finish in time
+     */
+    private static <T> T getResult(FutureTask<T> task) {
+        if (!task.isDone()) {
+            task.cancel(true);
+            throw new WebServiceException("Operation timed out");
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            throw asWebServiceException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebServiceException(e);
+        }
+    }
+
+    /**
+     * Runs operation in current thread.
+     * @param operation The operation to run
+     * @param <T> The type of result
+     * @return Returns result of operation
+     */
+    private static <T> T call(Callable<T> operation) {
+        try {
+            return operation.call();
+        } catch (Exception e) {
+            throw asWebServiceException(e);
+        }
+    }
+
+    /**
+     * Wraps exception thrown by operation.
+     * @param cause The thrown exception
+     * @return Returns exception to be thrown by the web service method
+     */
+    private static WebServiceException asWebServiceException(Throwable cause) {
+        if (cause instanceof WebServiceException) {
+            return (WebServiceException) cause;
+        }
+        return new WebServiceException(cause);
+    }
+}
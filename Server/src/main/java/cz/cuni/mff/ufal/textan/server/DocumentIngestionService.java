@@ -0,0 +1,261 @@
+package cz.cuni.mff.ufal.textan.server;
+
+import cz.cuni.mff.ufal.textan.commons.Document;
+import cz.cuni.mff.ufal.textan.commons.DocumentData;
+import cz.cuni.mff.ufal.textan.commons.Entity;
+import cz.cuni.mff.ufal.textan.commons.IDocumentIngestionService;
+import cz.cuni.mff.ufal.textan.commons.IngestionResult;
+import cz.cuni.mff.ufal.textan.commons.IngestionStatus;
+import cz.cuni.mff.ufal.textan.server.analysis.AnalysisPipeline;
+import cz.cuni.mff.ufal.textan.server.data.AnalysedDocument;
+import cz.cuni.mff.ufal.textan.server.data.DocumentWriter;
+import cz.cuni.mff.ufal.textan.server.index.DuplicateIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+
+import javax.activation.DataHandler;
+import javax.jws.WebService;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.CharacterCodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Web service for batch ingestion of documents sent as MTOM attachments.
+ *
+ * Attachments are read one at a time in the order they arrive; CXF spools large attachments
+ * to disk (see {@link WebAppConfig#ingestionServer()}). Each attachment is read in a single pass
+ * which decodes its text, hashes it and tokenizes it for duplicate detection at once.
+ * Each document is submitted to the analysis pipeline as soon as it is read, so the documents
+ * of a batch are analysed in parallel while the rest of the request is still being read.
+ * At most the maximal number of documents are pending, when the limit is reached the oldest
+ * document is saved and its text released before the next one is read, so batches of any size
+ * are ingested in bounded memory.
+ * Exact duplicates of saved documents or of earlier documents of the same batch are neither analysed
+ * nor saved, their results refer to the original document. Near duplicates are saved without analysis
+ * linked to the similar document, so edited documents are kept while they do not repeat its mentions.
+ * The signature computed while a document is read is passed with the document to the duplicate index.
+ * The duplicate index learns about documents when they are committed, so two batches ingested
+ * concurrently may both save the same new document; later ingestions detect it as a duplicate of the older one.
+ */
+@WebService(endpointInterface = "cz.cuni.mff.ufal.textan.commons.IDocumentIngestionService", serviceName = "DocumentIngestionService")
+public class DocumentIngestionService implements IDocumentIngestionService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DocumentIngestionService.class);
+
+    /** Pipeline analysing ingested documents. */
+    private final AnalysisPipeline pipeline;
+
+    /** Writer saving analysed documents. */
+    private final DocumentWriter writer;
+
+    /** Index of saved documents finding duplicates. */
+    private final DuplicateIndex duplicateIndex;
+
+    /** Maximal number of documents of a batch which are read and not saved yet. */
+    private final int maxPending;
+
+    /**
+     * Only constructor.
+     * @param pipeline The pipeline analysing ingested documents
+     * @param writer The writer saving analysed documents
+     * @param duplicateIndex The index of saved documents finding duplicates
+     * @param maxPending The maximal number of documents of a batch which are read and not saved yet
+     */
+    public DocumentIngestionService(AnalysisPipeline pipeline, DocumentWriter writer, DuplicateIndex duplicateIndex,
+            int maxPending) {
+        this.pipeline = pipeline;
+        this.writer = writer;
+        this.duplicateIndex = duplicateIndex;
+        this.maxPending = Math.max(maxPending, 1);
+    }
+
+    @Override
+    public List<IngestionResult> ingestDocuments(List<DocumentData> documents) {
+        final List<Ingestion> ingestions = new ArrayList<>(documents.size());
+        final List<IngestionResult> results = new ArrayList<>(documents.size());
+        for (DocumentData data : documents) {
+            if (ingestions.size() - results.size() >= maxPending) {
+                results.add(ingestions.get(results.size()).complete());
+            }
+            ingestions.add(ingest(data, ingestions));
+        }
+        while (results.size() < ingestions.size()) {
+            results.add(ingestions.get(results.size()).complete());
+        }
+        LOG.info("Ingested batch of {} documents", documents.size());
+        return results;
+    }
+
+    /**
+     * Reads one document and submits it for analysis unless it is a duplicate.
+     * @param data The document attachment
+     * @param previous The earlier ingestions of the batch
+     * @return Returns pending ingestion, never null
+     */
+    private Ingestion ingest(DocumentData data, List<Ingestion> previous) {
+        final DataHandler content = data.getContent();
+        if (content == null) {
+            return new Ingestion(data.getName(), "Missing content");
+        }
+
+        try (InputStream stream = content.getInputStream()) {
+            final StringBuilder text = new StringBuilder();
+            final DuplicateIndex.Signature signature = DuplicateIndex.sign(stream, text);
+            //the index only grows, so when the text is saved, find returns the document with the same text
+            final boolean exact = duplicateIndex.isExactDuplicate(signature);
+            final int duplicated = duplicateIndex.find(signature);
+            if (duplicated >= 0) {
+                LOG.debug("Document {} duplicates document {}", data.getName(), duplicated);
+                return new Ingestion(data.getName(), signature, exact ? null : new Document(text.toString()), duplicated, null);
+            }
+            for (Ingestion ingestion : previous) {
+                if (ingestion.signature != null && duplicateIndex.isDuplicate(signature, ingestion.signature)) {
+                    LOG.debug("Document {} duplicates document {} of the same batch", data.getName(), ingestion.name);
+                    final boolean exactInBatch = DuplicateIndex.isExactDuplicate(signature, ingestion.signature);
+                    return new Ingestion(data.getName(), signature, exactInBatch ? null : new Document(text.toString()), -1, ingestion);
+                }
+            }
+            final Document document = new Document(text.toString());
+            return new Ingestion(data.getName(), signature, document, pipeline.submit(document, signature.getHash()));
+        } catch (CharacterCodingException e) {
+            LOG.warn("Document {} is not valid UTF-8", data.getName());
+            return new Ingestion(data.getName(), "Document is not valid UTF-8");
+        } catch (IOException e) {
+            LOG.warn("Cannot read document {}", data.getName(), e);
+            return new Ingestion(data.getName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the analysed document.
+     * @param document The document to process
+     * @param entities The entities found in the document
+     * @param originalId The id of document the document is a near duplicate of, -1 if there is none
+     * @param signature The signature of text of the document
+     * @return Returns id of the document
+     */
+    protected int process(Document document, List<Entity> entities, int originalId, DuplicateIndex.Signature signature) {
+        final AnalysedDocument analysed = new AnalysedDocument(document.getText(), entities,
+                Collections.emptyList(), originalId);
+        final int id = writer.write(new DuplicateIndex.SignedDocument(analysed, signature));
+        LOG.debug("Document {} accepted ({} chars, {} entities)", id, document.getText().length(), entities.size());
+        return id;
+    }
+
+    /**
+     * Document which was read and is being analysed, or a duplicate.
+     * Near duplicates keep their document, exact duplicates do not.
+     */
+    private class Ingestion {
+
+        final String name;
+        final DuplicateIndex.Signature signature;
+        final CompletableFuture<List<Entity>> analysis;
+        final String error;
+
+        /** Id of saved document duplicated by this one, -1 if the document is not its duplicate. */
+        final int duplicated;
+
+        /** Earlier ingestion of the batch duplicated by this one, null if there is none. */
+        final Ingestion original;
+
+        /** Document being analysed or near duplicate, it is released when the ingestion is completed. */
+        Document document;
+
+        /** Result of the ingestion, null until it is completed. */
+        IngestionResult result;
+
+        Ingestion(String name, DuplicateIndex.Signature signature, Document document, CompletableFuture<List<Entity>> analysis) {
+            this(name, signature, document, analysis, null, -1, null);
+        }
+
+        Ingestion(String name, DuplicateIndex.Signature signature, Document document, int duplicated, Ingestion original) {
+            this(name, signature, document, null, null, duplicated, original);
+        }
+
+        Ingestion(String name, String error) {
+            this(name, null, null, null, error, -1, null);
+        }
+
+        private Ingestion(String name, DuplicateIndex.Signature signature, Document document,
+                CompletableFuture<List<Entity>> analysis, String error, int duplicated, Ingestion original) {
+            this.name = name;
+            this.signature = signature;
+            this.document = document;
+            this.analysis = analysis;
+            this.error = error;
+            this.duplicated = duplicated;
+            this.original = original;
+        }
+
+        /**
+         * Waits for analysis and processes the document.
+         * Ingestions must be completed in order, so originals are completed before their duplicates.
+         * @return Returns result of ingestion
+         */
+        IngestionResult complete() {
+            result = completeOnce();
+            document = null;
+            return result;
+        }
+
+        private IngestionResult completeOnce() {
+            if (error != null) {
+                return new IngestionResult(name, -1, IngestionStatus.FAILED, error);
+            }
+            if (duplicated >= 0) {
+                if (document != null) {
+                    return save(null, duplicated);
+                }
+                return new IngestionResult(name, duplicated, IngestionStatus.DUPLICATE, "Duplicate of document " + duplicated);
+            }
+            if (original != null) {
+                if (original.result.getStatus() == IngestionStatus.FAILED) {
+                    if (document != null) {
+                        //the similar document was not saved, so this one is analysed instead
+                        return save(pipeline.submit(document, signature.getHash()), -1);
+                    }
+                    return new IngestionResult(name, -1, IngestionStatus.FAILED, original.result.getMessage());
+                }
+                final int id = original.result.getId();
+                if (document != null) {
+                    return save(null, id);
+                }
+                return new IngestionResult(name, id, IngestionStatus.DUPLICATE, "Duplicate of document " + id);
+            }
+            return save(analysis, -1);
+        }
+
+        /**
+         * Saves the document.
+         * @param analysis The analysis of the document, null to save near duplicate without analysis
+         * @param originalId The id of document the document is a near duplicate of, -1 if there is none
+         * @return Returns result of ingestion
+         */
+        private IngestionResult save(CompletableFuture<List<Entity>> analysis, int originalId) {
+            try {
+                final List<Entity> entities = analysis != null ? analysis.get() : Collections.<Entity>emptyList();
+                final int id = process(document, entities, originalId, signature);
+                if (originalId >= 0) {
+                    return new IngestionResult(name, id, IngestionStatus.NEAR_DUPLICATE, "Similar to document " + originalId);
+                }
+                return new IngestionResult(name, id, IngestionStatus.OK, null);
+            } catch (DataAccessException e) {
+                LOG.warn("Cannot save document {}", name, e);
+                return new IngestionResult(name, -1, IngestionStatus.FAILED, e.getMessage());
+            } catch (ExecutionException e) {
+                LOG.warn("Cannot analyse document {}", name, e.getCause());
+                return new IngestionResult(name, -1, IngestionStatus.FAILED, e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new IngestionResult(name, -1, IngestionStatus.FAILED, "Interrupted");
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package cz.cuni.mff.ufal.textan.server;
+
+import cz.cuni.mff.ufal.textan.commons.GraphEdge;
+import cz.cuni.mff.ufal.textan.commons.IGraphWebService;
+import cz.cuni.mff.ufal.textan.server.graph.GraphStore;
+
+import javax.jws.WebService;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Web service answering queries on graph of objects.
+ */
+@WebService(endpointInterface = "cz.cuni.mff.ufal.textan.commons.IGraphWebService", serviceName = "GraphWebService")
+public class GraphWebService implements IGraphWebService {
+
+    /** Store of the graph */
+    private final GraphStore store;
+
+    /** Maximal distance of objects in queries */
+    private final int maxHops;
+
+    /** Maximal number of edges returned by one query */
+    private final int maxEdges;
+
+    /**
+     * Only constructor.
+     * @param store The store of the graph
+     * @param maxHops The maximal distance of objects in queries
+     * @param maxEdges The maximal number of edges returned by one query
+     */
+    public GraphWebService(GraphStore store, int maxHops, int maxEdges) {
+        this.store = store;
+        this.maxHops = maxHops;
+        this.maxEdges = maxEdges;
+    }
+
+    @Override
+    public List<Integer> getNeighbours(int objectId) {
+        return toList(store.getGraph().getNeighbours(objectId));
+    }
+
+    @Override
+    public List<GraphEdge> getNeighbourhood(int objectId, int hops, int limit) {
+        return store.getGraph().getNeighbourhood(objectId, Math.min(hops, maxHops), Math.min(limit, maxEdges));
+    }
+
+    @Override
+    public List<Integer> getShortestPath(int fromObjectId, int toObjectId, int maxHops) {
+        return toList(store.getGraph().getShortestPath(fromObjectId, toObjectId, Math.min(maxHops, this.maxHops)));
+    }
+
+    private static List<Integer> toList(int[] ids) {
+        final List<Integer> list = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,297 @@
+package cz.cuni.mff.ufal.textan.server;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import cz.cuni.mff.ufal.textan.commons.Document;
+import cz.cuni.mff.ufal.textan.commons.Entity;
+import cz.cuni.mff.ufal.textan.commons.ISimpleWebService;
+import cz.cuni.mff.ufal.textan.commons.json.JsonCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.WebApplicationContextUtils;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Serves operations of {@link ISimpleWebService} as JSON over HTTP, see {@link JsonCodec}.
+ *
+ * It is a lighter alternative to the SOAP endpoint for large documents, requests and responses
+ * are parsed and written as streams of tokens without building XML envelopes.
+ * Requests are processed asynchronously on worker threads of the main context like SOAP requests.
+ * A request not answered in time gets status 503, the response is written either by the worker
+ * or by the timeout, whichever comes first.
+ * Gzipped requests are accepted, responses are compressed by a filter (see {@link AppEntry}).
+ */
+public class JsonServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(JsonServlet.class);
+
+    /** Service implementing the operations */
+    private ISimpleWebService service;
+
+    /** Executor running the operations */
+    private Executor executor;
+
+    /** Time in milliseconds after which the request is cancelled */
+    private long timeout;
+
+    @Override
+    public void init() throws ServletException {
+        WebApplicationContext context = WebApplicationContextUtils.getRequiredWebApplicationContext(getServletContext());
+        service = context.getBean(SimpleWebService.class);
+        executor = context.getBean("workerExecutor", Executor.class);
+        timeout = context.getEnvironment().getProperty("worker.timeout", Long.class);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
+        final String path = request.getServletPath() + (request.getPathInfo() != null ? request.getPathInfo() : "") + "/";
+        if (!path.startsWith(JsonCodec.SIMPLE_PATH)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        final String operation = path.substring(JsonCodec.SIMPLE_PATH.length(), path.length() - 1);
+
+        final AsyncContext async = request.startAsync();
+        async.setTimeout(timeout);
+        final Exchange exchange = new Exchange(async, response);
+        async.addListener(exchange);
+        try {
+            executor.execute(() -> {
+                try {
+                    process(operation, (HttpServletRequest) async.getRequest(), exchange);
+                } finally {
+                    exchange.complete();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Operation rejected, all workers are busy");
+            writeError(exchange, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "All workers are busy");
+            exchange.complete();
+        }
+    }
+
+    /**
+     * Reads parameters, invokes operation and writes its result.
+     * @param operation The name of operation
+     * @param request The request
+     * @param exchange The exchange of the request
+     */
+    private void process(String operation, HttpServletRequest request, Exchange exchange) {
+        String text = null;
+        String name = null;
+        Document document = null;
+        try (JsonParser parser = JsonCodec.FACTORY.createParser(getInputStream(request))) {
+            if (parser.nextToken() != null) {
+                JsonCodec.expect(parser, JsonToken.START_OBJECT);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    parser.nextToken();
+                    switch (field) {
+                        case "text":
+                            text = parser.getValueAsString();
+                            break;
+                        case "name":
+                            name = parser.getValueAsString();
+                            break;
+                        case "document":
+                            document = JsonCodec.readDocument(parser);
+                            break;
+                        default:
+                            parser.skipChildren();
+                    }
+                }
+            }
+        } catch (JsonParseException e) {
+            writeError(exchange, HttpServletResponse.SC_BAD_REQUEST, e.getOriginalMessage());
+            return;
+        } catch (IOException | IllegalStateException e) {
+            //the request cannot be read after it has been completed by the timeout
+            LOG.warn("Reading of request failed", e);
+            return;
+        }
+
+        try {
+            switch (operation) {
+                case "helloWorld":
+                    writeString(exchange, service.helloWorld());
+                    break;
+                case "hello":
+                    writeString(exchange, service.hello(name));
+                    break;
+                case "toDocument":
+                    Document result = service.toDocument(text);
+                    try (JsonGenerator generator = createGenerator(exchange)) {
+                        generator.writeFieldName(JsonCodec.RETURN);
+                        JsonCodec.writeDocument(generator, result);
+                        generator.writeEndObject();
+                    }
+                    break;
+                case "fromDocument":
+                    if (document == null) {
+                        writeError(exchange, HttpServletResponse.SC_BAD_REQUEST, "Missing document");
+                        break;
+                    }
+                    writeString(exchange, service.fromDocument(document));
+                    break;
+                case "getEntities":
+                    if (document == null) {
+                        writeError(exchange, HttpServletResponse.SC_BAD_REQUEST, "Missing document");
+                        break;
+                    }
+                    List<Entity> entities = service.getEntities(document);
+                    try (JsonGenerator generator = createGenerator(exchange)) {
+                        generator.writeFieldName(JsonCodec.RETURN);
+                        JsonCodec.writeEntities(generator, entities);
+                        generator.writeEndObject();
+                    }
+                    break;
+                default:
+                    writeError(exchange, HttpServletResponse.SC_NOT_FOUND, "Unknown operation " + operation);
+            }
+        } catch (IOException e) {
+            LOG.warn("Writing of response failed", e);
+        } catch (RuntimeException e) {
+            LOG.error("Operation {} failed", operation, e);
+            writeError(exchange, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, String.valueOf(e.getMessage()));
+        }
+    }
+
+    /**
+     * Gets body of request, gzipped body is decompressed.
+     * @param request The request
+     * @return Returns stream of request body
+     * @throws IOException if the body cannot be read
+     */
+    private static InputStream getInputStream(HttpServletRequest request) throws IOException {
+        if ("gzip".equalsIgnoreCase(request.getHeader("Content-Encoding"))) {
+            return new GZIPInputStream(request.getInputStream());
+        }
+        return request.getInputStream();
+    }
+
+    /**
+     * Starts response object.
+     * @param exchange The exchange of the request
+     * @return Returns generator positioned in the response object
+     * @throws IOException if the output fails or the request has timed out
+     */
+    private static JsonGenerator createGenerator(Exchange exchange) throws IOException {
+        if (!exchange.claim()) {
+            throw new IOException("Request has timed out");
+        }
+        return startResponse(exchange.response);
+    }
+
+    private static JsonGenerator startResponse(HttpServletResponse response) throws IOException {
+        response.setContentType(JsonCodec.CONTENT_TYPE);
+        JsonGenerator generator = JsonCodec.FACTORY.createGenerator(response.getOutputStream());
+        generator.writeStartObject();
+        return generator;
+    }
+
+    private static void writeString(Exchange exchange, String value) throws IOException {
+        try (JsonGenerator generator = createGenerator(exchange)) {
+            generator.writeStringField(JsonCodec.RETURN, value);
+            generator.writeEndObject();
+        }
+    }
+
+    private static void writeError(Exchange exchange, int status, String message) {
+        if (exchange.claim()) {
+            writeError(exchange.response, status, message);
+        }
+    }
+
+    private static void writeError(HttpServletResponse response, int status, String message) {
+        if (response.isCommitted()) {
+            return;
+        }
+        response.reset();
+        response.setStatus(status);
+        try (JsonGenerator generator = startResponse(response)) {
+            generator.writeStringField(JsonCodec.ERROR, message);
+            generator.writeEndObject();
+        } catch (IOException e) {
+            LOG.warn("Writing of error failed", e);
+        }
+    }
+
+    /**
+     * Asynchronous request whose response is written either by the worker or by the timeout.
+     */
+    private static class Exchange implements AsyncListener {
+
+        private static final int OPEN = 0;
+        private static final int WORKER = 1;
+        private static final int TIMED_OUT = 2;
+
+        final AsyncContext async;
+        final HttpServletResponse response;
+
+        /** Who writes the response. */
+        private final AtomicInteger owner = new AtomicInteger(OPEN);
+
+        Exchange(AsyncContext async, HttpServletResponse response) {
+            this.async = async;
+            this.response = response;
+        }
+
+        /**
+         * Claims the response for the worker.
+         * @return Returns false if the request has timed out and the worker must not write
+         */
+        boolean claim() {
+            return owner.compareAndSet(OPEN, WORKER) || owner.get() == WORKER;
+        }
+
+        /**
+         * Completes the request unless it has been completed by the timeout.
+         */
+        void complete() {
+            if (claim()) {
+                async.complete();
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            if (owner.compareAndSet(OPEN, TIMED_OUT)) {
+                LOG.warn("Operation timed out after {} ms", async.getTimeout());
+                writeError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Operation timed out");
+                async.complete();
+            }
+            //otherwise the worker is writing the response and completes it
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
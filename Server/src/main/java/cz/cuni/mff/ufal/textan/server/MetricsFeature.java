@@ -0,0 +1,342 @@
+package cz.cuni.mff.ufal.textan.server;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.apache.cxf.Bus;
+import org.apache.cxf.endpoint.Server;
+import org.apache.cxf.endpoint.ServerLifeCycleListener;
+import org.apache.cxf.endpoint.ServerLifeCycleManager;
+import org.apache.cxf.feature.AbstractFeature;
+import org.apache.cxf.interceptor.BareOutInterceptor;
+import org.apache.cxf.interceptor.DocLiteralInInterceptor;
+import org.apache.cxf.interceptor.InterceptorChain;
+import org.apache.cxf.interceptor.InterceptorProvider;
+import org.apache.cxf.interceptor.WrappedOutInterceptor;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.apache.cxf.service.model.BindingOperationInfo;
+import org.apache.cxf.transport.Destination;
+import org.apache.cxf.transport.MessageObserver;
+import org.apache.cxf.transport.http.AbstractHTTPDestination;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records metrics of SOAP requests passing the CXF interceptor chains.
+ *
+ * Interceptors stamp the exchange when a request is received, when its body is unmarshalled,
+ * when the operation is invoked and returns and when the response is marshalled and sent.
+ * When the response (or fault) is sent, durations of the stages update timers shared by all operations,
+ * the whole duration updates timer of the operation and stage timings are logged at debug level.
+ * Requests which end without sending a response, one-way calls, requests of disconnected clients
+ * and requests failing before the response is sent, are recorded when their interceptor chain ends,
+ * two-way requests as faults. Message observers of all servers of the bus are wrapped to see it.
+ * Sizes of requests are taken from their Content-Length, sizes of responses are counted before compression.
+ */
+public class MetricsFeature extends AbstractFeature {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsFeature.class);
+
+    private final MetricRegistry metrics;
+
+    private final Timer requests;
+    private final Timer unmarshalling;
+    private final Timer invocations;
+    private final Timer marshalling;
+    private final Counter activeRequests;
+    private final Histogram requestBytes;
+    private final Histogram responseBytes;
+    private final Meter faults;
+
+    /**
+     * Only constructor.
+     * @param metrics The registry the metrics are recorded to
+     */
+    public MetricsFeature(MetricRegistry metrics) {
+        this.metrics = metrics;
+        this.requests = metrics.timer("soap.requests");
+        this.unmarshalling = metrics.timer("soap.unmarshal");
+        this.invocations = metrics.timer("soap.invoke");
+        this.marshalling = metrics.timer("soap.marshal");
+        this.activeRequests = metrics.counter("soap.requests.active");
+        this.requestBytes = metrics.histogram("soap.request.bytes");
+        this.responseBytes = metrics.histogram("soap.response.bytes");
+        this.faults = metrics.meter("soap.faults");
+    }
+
+    @Override
+    public void initialize(Bus bus) {
+        super.initialize(bus);
+        final ServerLifeCycleManager manager = bus.getExtension(ServerLifeCycleManager.class);
+        if (manager != null) {
+            manager.registerListener(new ServerLifeCycleListener() {
+                @Override
+                public void startServer(Server server) {
+                    final Destination destination = server.getDestination();
+                    if (!(destination.getMessageObserver() instanceof CompletionObserver)) {
+                        destination.setMessageObserver(new CompletionObserver(destination.getMessageObserver()));
+                    }
+                }
+
+                @Override
+                public void stopServer(Server server) {
+                }
+            });
+        }
+    }
+
+    @Override
+    protected void initializeProvider(InterceptorProvider provider, Bus bus) {
+        provider.getInInterceptors().add(new ReceiveInterceptor());
+        provider.getInInterceptors().add(new StampInterceptor(Phase.UNMARSHAL, Stage.UNMARSHAL, DocLiteralInInterceptor.class.getName()));
+        provider.getInInterceptors().add(new StampInterceptor(Phase.PRE_INVOKE, Stage.INVOKE));
+
+        provider.getOutInterceptors().add(new StampInterceptor(Phase.SETUP, Stage.INVOKED));
+        provider.getOutInterceptors().add(new CountingInterceptor());
+        provider.getOutInterceptors().add(new StampInterceptor(Phase.MARSHAL, Stage.MARSHAL,
+                WrappedOutInterceptor.class.getName(), BareOutInterceptor.class.getName()));
+        provider.getOutInterceptors().add(new StampInterceptor(Phase.POST_MARSHAL, Stage.MARSHALLED));
+        provider.getOutInterceptors().add(new SendInterceptor(false));
+
+        provider.getOutFaultInterceptors().add(new StampInterceptor(Phase.SETUP, Stage.INVOKED));
+        provider.getOutFaultInterceptors().add(new CountingInterceptor());
+        provider.getOutFaultInterceptors().add(new SendInterceptor(true));
+    }
+
+    /**
+     * Records stages of request and its metrics when the response is sent.
+     * @param stamps The stamps of the request
+     * @param exchange The exchange of the request
+     * @param fault Whether the response is a fault
+     */
+    private void complete(Stamps stamps, Exchange exchange, boolean fault) {
+        final long now = System.nanoTime();
+        activeRequests.dec();
+        requests.update(now - stamps.times[Stage.RECEIVE.ordinal()], TimeUnit.NANOSECONDS);
+        final long unmarshal = stamps.between(Stage.UNMARSHAL, Stage.INVOKE);
+        final long invoke = stamps.between(Stage.INVOKE, Stage.INVOKED);
+        final long marshal = stamps.between(Stage.MARSHAL, Stage.MARSHALLED);
+        if (unmarshal >= 0) {
+            unmarshalling.update(unmarshal, TimeUnit.NANOSECONDS);
+        }
+        if (invoke >= 0) {
+            invocations.update(invoke, TimeUnit.NANOSECONDS);
+        }
+        if (marshal >= 0) {
+            marshalling.update(marshal, TimeUnit.NANOSECONDS);
+        }
+        if (stamps.output != null) {
+            responseBytes.update(stamps.output.count);
+        }
+        if (fault) {
+            faults.mark();
+        }
+
+        String operation = "unknown";
+        final BindingOperationInfo info = exchange.getBindingOperationInfo();
+        if (info != null) {
+            operation = exchange.getService().getName().getLocalPart() + "." + info.getName().getLocalPart();
+            metrics.timer("soap." + operation).update(now - stamps.times[Stage.RECEIVE.ordinal()], TimeUnit.NANOSECONDS);
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("{} {} in {} us: unmarshal {} us, invoke {} us, marshal {} us",
+                    operation, fault ? "failed" : "done", (now - stamps.times[Stage.RECEIVE.ordinal()]) / 1000,
+                    unmarshal / 1000, invoke / 1000, marshal / 1000);
+        }
+    }
+
+    /**
+     * Stages of request.
+     */
+    private enum Stage {
+        RECEIVE, UNMARSHAL, INVOKE, INVOKED, MARSHAL, MARSHALLED
+    }
+
+    /**
+     * Times of stages of request, it is stored in the exchange.
+     */
+    private static class Stamps {
+
+        /** Nanoseconds when each stage started, 0 if it has not started. */
+        final long[] times = new long[Stage.values().length];
+
+        /** Stream counting bytes of response. */
+        CountingOutputStream output;
+
+        /**
+         * Gets nanoseconds between stages.
+         * @param from The first stage
+         * @param to The second stage
+         * @return Returns the nanoseconds or -1 if a stage has not started
+         */
+        long between(Stage from, Stage to) {
+            final long start = times[from.ordinal()];
+            final long end = times[to.ordinal()];
+            return start != 0 && end != 0 ? end - start : -1;
+        }
+    }
+
+    /**
+     * Starts recording of received request.
+     */
+    private class ReceiveInterceptor extends AbstractPhaseInterceptor<Message> {
+
+        ReceiveInterceptor() {
+            super(Phase.RECEIVE);
+        }
+
+        @Override
+        public void handleMessage(Message message) {
+            //WSDL and schema requests are answered without passing the whole chain
+            if ("GET".equals(message.get(Message.HTTP_REQUEST_METHOD))) {
+                return;
+            }
+            final Stamps stamps = new Stamps();
+            stamps.times[Stage.RECEIVE.ordinal()] = System.nanoTime();
+            message.getExchange().put(Stamps.class, stamps);
+            activeRequests.inc();
+
+            final HttpServletRequest request = (HttpServletRequest) message.get(AbstractHTTPDestination.HTTP_REQUEST);
+            if (request != null && request.getContentLength() >= 0) {
+                requestBytes.update(request.getContentLength());
+            }
+        }
+    }
+
+    /**
+     * Records time when stage of request starts.
+     */
+    private static class StampInterceptor extends AbstractPhaseInterceptor<Message> {
+
+        private final Stage stage;
+
+        /**
+         * Only constructor.
+         * @param phase The phase of the interceptor
+         * @param stage The recorded stage
+         * @param before The names of interceptors of the phase starting the stage, none if the stage starts with the phase
+         */
+        StampInterceptor(String phase, Stage stage, String... before) {
+            super(stage.name() + "." + phase, phase);
+            this.stage = stage;
+            for (String name : before) {
+                addBefore(name);
+            }
+        }
+
+        @Override
+        public void handleMessage(Message message) {
+            final Stamps stamps = message.getExchange().get(Stamps.class);
+            if (stamps != null && stamps.times[stage.ordinal()] == 0) {
+                stamps.times[stage.ordinal()] = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Counts bytes of response before it is compressed.
+     */
+    private static class CountingInterceptor extends AbstractPhaseInterceptor<Message> {
+
+        CountingInterceptor() {
+            super(Phase.PRE_STREAM);
+        }
+
+        @Override
+        public void handleMessage(Message message) {
+            final Stamps stamps = message.getExchange().get(Stamps.class);
+            final OutputStream output = message.getContent(OutputStream.class);
+            if (stamps != null && output != null) {
+                stamps.output = new CountingOutputStream(output);
+                message.setContent(OutputStream.class, stamps.output);
+            }
+        }
+    }
+
+    /**
+     * Records metrics of request when its response is sent.
+     */
+    private class SendInterceptor extends AbstractPhaseInterceptor<Message> {
+
+        private final boolean fault;
+
+        SendInterceptor(boolean fault) {
+            super(Phase.SEND_ENDING);
+            this.fault = fault;
+        }
+
+        @Override
+        public void handleMessage(Message message) {
+            //removed, so a request is recorded once even if both response and fault are sent
+            final Stamps stamps = (Stamps) message.getExchange().remove(Stamps.class.getName());
+            if (stamps != null) {
+                complete(stamps, message.getExchange(), fault);
+            }
+        }
+    }
+
+    /**
+     * Records requests whose interceptor chain ended without sending a response.
+     * Suspended requests are recorded when their resumed chain ends.
+     */
+    private class CompletionObserver implements MessageObserver {
+
+        private final MessageObserver observer;
+
+        CompletionObserver(MessageObserver observer) {
+            this.observer = observer;
+        }
+
+        @Override
+        public void onMessage(Message message) {
+            try {
+                observer.onMessage(message);
+            } finally {
+                final InterceptorChain chain = message.getInterceptorChain();
+                final Exchange exchange = message.getExchange();
+                if (exchange != null && (chain == null
+                        || chain.getState() == InterceptorChain.State.COMPLETE || chain.getState() == InterceptorChain.State.ABORTED)) {
+                    final Stamps stamps = (Stamps) exchange.remove(Stamps.class.getName());
+                    if (stamps != null) {
+                        complete(stamps, exchange, !exchange.isOneWay());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Stream counting written bytes.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package cz.cuni.mff.ufal.textan.server;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metered;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.WebApplicationContextUtils;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes metrics of the main context as JSON.
+ *
+ * Metrics are grouped by their kind (gauges, counters, histograms, meters, timers) and sorted by name.
+ * Rates are in events per second, durations of timers are in milliseconds.
+ */
+public class MetricsServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final double DURATION_FACTOR = 1.0 / TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    /** Published metrics */
+    private MetricRegistry metrics;
+
+    @Override
+    public void init() throws ServletException {
+        WebApplicationContext context = WebApplicationContextUtils.getRequiredWebApplicationContext(getServletContext());
+        metrics = context.getBean(MetricRegistry.class);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+
+        try (JsonGenerator generator = jsonFactory.createGenerator(response.getOutputStream())) {
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartObject();
+
+            generator.writeObjectFieldStart("gauges");
+            //the registry returns raw gauges
+            for (Map.Entry<String, ?> entry : metrics.getGauges().entrySet()) {
+                Object value = ((Gauge<?>) entry.getValue()).getValue();
+                if (value instanceof Number) {
+                    generator.writeNumberField(entry.getKey(), ((Number) value).doubleValue());
+                } else {
+                    generator.writeStringField(entry.getKey(), String.valueOf(value));
+                }
+            }
+            generator.writeEndObject();
+
+            generator.writeObjectFieldStart("counters");
+            for (Map.Entry<String, Counter> entry : metrics.getCounters().entrySet()) {
+                generator.writeNumberField(entry.getKey(), entry.getValue().getCount());
+            }
+            generator.writeEndObject();
+
+            generator.writeObjectFieldStart("histograms");
+            for (Map.Entry<String, Histogram> entry : metrics.getHistograms().entrySet()) {
+                generator.writeObjectFieldStart(entry.getKey());
+                generator.writeNumberField("count", entry.getValue().getCount());
+                writeSnapshot(generator, entry.getValue().getSnapshot(), 1);
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+
+            generator.writeObjectFieldStart("meters");
+            for (Map.Entry<String, Meter> entry : metrics.getMeters().entrySet()) {
+                generator.writeObjectFieldStart(entry.getKey());
+                writeRates(generator, entry.getValue());
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+
+            generator.writeObjectFieldStart("timers");
+            for (Map.Entry<String, Timer> entry : metrics.getTimers().entrySet()) {
+                generator.writeObjectFieldStart(entry.getKey());
+                writeRates(generator, entry.getValue());
+                writeSnapshot(generator, entry.getValue().getSnapshot(), DURATION_FACTOR);
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Writes count and rates of events.
+     * @param generator The generator of JSON
+     * @param metered The metric counting events
+     * @throws IOException if the rates cannot be written
+     */
+    private static void writeRates(JsonGenerator generator, Metered metered) throws IOException {
+        generator.writeNumberField("count", metered.getCount());
+        generator.writeNumberField("meanRate", metered.getMeanRate());
+        generator.writeNumberField("m1Rate", metered.getOneMinuteRate());
+        generator.writeNumberField("m5Rate", metered.getFiveMinuteRate());
+        generator.writeNumberField("m15Rate", metered.getFifteenMinuteRate());
+    }
+
+    /**
+     * Writes statistics of snapshot of values.
+     * @param generator The generator of JSON
+     * @param snapshot The snapshot
+     * @param factor The factor converting values to written units
+     * @throws IOException if the statistics cannot be written
+     */
+    private static void writeSnapshot(JsonGenerator generator, Snapshot snapshot, double factor) throws IOException {
+        generator.writeNumberField("min", snapshot.getMin() * factor);
+        generator.writeNumberField("max", snapshot.getMax() * factor);
+        generator.writeNumberField("mean", snapshot.getMean() * factor);
+        generator.writeNumberField("stddev", snapshot.getStdDev() * factor);
+        generator.writeNumberField("p50", snapshot.getMedian() * factor);
+        generator.writeNumberField("p75", snapshot.get75thPercentile() * factor);
+        generator.writeNumberField("p95", snapshot.get95thPercentile() * factor);
+        generator.writeNumberField("p99", snapshot.get99thPercentile() * factor);
+        generator.writeNumberField("p999", snapshot.get999thPercentile() * factor);
+    }
+}
@@ -0,0 +1,35 @@
+package cz.cuni.mff.ufal.textan.server;
+
+import cz.cuni.mff.ufal.textan.commons.IObjectMergeService;
+import cz.cuni.mff.ufal.textan.commons.MergeProgress;
+import cz.cuni.mff.ufal.textan.server.data.ObjectMerger;
+
+import javax.jws.WebService;
+
+/**
+ * Web service joining objects in background.
+ */
+@WebService(endpointInterface = "cz.cuni.mff.ufal.textan.commons.IObjectMergeService", serviceName = "ObjectMergeService")
+public class ObjectMergeService implements IObjectMergeService {
+
+    /** Merger running the jobs */
+    private final ObjectMerger merger;
+
+    /**
+     * Only constructor.
+     * @param merger The merger running the jobs
+     */
+    public ObjectMergeService(ObjectMerger merger) {
+        this.merger = merger;
+    }
+
+    @Override
+    public MergeProgress joinObjects(int objectId1, int objectId2) {
+        return merger.submit(objectId1, objectId2);
+    }
+
+    @Override
+    public MergeProgress getMergeProgress(int jobId) {
+        return merger.getProgress(jobId);
+    }
+}
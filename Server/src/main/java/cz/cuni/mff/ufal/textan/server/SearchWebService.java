@@ -0,0 +1,50 @@
+package cz.cuni.mff.ufal.textan.server;
+
+import cz.cuni.mff.ufal.textan.commons.ISearchWebService;
+import cz.cuni.mff.ufal.textan.commons.SearchHit;
+import cz.cuni.mff.ufal.textan.server.data.DocumentStore;
+import cz.cuni.mff.ufal.textan.server.index.InvertedIndex;
+
+import javax.jws.WebService;
+import java.nio.CharBuffer;
+import java.util.List;
+
+/**
+ * Web service searching documents in the inverted index, texts of snippets are read from the document store.
+ */
+@WebService(endpointInterface = "cz.cuni.mff.ufal.textan.commons.ISearchWebService", serviceName = "SearchWebService")
+public class SearchWebService implements ISearchWebService {
+
+    /** Index of documents */
+    private final InvertedIndex index;
+
+    /** Store of texts of documents */
+    private final DocumentStore documentStore;
+
+    /** Maximal number of hits returned by one search */
+    private final int maxLimit;
+
+    /**
+     * Only constructor.
+     * @param index The index of documents
+     * @param documentStore The store of texts of documents
+     * @param maxLimit The maximal number of hits returned by one search
+     */
+    public SearchWebService(InvertedIndex index, DocumentStore documentStore, int maxLimit) {
+        this.index = index;
+        this.documentStore = documentStore;
+        this.maxLimit = maxLimit;
+    }
+
+    @Override
+    public List<SearchHit> search(String query, int limit) {
+        final List<SearchHit> hits = index.search(query, Math.min(limit, maxLimit));
+        for (SearchHit hit : hits) {
+            final CharBuffer text = documentStore.getText(hit.getDocumentId());
+            if (text != null && hit.getSnippetStart() <= hit.getSnippetEnd() && hit.getSnippetEnd() <= text.length()) {
+                hit.setSnippet(text.subSequence(hit.getSnippetStart(), hit.getSnippetEnd()).toString());
+            }
+        }
+        return hits;
+    }
+}
@@ -1,10 +1,16 @@
 package cz.cuni.mff.ufal.textan.server;
 
 import cz.cuni.mff.ufal.textan.commons.Document;
+import cz.cuni.mff.ufal.textan.commons.Entity;
 import cz.cuni.mff.ufal.textan.commons.ISimpleWebService;
+import cz.cuni.mff.ufal.textan.server.analysis.AnalysisPipeline;
+import cz.cuni.mff.ufal.textan.server.data.AliasIndex;
 
 import javax.annotation.Resource;
 import javax.jws.WebService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 /**
  * User: Petr Fanta
@@ -18,6 +24,27 @@ import javax.jws.WebService;
 @WebService(endpointInterface = "cz.cuni.mff.ufal.textan.commons.ISimpleWebService", serviceName = "SimpleWebService")
 public class SimpleWebService implements ISimpleWebService {
 
+    /** Invoker of long-running operations */
+    private final ContinuationInvoker invoker;
+
+    /** Pipeline analysing documents */
+    private final AnalysisPipeline pipeline;
+
+    /** Index linking entities to objects */
+    private final AliasIndex aliasIndex;
+
+    /**
+     * Only constructor.
+     * @param invoker The invoker running long-running operations on worker threads
+     * @param pipeline The pipeline analysing documents
+     * @param aliasIndex The index linking entities to objects
+     */
+    public SimpleWebService(ContinuationInvoker invoker, AnalysisPipeline pipeline, AliasIndex aliasIndex) {
+        this.invoker = invoker;
+        this.pipeline = pipeline;
+        this.aliasIndex = aliasIndex;
+    }
+
     @Override
     public String helloWorld(){
         return "Hello world!";
@@ -29,12 +56,39 @@ public class SimpleWebService implements ISimpleWebService {
     }
 
     @Override
-    public Document toDocument(String text) {
-        return new Document(text);
+    public Document toDocument(final String text) {
+        return invoker.invoke(() -> new Document(text));
     }
 
     @Override
     public String fromDocument(Document document) {
         return document.getText();
     }
+
+    @Override
+    public List<Entity> getEntities(final Document document) {
+        return invoker.invoke(() -> link(document.getText(), pipeline.analyze(document)));
+    }
+
+    /**
+     * Sets ids of objects the entities refer to, entities with ambiguous aliases get no object.
+     * @param text The text of document
+     * @param entities The entities found in the text
+     * @return Returns the entities
+     */
+    private List<Entity> link(String text, List<Entity> entities) {
+        final List<String> aliases = new ArrayList<>(entities.size());
+        for (Entity entity : entities) {
+            aliases.add(text.substring(entity.getStart(), entity.getEnd()));
+        }
+        final Map<String, int[]> resolved = aliasIndex.resolve(aliases);
+        for (int i = 0; i < entities.size(); i++) {
+            //ambiguous aliases are left to the user
+            int objectId = AliasIndex.getObjectId(resolved.get(aliases.get(i)));
+            if (objectId != -1) {
+                entities.get(i).setObjectId(objectId);
+            }
+        }
+        return entities;
+    }
 }
@@ -0,0 +1,71 @@
+package cz.cuni.mff.ufal.textan.server;
+
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+
+/**
+ * Reports usage of Jetty thread pool and depth of its job queue.
+ * It is intended to be run periodically.
+ */
+public class ThreadPoolMonitor implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ThreadPoolMonitor.class);
+
+    /** Monitored thread pool. */
+    private final QueuedThreadPool threadPool;
+
+    /** Queue of jobs waiting for a thread of the pool. */
+    private final Queue<Runnable> jobQueue;
+
+    /**
+     * Only constructor.
+     * @param threadPool The monitored thread pool
+     * @param jobQueue The queue of jobs used by the thread pool
+     */
+    public ThreadPoolMonitor(QueuedThreadPool threadPool, Queue<Runnable> jobQueue) {
+        this.threadPool = threadPool;
+        this.jobQueue = jobQueue;
+    }
+
+    /**
+     * Gets number of threads in the pool.
+     * @return Returns number of threads
+     */
+    public int getThreads() {
+        return threadPool.getThreads();
+    }
+
+    /**
+     * Gets number of threads which are processing a job.
+     * @return Returns number of busy threads
+     */
+    public int getBusyThreads() {
+        return threadPool.getThreads() - threadPool.getIdleThreads();
+    }
+
+    /**
+     * Gets maximal number of threads in the pool.
+     * @return Returns maximal number of threads
+     */
+    public int getMaxThreads() {
+        return threadPool.getMaxThreads();
+    }
+
+    /**
+     * Gets number of jobs waiting for a thread.
+     * @return Returns depth of the queue
+     */
+    public int getQueueSize() {
+        return jobQueue.size();
+    }
+
+    @Override
+    public void run() {
+        LOG.info("Thread pool: {} busy of {} threads (max {}), {} queued jobs{}",
+                getBusyThreads(), getThreads(), getMaxThreads(), getQueueSize(),
+                threadPool.isLowOnThreads() ? ", low on threads" : "");
+    }
+}
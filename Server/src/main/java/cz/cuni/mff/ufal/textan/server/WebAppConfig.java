@@ -1,10 +1,26 @@
 package cz.cuni.mff.ufal.textan.server;
 
+import com.codahale.metrics.MetricRegistry;
+import cz.cuni.mff.ufal.textan.server.analysis.AnalysisPipeline;
+import cz.cuni.mff.ufal.textan.server.data.AliasIndex;
+import cz.cuni.mff.ufal.textan.server.data.DocumentStore;
+import cz.cuni.mff.ufal.textan.server.data.DocumentWriter;
+import cz.cuni.mff.ufal.textan.server.data.ObjectMerger;
+import cz.cuni.mff.ufal.textan.server.graph.GraphStore;
+import cz.cuni.mff.ufal.textan.server.index.DuplicateIndex;
+import cz.cuni.mff.ufal.textan.server.index.InvertedIndex;
+import org.apache.cxf.attachment.AttachmentDeserializer;
 import org.apache.cxf.bus.spring.SpringBus;
 import org.apache.cxf.endpoint.Server;
 import org.apache.cxf.jaxws.JaxWsServerFactoryBean;
+import org.apache.cxf.transport.common.gzip.GZIPFeature;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * User: Petr Fanta
@@ -18,13 +34,69 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class WebAppConfig {
 
+    /** Size of attachment in bytes which is kept in memory, bigger attachments are cached on disk. */
+    private static final int ATTACHMENT_MEMORY_THRESHOLD = 64 * 1024;
+
+    /** Invoker of long-running operations from main context */
+    @Autowired
+    private ContinuationInvoker continuationInvoker;
+
+    /** Pipeline analysing documents from main context */
+    @Autowired
+    private AnalysisPipeline analysisPipeline;
+
+    /** Writer saving analysed documents from main context */
+    @Autowired
+    private DocumentWriter documentWriter;
+
+    /** Index linking entities to objects from main context */
+    @Autowired
+    private AliasIndex aliasIndex;
+
+    /** Index of documents from main context */
+    @Autowired
+    private InvertedIndex invertedIndex;
+
+    /** Store of texts of documents from main context */
+    @Autowired
+    private DocumentStore documentStore;
+
+    /** Store of graph of objects from main context */
+    @Autowired
+    private GraphStore graphStore;
+
+    /** Index finding duplicates of documents from main context */
+    @Autowired
+    private DuplicateIndex duplicateIndex;
+
+    /** Merger joining objects from main context */
+    @Autowired
+    private ObjectMerger objectMerger;
+
+    /** Registry of metrics from main context */
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    /** Server settings */
+    @Autowired
+    private Environment environment;
+
     /**
      * Creates spring bean with bus for CXF initialization
      * @return Return Spring bus
      */
     @Bean( destroyMethod = "shutdown" )
     public SpringBus cxf() {
-        return new SpringBus();
+        SpringBus bus = new SpringBus();
+        //records timings of stages and sizes of requests of all endpoints
+        bus.getFeatures().add(new MetricsFeature(metricRegistry));
+        if (environment.getProperty("server.gzip.enabled", Boolean.class)) {
+            //compresses responses of clients accepting gzip and decompresses gzipped requests of all endpoints
+            GZIPFeature gzip = new GZIPFeature();
+            gzip.setThreshold(environment.getProperty("server.gzip.threshold", Integer.class));
+            bus.getFeatures().add(gzip);
+        }
+        return bus;
     }
 
     /**
@@ -45,6 +117,99 @@ public class WebAppConfig {
      */
     @Bean
     public SimpleWebService simpleWebService() {
-        return new SimpleWebService();
+        return new SimpleWebService(continuationInvoker, analysisPipeline, aliasIndex);
+    }
+
+    /**
+     * Creates endpoint for DocumentIngestionService with MTOM enabled
+     * @return Returns endpoint
+     */
+    @Bean
+    public Server ingestionServer() {
+        JaxWsServerFactoryBean factory = new JaxWsServerFactoryBean();
+        factory.setServiceBean(documentIngestionService());
+        factory.setAddress("/ingest");
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("mtom-enabled", Boolean.TRUE);
+        properties.put(AttachmentDeserializer.ATTACHMENT_MEMORY_THRESHOLD, String.valueOf(ATTACHMENT_MEMORY_THRESHOLD));
+        factory.setProperties(properties);
+
+        return factory.create();
+    }
+
+    /**
+     * Creates Spring bean with webservice class
+     * @return Returns bean for DocumentIngestionService
+     */
+    @Bean
+    public DocumentIngestionService documentIngestionService() {
+        return new DocumentIngestionService(analysisPipeline, documentWriter, duplicateIndex,
+                environment.getProperty("ingestion.maxPending", Integer.class));
+    }
+
+    /**
+     * Creates endpoint for SearchWebService
+     * @return Returns endpoint
+     */
+    @Bean
+    public Server searchServer() {
+        JaxWsServerFactoryBean factory = new JaxWsServerFactoryBean();
+        factory.setServiceBean(searchWebService());
+        factory.setAddress("/search");
+        return factory.create();
+    }
+
+    /**
+     * Creates Spring bean with webservice class
+     * @return Returns bean for SearchWebService
+     */
+    @Bean
+    public SearchWebService searchWebService() {
+        return new SearchWebService(invertedIndex, documentStore, environment.getProperty("search.maxLimit", Integer.class));
+    }
+
+    /**
+     * Creates endpoint for GraphWebService
+     * @return Returns endpoint
+     */
+    @Bean
+    public Server graphServer() {
+        JaxWsServerFactoryBean factory = new JaxWsServerFactoryBean();
+        factory.setServiceBean(graphWebService());
+        factory.setAddress("/graph");
+        return factory.create();
+    }
+
+    /**
+     * Creates Spring bean with webservice class
+     * @return Returns bean for GraphWebService
+     */
+    @Bean
+    public GraphWebService graphWebService() {
+        return new GraphWebService(graphStore,
+                environment.getProperty("graph.maxHops", Integer.class),
+                environment.getProperty("graph.maxEdges", Integer.class));
+    }
+
+    /**
+     * Creates endpoint for ObjectMergeService
+     * @return Returns endpoint
+     */
+    @Bean
+    public Server mergeServer() {
+        JaxWsServerFactoryBean factory = new JaxWsServerFactoryBean();
+        factory.setServiceBean(objectMergeService());
+        factory.setAddress("/merge");
+        return factory.create();
+    }
+
+    /**
+     * Creates Spring bean with webservice class
+     * @return Returns bean for ObjectMergeService
+     */
+    @Bean
+    public ObjectMergeService objectMergeService() {
+        return new ObjectMergeService(objectMerger);
     }
 }
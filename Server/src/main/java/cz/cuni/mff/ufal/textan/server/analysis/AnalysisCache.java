@@ -0,0 +1,344 @@
+package cz.cuni.mff.ufal.textan.server.analysis;
+
+import cz.cuni.mff.ufal.textan.commons.Entity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of entities found in texts, so a text analysed again is not tagged again.
+ *
+ * Results are keyed by SHA-256 of the model version and SHA-256 of the text, so results of other models are never used.
+ * The key is computed by the caller once per text, a text whose hash is already known is not hashed again.
+ * The heap tier keeps the least recently used results up to the maximal estimated size in bytes.
+ * The optional disk tier keeps every result in its own file, so results survive restarts;
+ * it is not bounded. Cached entities are copied, callers may modify the returned entities.
+ * Counters of hits and misses are exported by JMX.
+ */
+@ManagedResource(objectName = "cz.cuni.mff.ufal.textan:name=AnalysisCache", description = "Cache of analysis results")
+public class AnalysisCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AnalysisCache.class);
+
+    /** Estimated bytes of cached result without entities. */
+    private static final int ENTRY_BYTES = 200;
+
+    /** Estimated bytes of one cached entity without its type, types are shared. */
+    private static final int ENTITY_BYTES = 12;
+
+    /** Version of models, it is a part of keys. */
+    private final String modelVersion;
+
+    /** Maximal estimated size of the heap tier in bytes. */
+    private final long maxBytes;
+
+    /** Directory of the disk tier, null if there is no disk tier. */
+    private final Path directory;
+
+    /** Results by key in access order. Guarded by itself. */
+    private final LinkedHashMap<String, Result> results = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Estimated size of the heap tier in bytes. Guarded by results. */
+    private long bytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Only constructor.
+     * @param modelVersion The version of models, results of other versions are not used
+     * @param maxBytes The maximal estimated size of the heap tier in bytes, 0 disables the heap tier
+     * @param directory The directory of the disk tier, null or empty to disable the disk tier
+     * @throws IOException if the directory cannot be created
+     */
+    public AnalysisCache(String modelVersion, long maxBytes, String directory) throws IOException {
+        this.modelVersion = modelVersion;
+        this.maxBytes = maxBytes;
+        if (directory == null || directory.isEmpty()) {
+            this.directory = null;
+        } else {
+            this.directory = Files.createDirectories(Paths.get(directory));
+            LOG.info("Analysis cache stored in {}", this.directory.toAbsolutePath());
+        }
+    }
+
+    /**
+     * Checks whether results are cached, keys need not be computed otherwise.
+     * @return Returns true if the heap or the disk tier is enabled
+     */
+    public boolean isEnabled() {
+        return maxBytes > 0 || directory != null;
+    }
+
+    /**
+     * Gets cached entities of text.
+     * @param key The key of the text computed by {@link #key(byte[])}
+     * @return Returns copy of the cached entities or null if the text is not cached
+     */
+    public List<Entity> get(String key) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Result result;
+        synchronized (results) {
+            result = results.get(key);
+        }
+        if (result != null) {
+            hits.incrementAndGet();
+            return result.toEntities();
+        }
+
+        result = read(key);
+        if (result != null) {
+            diskHits.incrementAndGet();
+            store(key, result);
+            return result.toEntities();
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches entities of text.
+     * @param key The key of the text computed by {@link #key(byte[])}
+     * @param entities The entities found in the text, they are copied
+     */
+    public void put(String key, List<Entity> entities) {
+        if (!isEnabled()) {
+            return;
+        }
+        final Result result = new Result(entities);
+        store(key, result);
+        write(key, result);
+    }
+
+    /**
+     * Removes all results from the heap tier, the disk tier is kept.
+     */
+    @ManagedOperation(description = "Removes all results from memory")
+    public void clear() {
+        synchronized (results) {
+            results.clear();
+            bytes = 0;
+        }
+    }
+
+    @ManagedAttribute(description = "Number of results found in memory")
+    public long getHits() {
+        return hits.get();
+    }
+
+    @ManagedAttribute(description = "Number of results found on disk")
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    @ManagedAttribute(description = "Number of texts which were not cached")
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @ManagedAttribute(description = "Number of results evicted from memory")
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @ManagedAttribute(description = "Number of results in memory")
+    public int getSize() {
+        synchronized (results) {
+            return results.size();
+        }
+    }
+
+    @ManagedAttribute(description = "Estimated size of results in memory in bytes")
+    public long getBytes() {
+        synchronized (results) {
+            return bytes;
+        }
+    }
+
+    /**
+     * Adds result to the heap tier and evicts the least recently used results above the maximal size.
+     * @param key The key of result
+     * @param result The result
+     */
+    private void store(String key, Result result) {
+        if (maxBytes <= 0) {
+            return;
+        }
+        synchronized (results) {
+            final Result previous = results.put(key, result);
+            bytes += result.bytes - (previous != null ? previous.bytes : 0);
+            for (Iterator<Result> it = results.values().iterator(); bytes > maxBytes && it.hasNext(); ) {
+                bytes -= it.next().bytes;
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Reads result from the disk tier.
+     * @param key The key of result
+     * @return Returns the result or null if it is not stored
+     */
+    private Result read(String key) {
+        if (directory == null) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file(key))))) {
+            final int count = in.readInt();
+            final int[] spans = new int[2 * count];
+            final String[] types = new String[count];
+            for (int i = 0; i < count; i++) {
+                spans[2 * i] = in.readInt();
+                spans[2 * i + 1] = in.readInt();
+                types[i] = in.readUTF().intern();
+            }
+            return new Result(spans, types);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOG.warn("Cannot read cached analysis {}", key, e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes result to the disk tier. The file is written under temporary name and then renamed,
+     * so readers never see incomplete file.
+     * @param key The key of result
+     * @param result The result
+     */
+    private void write(String key, Result result) {
+        if (directory == null) {
+            return;
+        }
+        final Path file = file(key);
+        try {
+            Files.createDirectories(file.getParent());
+            final Path temporary = Files.createTempFile(file.getParent(), key, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(result.types.length);
+                for (int i = 0; i < result.types.length; i++) {
+                    out.writeInt(result.spans[2 * i]);
+                    out.writeInt(result.spans[2 * i + 1]);
+                    out.writeUTF(result.types[i]);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Cannot write cached analysis {}", key, e);
+        }
+    }
+
+    /**
+     * Gets file of result, files are spread to subdirectories by the first two characters of key.
+     * @param key The key of result
+     * @return Returns path of the file
+     */
+    private Path file(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    /**
+     * Computes SHA-256 of text encoded in UTF-8.
+     * @param text The text
+     * @return Returns the hash
+     */
+    public static byte[] hash(CharSequence text) {
+        final MessageDigest digest = newDigest();
+        digest.update(StandardCharsets.UTF_8.encode(CharBuffer.wrap(text)));
+        return digest.digest();
+    }
+
+    /**
+     * Computes key of text.
+     * @param textHash The SHA-256 of the text encoded in UTF-8
+     * @return Returns hexadecimal SHA-256 of model version and hash of text
+     */
+    public String key(byte[] textHash) {
+        final MessageDigest digest = newDigest();
+        digest.update(modelVersion.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        final byte[] hash = digest.digest(textHash);
+        final StringBuilder key = new StringBuilder(2 * hash.length);
+        for (byte b : hash) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    /**
+     * Cached entities in compact form.
+     */
+    private static class Result {
+
+        /** Start and end offsets of entities, two items per entity. */
+        final int[] spans;
+
+        /** Types of entities. */
+        final String[] types;
+
+        /** Estimated size in bytes. */
+        final long bytes;
+
+        Result(List<Entity> entities) {
+            spans = new int[2 * entities.size()];
+            types = new String[entities.size()];
+            for (int i = 0; i < types.length; i++) {
+                Entity entity = entities.get(i);
+                spans[2 * i] = entity.getStart();
+                spans[2 * i + 1] = entity.getEnd();
+                types[i] = entity.getType();
+            }
+            bytes = ENTRY_BYTES + ENTITY_BYTES * types.length;
+        }
+
+        Result(int[] spans, String[] types) {
+            this.spans = spans;
+            this.types = types;
+            bytes = ENTRY_BYTES + ENTITY_BYTES * types.length;
+        }
+
+        List<Entity> toEntities() {
+            final List<Entity> entities = new ArrayList<>(types.length);
+            for (int i = 0; i < types.length; i++) {
+                entities.add(new Entity(spans[2 * i], spans[2 * i + 1], types[i]));
+            }
+            return entities;
+        }
+    }
+}
@@ -0,0 +1,443 @@
+package cz.cuni.mff.ufal.textan.server.analysis;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import cz.cuni.mff.ufal.textan.commons.Document;
+import cz.cuni.mff.ufal.textan.commons.Entity;
+import cz.cuni.mff.ufal.textan.commons.utils.TokenType;
+import cz.cuni.mff.ufal.textan.commons.utils.Tokenizer;
+import cz.cuni.mff.ufal.textan.commons.utils.Tokens;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Analyses documents by tokenization, morphological tagging and named entity recognition.
+ *
+ * Taggers are usually native and not thread-safe, so the pipeline runs a fixed number of worker
+ * threads and each of them owns one tagger created at start, models are loaded only once per worker.
+ * Submitted documents wait in a bounded queue, a submitter waits for a free place in the queue
+ * up to the submit timeout, so large batches are slowed down rather than rejected.
+ * A worker takes all waiting documents
+ * (up to the batch size) and passes their sentences to the tagger in a single call.
+ * Labels of recently analysed sentences are cached by their tokens, so when a document is
+ * analysed again after an edit (e.g. a paragraph being typed), only changed sentences are tagged.
+ * Entities of whole texts are kept in {@link AnalysisCache}, a cached text does not wait in the queue at all.
+ * Time spent waiting in the queue and in each stage of a batch is recorded in the metric registry
+ * and logged at debug level.
+ */
+public class AnalysisPipeline {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AnalysisPipeline.class);
+
+    /** Factory of taggers, one tagger is created for each worker. */
+    private final ITaggerFactory taggerFactory;
+
+    /** Number of worker threads. */
+    private final int workers;
+
+    /** Maximal number of documents processed by one call of tagger. */
+    private final int batchSize;
+
+    /** Documents waiting for analysis. */
+    private final BlockingQueue<Request> queue;
+
+    /** Maximal time in milliseconds a submitter waits for a free place in the queue. */
+    private final long submitTimeout;
+
+    /** Running worker threads. */
+    private final List<Thread> threads = new ArrayList<>();
+
+    /** Maximal number of cached sentences. */
+    private final int sentenceCacheSize;
+
+    /** Entity labels of recently analysed sentences by their token forms. Guarded by itself. */
+    private final Map<List<String>, String[]> sentenceCache;
+
+    /** Cache of entities of whole texts. */
+    private final AnalysisCache cache;
+
+    private final Timer waitTimer;
+    private final Timer splitTimer;
+    private final Timer tagTimer;
+    private final Timer recognizeTimer;
+    private final Timer decodeTimer;
+    private final Histogram batchSizes;
+    private final Meter sentenceMeter;
+    private final Meter taggedSentenceMeter;
+
+    /**
+     * Only constructor.
+     * @param taggerFactory The factory of taggers
+     * @param workers The number of worker threads
+     * @param batchSize The maximal number of documents processed by one call of tagger
+     * @param queueCapacity The maximal number of documents waiting for analysis
+     * @param submitTimeout The maximal time in milliseconds a submitter waits for a free place in the queue
+     * @param sentenceCacheSize The maximal number of sentences whose labels are cached, 0 disables the cache
+     * @param cache The cache of entities of whole texts
+     * @param metrics The registry of metrics of the pipeline
+     */
+    public AnalysisPipeline(ITaggerFactory taggerFactory, int workers, int batchSize, int queueCapacity, long submitTimeout,
+                            int sentenceCacheSize, AnalysisCache cache, MetricRegistry metrics) {
+        this.taggerFactory = taggerFactory;
+        this.cache = cache;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.submitTimeout = submitTimeout;
+        this.sentenceCacheSize = sentenceCacheSize;
+        this.sentenceCache = new LinkedHashMap<List<String>, String[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<String>, String[]> eldest) {
+                return size() > AnalysisPipeline.this.sentenceCacheSize;
+            }
+        };
+
+        this.waitTimer = metrics.timer("analysis.wait");
+        this.splitTimer = metrics.timer("analysis.split");
+        this.tagTimer = metrics.timer("analysis.tag");
+        this.recognizeTimer = metrics.timer("analysis.recognize");
+        this.decodeTimer = metrics.timer("analysis.decode");
+        this.batchSizes = metrics.histogram("analysis.batchSize");
+        this.sentenceMeter = metrics.meter("analysis.sentences");
+        this.taggedSentenceMeter = metrics.meter("analysis.sentences.tagged");
+        metrics.register("analysis.queue", (Gauge<Integer>) queue::size);
+    }
+
+    /**
+     * Starts worker threads and waits until all of them have loaded their taggers.
+     * @throws InterruptedException if interrupted while waiting for workers
+     * @throws IllegalStateException if a tagger cannot be created
+     */
+    public synchronized void start() throws InterruptedException {
+        final CountDownLatch loaded = new CountDownLatch(workers);
+        final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        for (int i = 0; i < workers; i++) {
+            Thread thread = new Thread(() -> work(loaded, failure), "analysis-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+
+        loaded.await();
+        if (failure.get() != null) {
+            stop();
+            throw new IllegalStateException("Cannot create tagger", failure.get());
+        }
+        LOG.info("Analysis pipeline started with {} workers", workers);
+    }
+
+    /**
+     * Stops worker threads, documents waiting for analysis are cancelled.
+     */
+    public synchronized void stop() {
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        threads.clear();
+
+        Request request;
+        while ((request = queue.poll()) != null) {
+            request.result.completeExceptionally(new CancellationException("Analysis pipeline stopped"));
+        }
+    }
+
+    /**
+     * Submits document for analysis, waits for a free place in the queue if it is full.
+     * @param document The document to analyse
+     * @return Returns future with entities found in the document, it fails with {@link RejectedExecutionException}
+     *         if the queue stays full for the submit timeout or the submitter is interrupted
+     */
+    public CompletableFuture<List<Entity>> submit(Document document) {
+        return submit(document, null);
+    }
+
+    /**
+     * Submits document whose text was already hashed for analysis, waits for a free place in the queue if it is full.
+     * @param document The document to analyse
+     * @param textHash The SHA-256 of the text encoded in UTF-8, null to compute it if needed
+     * @return Returns future with entities found in the document, it fails with {@link RejectedExecutionException}
+     *         if the queue stays full for the submit timeout or the submitter is interrupted
+     */
+    public CompletableFuture<List<Entity>> submit(Document document, byte[] textHash) {
+        //the key is computed once and kept by the request, so the result is cached under it without hashing again
+        String key = null;
+        if (document.getText() != null && cache.isEnabled()) {
+            key = cache.key(textHash != null ? textHash : AnalysisCache.hash(document.getText()));
+            List<Entity> cached = cache.get(key);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+
+        Request request = new Request(document, key);
+        try {
+            if (!queue.offer(request, submitTimeout, TimeUnit.MILLISECONDS)) {
+                request.result.completeExceptionally(new RejectedExecutionException("Analysis queue is full"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.result.completeExceptionally(new RejectedExecutionException("Interrupted while waiting for analysis queue"));
+        }
+        return request.result;
+    }
+
+    /**
+     * Analyses document and waits for the result.
+     * @param document The document to analyse
+     * @return Returns entities found in the document
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public List<Entity> analyze(Document document) throws InterruptedException {
+        try {
+            return submit(document).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Main loop of worker thread.
+     * @param loaded The latch counted down when the tagger is created
+     * @param failure The holder of exception thrown while creating the tagger
+     */
+    private void work(CountDownLatch loaded, AtomicReference<RuntimeException> failure) {
+        final ITagger tagger;
+        try {
+            tagger = taggerFactory.create();
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+            return;
+        } finally {
+            loaded.countDown();
+        }
+
+        final List<Request> batch = new ArrayList<>(batchSize);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+                process(tagger, batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            //the pipeline was stopped
+        } finally {
+            tagger.close();
+        }
+    }
+
+    /**
+     * Analyses batch of documents by single call of tagger, cached sentences are not tagged.
+     * @param tagger The tagger owned by current thread
+     * @param batch The documents to analyse
+     */
+    private void process(ITagger tagger, List<Request> batch) {
+        final long start = System.nanoTime();
+        for (Request request : batch) {
+            waitTimer.update(start - request.submitted, TimeUnit.NANOSECONDS);
+        }
+        batchSizes.update(batch.size());
+
+        final List<Sentence> sentences = new ArrayList<>();
+        for (Request request : batch) {
+            split(request, sentences);
+        }
+        final long split = System.nanoTime();
+
+        final List<Sentence> uncached = new ArrayList<>();
+        synchronized (sentenceCache) {
+            for (Sentence sentence : sentences) {
+                sentence.labels = sentenceCache.get(Arrays.asList(sentence.forms));
+                if (sentence.labels == null) {
+                    uncached.add(sentence);
+                }
+            }
+        }
+
+        final String[][] forms = new String[uncached.size()][];
+        for (int i = 0; i < forms.length; i++) {
+            forms[i] = uncached.get(i).forms;
+        }
+
+        try {
+            long tagged = split;
+            long recognized = split;
+            if (forms.length > 0) {
+                String[][] tags = tagger.tag(forms);
+                tagged = System.nanoTime();
+                String[][] labels = tagger.recognize(forms, tags);
+                recognized = System.nanoTime();
+                synchronized (sentenceCache) {
+                    for (int i = 0; i < labels.length; i++) {
+                        uncached.get(i).labels = labels[i];
+                        if (sentenceCacheSize > 0) {
+                            sentenceCache.put(Arrays.asList(forms[i]), labels[i]);
+                        }
+                    }
+                }
+            }
+            //decoded in order of sentences, so entities of each document are sorted
+            for (Sentence sentence : sentences) {
+                sentence.decode();
+            }
+            for (Request request : batch) {
+                if (request.key != null) {
+                    cache.put(request.key, request.entities);
+                }
+                request.result.complete(request.entities);
+            }
+            final long decoded = System.nanoTime();
+
+            splitTimer.update(split - start, TimeUnit.NANOSECONDS);
+            if (forms.length > 0) {
+                tagTimer.update(tagged - split, TimeUnit.NANOSECONDS);
+                recognizeTimer.update(recognized - tagged, TimeUnit.NANOSECONDS);
+            }
+            decodeTimer.update(decoded - recognized, TimeUnit.NANOSECONDS);
+            sentenceMeter.mark(sentences.size());
+            taggedSentenceMeter.mark(forms.length);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Analysed batch of {} documents with {} sentences, {} of them tagged,"
+                                + " split {} us, tag {} us, recognize {} us, decode {} us",
+                        batch.size(), sentences.size(), forms.length,
+                        (split - start) / 1000, (tagged - split) / 1000, (recognized - tagged) / 1000, (decoded - recognized) / 1000);
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Analysis of batch of {} documents failed", batch.size(), e);
+            for (Request request : batch) {
+                request.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Splits text of document to sentences of tokens, spaces are skipped.
+     * Sentences end after '.', '!' or '?'.
+     * @param request The request with the document
+     * @param sentences The list the sentences are added to
+     */
+    private static void split(Request request, List<Sentence> sentences) {
+        final String text = request.document.getText();
+        if (text == null) {
+            return;
+        }
+
+        final Tokens tokens = Tokenizer.tokenize(text);
+        int[] spans = new int[32];
+        int count = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            final TokenType type = tokens.getType(i);
+            if (type == TokenType.SPACE) {
+                continue;
+            }
+
+            final int start = tokens.getStart(i);
+            if (count + 2 > spans.length) {
+                spans = Arrays.copyOf(spans, spans.length * 2);
+            }
+            spans[count++] = start;
+            spans[count++] = tokens.getEnd(i);
+
+            final char c = text.charAt(start);
+            if (type == TokenType.PUNCTUATION && (c == '.' || c == '!' || c == '?')) {
+                sentences.add(new Sentence(request, Arrays.copyOf(spans, count)));
+                count = 0;
+            }
+        }
+        if (count > 0) {
+            sentences.add(new Sentence(request, Arrays.copyOf(spans, count)));
+        }
+    }
+
+    /**
+     * Document submitted for analysis.
+     */
+    private static class Request {
+
+        final Document document;
+
+        /** The key of the text in the analysis cache, null if the result is not cached. */
+        final String key;
+
+        final List<Entity> entities = new ArrayList<>();
+        final CompletableFuture<List<Entity>> result = new CompletableFuture<>();
+        final long submitted = System.nanoTime();
+
+        Request(Document document, String key) {
+            this.document = document;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Sentence of document being analysed.
+     */
+    private static class Sentence {
+
+        /** The request the sentence belongs to. */
+        final Request request;
+
+        /** Start and end offsets of tokens, two items per token. */
+        final int[] spans;
+
+        /** Forms of tokens. */
+        final String[] forms;
+
+        /** Entity labels of tokens in BIO encoding, null until the sentence is tagged. */
+        String[] labels;
+
+        Sentence(Request request, int[] spans) {
+            this.request = request;
+            this.spans = spans;
+            final String text = request.document.getText();
+            this.forms = new String[spans.length / 2];
+            for (int i = 0; i < forms.length; i++) {
+                forms[i] = text.substring(spans[2 * i], spans[2 * i + 1]);
+            }
+        }
+
+        /**
+         * Converts entity labels of tokens to entities and adds them to the request.
+         */
+        void decode() {
+            Entity entity = null;
+            for (int i = 0; i < labels.length; i++) {
+                String label = labels[i];
+                if (!label.startsWith("B-") && !label.startsWith("I-")) {
+                    entity = null;
+                    continue;
+                }
+
+                String type = label.substring(2);
+                if (entity != null && label.charAt(0) == 'I' && type.equals(entity.getType())) {
+                    entity.setEnd(spans[2 * i + 1]);
+                } else {
+                    entity = new Entity(spans[2 * i], spans[2 * i + 1], type);
+                    request.entities.add(entity);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package cz.cuni.mff.ufal.textan.server.analysis;
+
+/**
+ * Morphological tagger and named entity recognizer.
+ *
+ * Implementations usually wrap a native library and are not thread-safe, an instance
+ * is always used by a single thread of {@link AnalysisPipeline}.
+ * Both methods process a whole batch of sentences to amortize the cost of native calls.
+ */
+public interface ITagger {
+
+    /**
+     * Assigns morphological tags to tokens.
+     * @param forms The batch of sentences, each sentence is an array of token forms
+     * @return Returns tags for each token of each sentence
+     */
+    String[][] tag(String[][] forms);
+
+    /**
+     * Recognizes named entities in tagged sentences.
+     * @param forms The batch of sentences, each sentence is an array of token forms
+     * @param tags The tags assigned by {@link #tag(String[][])}
+     * @return Returns entity label for each token of each sentence in BIO encoding
+     *         ("B-type" begins an entity, "I-type" continues it, "O" is outside of entities)
+     */
+    String[][] recognize(String[][] forms, String[][] tags);
+
+    /**
+     * Releases resources held by the tagger, e.g. native models.
+     */
+    void close();
+}
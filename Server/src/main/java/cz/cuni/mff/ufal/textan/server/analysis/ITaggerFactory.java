@@ -0,0 +1,13 @@
+package cz.cuni.mff.ufal.textan.server.analysis;
+
+/**
+ * Factory of taggers, called once by each thread of {@link AnalysisPipeline}.
+ */
+public interface ITaggerFactory {
+
+    /**
+     * Creates new tagger and loads its models.
+     * @return Returns new tagger
+     */
+    ITagger create();
+}
@@ -0,0 +1,92 @@
+package cz.cuni.mff.ufal.textan.server.analysis;
+
+/**
+ * Pure Java tagger for testing without native models.
+ *
+ * Words starting with an upper case letter are tagged as proper nouns, consecutive
+ * proper nouns form entities of type {@link #NAME}, numbers form entities of type {@link #NUMBER}.
+ */
+public class MockTagger implements ITagger {
+
+    /** Entity type of proper noun sequences. */
+    public static final String NAME = "NAME";
+
+    /** Entity type of numbers. */
+    public static final String NUMBER = "NUMBER";
+
+    private static final String PROPER_NOUN = "PROPN";
+    private static final String NUMERAL = "NUM";
+    private static final String PUNCTUATION = "PUNCT";
+    private static final String OTHER = "X";
+    private static final String OUTSIDE = "O";
+
+    @Override
+    public String[][] tag(String[][] forms) {
+        String[][] tags = new String[forms.length][];
+        for (int i = 0; i < forms.length; i++) {
+            tags[i] = new String[forms[i].length];
+            for (int j = 0; j < forms[i].length; j++) {
+                tags[i][j] = tag(forms[i][j]);
+            }
+        }
+        return tags;
+    }
+
+    @Override
+    public String[][] recognize(String[][] forms, String[][] tags) {
+        String[][] labels = new String[tags.length][];
+        for (int i = 0; i < tags.length; i++) {
+            labels[i] = new String[tags[i].length];
+            String previous = null;
+            for (int j = 0; j < tags[i].length; j++) {
+                String type = entityType(tags[i][j]);
+                if (type == null) {
+                    labels[i][j] = OUTSIDE;
+                } else if (type.equals(previous)) {
+                    labels[i][j] = "I-" + type;
+                } else {
+                    labels[i][j] = "B-" + type;
+                }
+                previous = type;
+            }
+        }
+        return labels;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Tags one token.
+     * @param form The token form
+     * @return Returns tag of token
+     */
+    private static String tag(String form) {
+        int first = form.codePointAt(0);
+        if (Character.isUpperCase(first)) {
+            return PROPER_NOUN;
+        } else if (Character.isDigit(first)) {
+            return NUMERAL;
+        } else if (!Character.isLetter(first)) {
+            return PUNCTUATION;
+        }
+        return OTHER;
+    }
+
+    /**
+     * Gets type of entity the token with given tag belongs to.
+     * @param tag The tag of token
+     * @return Returns type of entity or null if token is not part of entity
+     */
+    private static String entityType(String tag) {
+        switch (tag) {
+            case PROPER_NOUN:
+                return NAME;
+            case NUMERAL:
+                return NUMBER;
+            default:
+                return null;
+        }
+    }
+}
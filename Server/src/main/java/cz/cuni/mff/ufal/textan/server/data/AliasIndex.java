@@ -0,0 +1,367 @@
+package cz.cuni.mff.ufal.textan.server.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory index resolving aliases to objects.
+ *
+ * Aliases are looked up by normalized text (lower case without diacritics and with collapsed spaces),
+ * see {@link #normalize(String)}. One alias can belong to more objects, so an alias is resolved to all
+ * its candidates, pairs of id of alias and id of object ordered by id of alias.
+ * The index is preloaded at start, new aliases are added when the transaction inserting them commits
+ * and the least recently used entries are evicted when the index exceeds its maximal size.
+ * While no entry has been evicted the index contains all aliases and a miss needs no query,
+ * after eviction misses are looked up in the database and cached, including negative results.
+ * Cached aliases of each object are tracked, so joining objects updates only their entries.
+ * Databases created before aliases were normalized get the normalized texts when the index is loaded.
+ */
+public class AliasIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AliasIndex.class);
+
+    /** Cached result of alias which does not exist. */
+    private static final int[] MISSING = new int[0];
+
+    /** Maximal number of parameters of one IN query. */
+    private static final int MAX_IN_PARAMETERS = 500;
+
+    /** Number of aliases normalized by one batch when the database is migrated. */
+    private static final int MIGRATION_BATCH_SIZE = 1000;
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    /** Maximal number of entries. */
+    private final int maxSize;
+
+    /** Candidates by normalized alias, in access order. Guarded by this. */
+    private final LinkedHashMap<String, int[]> entries;
+
+    /** Normalized cached aliases by id of object. Guarded by this. */
+    private final Map<Integer, Set<String>> objectAliases = new HashMap<>();
+
+    /** Whether the index contains all aliases of the database. Guarded by this. */
+    private boolean complete = false;
+
+    /** Number of changes of aliases, results read before a change are not cached. Guarded by this. */
+    private long version = 0;
+
+    /**
+     * Only constructor.
+     * @param jdbcTemplate The template used to load aliases
+     * @param maxSize The maximal number of cached aliases
+     */
+    public AliasIndex(JdbcTemplate jdbcTemplate, final int maxSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<String, int[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+                if (size() > maxSize) {
+                    complete = false;
+                    unlink(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Normalizes text of alias.
+     * @param alias The text of alias
+     * @return Returns the text in lower case, without diacritics and with single spaces between words
+     */
+    public static String normalize(String alias) {
+        String decomposed = Normalizer.normalize(alias, Normalizer.Form.NFD);
+        String stripped = MARKS.matcher(decomposed).replaceAll("");
+        return SPACES.matcher(stripped).replaceAll(" ").trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Gets object all candidates of alias belong to.
+     * @param candidates The candidates of alias
+     * @return Returns id of the object or -1 if the alias is ambiguous or there are no candidates
+     */
+    public static int getObjectId(int[] candidates) {
+        if (candidates == null || candidates.length == 0) {
+            return -1;
+        }
+        for (int i = 3; i < candidates.length; i += 2) {
+            if (candidates[i] != candidates[1]) {
+                return -1;
+            }
+        }
+        return candidates[1];
+    }
+
+    /**
+     * Loads aliases from the database, at most the maximal size of index.
+     * Aliases without normalized text are normalized first.
+     */
+    public void load() {
+        migrate();
+
+        final Map<String, int[]> loaded = new HashMap<>();
+        final int[] rows = {0};
+        final String[] last = {null};
+        jdbcTemplate.query(
+                connection -> {
+                    PreparedStatement statement = connection.prepareStatement(
+                            "SELECT normalized, id_alias, id_object FROM Alias ORDER BY normalized, id_alias");
+                    statement.setMaxRows(maxSize + 1);
+                    return statement;
+                },
+                rs -> {
+                    rows[0]++;
+                    last[0] = rs.getString(1);
+                    loaded.put(last[0], append(loaded.get(last[0]), rs.getInt(2), rs.getInt(3)));
+                });
+        if (rows[0] > maxSize) {
+            //candidates of the last alias can be cut off
+            loaded.remove(last[0]);
+        }
+
+        synchronized (this) {
+            entries.clear();
+            objectAliases.clear();
+            complete = rows[0] <= maxSize;
+            for (Map.Entry<String, int[]> entry : loaded.entrySet()) {
+                put(entry.getKey(), entry.getValue());
+            }
+        }
+        LOG.info("Alias index loaded with {} aliases{}", entries.size(), complete ? "" : ", the rest is read on demand");
+    }
+
+    /**
+     * Resolves alias.
+     * @param alias The text of alias
+     * @return Returns candidates of alias, pairs of id of alias and id of its object, or null if there is no such alias
+     */
+    public int[] resolve(String alias) {
+        return resolve(Collections.singleton(alias)).get(alias);
+    }
+
+    /**
+     * Resolves aliases, aliases missing in the index are read from the database by few IN queries.
+     * @param aliases The texts of aliases
+     * @return Returns map from text of alias to its candidates, pairs of id of alias and id of its object,
+     * unknown aliases are not included
+     */
+    public Map<String, int[]> resolve(Collection<String> aliases) {
+        final Map<String, int[]> result = new HashMap<>();
+        final Map<String, List<String>> missing = new HashMap<>();
+        final Map<String, String> keys = new HashMap<>();
+        for (String alias : aliases) {
+            keys.put(alias, normalize(alias));
+        }
+
+        final long readVersion;
+        synchronized (this) {
+            for (Map.Entry<String, String> aliasKey : keys.entrySet()) {
+                String alias = aliasKey.getKey();
+                String key = aliasKey.getValue();
+                int[] candidates = entries.get(key);
+                if (candidates == null && !complete) {
+                    List<String> texts = missing.get(key);
+                    if (texts == null) {
+                        texts = new ArrayList<>();
+                        missing.put(key, texts);
+                    }
+                    texts.add(alias);
+                } else if (candidates != null && candidates != MISSING) {
+                    result.put(alias, candidates);
+                }
+            }
+            readVersion = version;
+        }
+
+        if (!missing.isEmpty()) {
+            final Map<String, int[]> found = query(missing.keySet());
+            synchronized (this) {
+                for (Map.Entry<String, List<String>> entry : missing.entrySet()) {
+                    int[] candidates = found.get(entry.getKey());
+                    if (version == readVersion) {
+                        put(entry.getKey(), candidates != null ? candidates : MISSING);
+                    }
+                    if (candidates != null) {
+                        for (String alias : entry.getValue()) {
+                            result.put(alias, candidates);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds alias inserted into the database.
+     * @param alias The text of alias
+     * @param aliasId The id of alias
+     * @param objectId The id of object
+     */
+    public synchronized void add(String alias, int aliasId, int objectId) {
+        version++;
+        final String key = normalize(alias);
+        final int[] candidates = entries.get(key);
+        if (candidates == MISSING || (candidates == null && complete)) {
+            put(key, new int[]{aliasId, objectId});
+        } else if (candidates != null) {
+            put(key, append(candidates, aliasId, objectId));
+        }
+        //otherwise other candidates may be in the database only, the alias is read with them when it is needed
+    }
+
+    /**
+     * Replaces joined objects by the new object in all entries.
+     * @param newObjectId The id of the new object
+     * @param oldObjectIds The ids of the joined objects
+     */
+    public synchronized void replaceObjects(int newObjectId, int[] oldObjectIds) {
+        version++;
+        final Set<String> keys = new HashSet<>();
+        for (int oldObjectId : oldObjectIds) {
+            Set<String> aliases = objectAliases.get(oldObjectId);
+            if (aliases != null) {
+                keys.addAll(aliases);
+            }
+        }
+        for (String key : keys) {
+            int[] candidates = entries.get(key);
+            if (candidates == null) {
+                continue;
+            }
+            //entries are shared with results of resolve, so they are not modified
+            int[] replaced = candidates.clone();
+            for (int i = 1; i < replaced.length; i += 2) {
+                for (int oldObjectId : oldObjectIds) {
+                    if (replaced[i] == oldObjectId) {
+                        replaced[i] = newObjectId;
+                    }
+                }
+            }
+            put(key, replaced);
+        }
+    }
+
+    /**
+     * Gets number of cached entries including negative results.
+     * @return Returns size of index
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Reads aliases from the database.
+     * @param normalized The normalized texts of aliases
+     * @return Returns map from normalized text of alias to its candidates
+     */
+    private Map<String, int[]> query(Collection<String> normalized) {
+        final Map<String, int[]> found = new HashMap<>();
+        final List<String> list = new ArrayList<>(normalized);
+        for (int from = 0; from < list.size(); from += MAX_IN_PARAMETERS) {
+            List<String> part = list.subList(from, Math.min(from + MAX_IN_PARAMETERS, list.size()));
+            namedJdbcTemplate.query(
+                    "SELECT normalized, id_alias, id_object FROM Alias WHERE normalized IN (:aliases) ORDER BY id_alias",
+                    Collections.singletonMap("aliases", part),
+                    rs -> {
+                        found.put(rs.getString(1), append(found.get(rs.getString(1)), rs.getInt(2), rs.getInt(3)));
+                    });
+        }
+        return found;
+    }
+
+    /**
+     * Caches candidates of alias, the lock of index must be held.
+     * @param key The normalized alias
+     * @param candidates The candidates or MISSING
+     */
+    private void put(String key, int[] candidates) {
+        final int[] previous = entries.put(key, candidates);
+        if (previous != null) {
+            unlink(key, previous);
+        }
+        for (int i = 1; i < candidates.length; i += 2) {
+            Set<String> aliases = objectAliases.get(candidates[i]);
+            if (aliases == null) {
+                aliases = new HashSet<>(2);
+                objectAliases.put(candidates[i], aliases);
+            }
+            aliases.add(key);
+        }
+    }
+
+    /**
+     * Removes alias from cached aliases of its candidate objects, the lock of index must be held.
+     * @param key The normalized alias
+     * @param candidates The candidates removed from the index
+     */
+    private void unlink(String key, int[] candidates) {
+        for (int i = 1; i < candidates.length; i += 2) {
+            Set<String> aliases = objectAliases.get(candidates[i]);
+            if (aliases != null && aliases.remove(key) && aliases.isEmpty()) {
+                objectAliases.remove(candidates[i]);
+            }
+        }
+    }
+
+    /**
+     * Normalizes aliases of database created before aliases were normalized, see schema.sql.
+     */
+    private void migrate() {
+        final List<Object[]> aliases = jdbcTemplate.query("SELECT id_alias, alias FROM Alias WHERE normalized IS NULL",
+                (rs, row) -> new Object[]{normalize(rs.getString(2)), rs.getInt(1)});
+        if (aliases.isEmpty()) {
+            return;
+        }
+        for (int from = 0; from < aliases.size(); from += MIGRATION_BATCH_SIZE) {
+            jdbcTemplate.batchUpdate("UPDATE Alias SET normalized = ? WHERE id_alias = ?",
+                    aliases.subList(from, Math.min(from + MIGRATION_BATCH_SIZE, aliases.size())));
+        }
+        jdbcTemplate.execute("ALTER TABLE Alias ALTER COLUMN normalized SET NOT NULL");
+        LOG.info("{} aliases normalized", aliases.size());
+    }
+
+    /**
+     * Adds candidate to candidates of alias.
+     * @param candidates The candidates, null if there are none
+     * @param aliasId The id of alias
+     * @param objectId The id of object
+     * @return Returns new array of candidates
+     */
+    private static int[] append(int[] candidates, int aliasId, int objectId) {
+        if (candidates == null) {
+            return new int[]{aliasId, objectId};
+        }
+        final int[] result = Arrays.copyOf(candidates, candidates.length + 2);
+        result[candidates.length] = aliasId;
+        result[candidates.length + 1] = objectId;
+        return result;
+    }
+}
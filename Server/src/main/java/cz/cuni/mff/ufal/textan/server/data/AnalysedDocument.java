@@ -0,0 +1,79 @@
+package cz.cuni.mff.ufal.textan.server.data;
+
+import cz.cuni.mff.ufal.textan.commons.Entity;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Document with results of analysis, the unit saved by {@link DocumentWriter}.
+ */
+public class AnalysedDocument {
+
+    private final String text;
+
+    private final List<Entity> entities;
+
+    private final List<RelationMention> relations;
+
+    /** Id of document this one is a near duplicate of, -1 if there is none. */
+    private final int originalId;
+
+    /**
+     * Creates document without relations.
+     * @param text The text of document
+     * @param entities The entities found in the document
+     */
+    public AnalysedDocument(String text, List<Entity> entities) {
+        this(text, entities, Collections.<RelationMention>emptyList());
+    }
+
+    /**
+     * Creates document which is not a near duplicate.
+     * @param text The text of document
+     * @param entities The entities found in the document
+     * @param relations The relations among the entities
+     */
+    public AnalysedDocument(String text, List<Entity> entities, List<RelationMention> relations) {
+        this(text, entities, relations, -1);
+    }
+
+    /**
+     * Only constructor.
+     * @param text The text of document
+     * @param entities The entities found in the document
+     * @param relations The relations among the entities
+     * @param originalId The id of document this one is a near duplicate of, -1 if there is none
+     */
+    public AnalysedDocument(String text, List<Entity> entities, List<RelationMention> relations, int originalId) {
+        this.text = text;
+        this.entities = entities;
+        this.relations = relations;
+        this.originalId = originalId;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public List<Entity> getEntities() {
+        return entities;
+    }
+
+    public List<RelationMention> getRelations() {
+        return relations;
+    }
+
+    public int getOriginalId() {
+        return originalId;
+    }
+
+    /**
+     * Gets text of entity.
+     * @param entity The entity of this document
+     * @return Returns text of the entity
+     */
+    public String getText(Entity entity) {
+        return text.substring(entity.getStart(), entity.getEnd());
+    }
+}
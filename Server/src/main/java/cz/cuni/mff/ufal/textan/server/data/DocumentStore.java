@@ -0,0 +1,537 @@
+package cz.cuni.mff.ufal.textan.server.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Append-only store of texts of documents, so the Document table keeps only their metadata.
+ *
+ * Texts are appended as UTF-16 to segment files of the directory, which are written sequentially
+ * and read through read-only memory mappings, so a text or its part is read without copying.
+ * Location of each text (segment, offset and length in characters) is saved in the Document table
+ * by {@link DocumentWriter} and held in memory, it is loaded when the store is opened.
+ * A text is appended before its document is committed and its location is held in memory
+ * when the transaction commits, texts of rolled back documents are never referenced and they
+ * are overwritten when the store is opened again. With sync, appended texts are forced to disk
+ * before they are committed, texts appended concurrently are forced together (group commit).
+ * Texts of databases created before the store are moved to the store when it is opened.
+ * Texts are read by {@link #scan(TextCallback)} when indexes are built and by search for snippets of hits.
+ */
+public class DocumentStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DocumentStore.class);
+
+    /** Prefix of names of segment files. */
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    /** Suffix of names of segment files. */
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    /** Number of characters written at once. */
+    private static final int WRITE_CHUNK = 32768;
+
+    /** Number of rows fetched at once when texts are moved from the database. */
+    private static final int FETCH_SIZE = 100;
+
+    /** Number of documents whose texts are moved from the database at once. */
+    private static final int MIGRATE_CHUNK = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /** Directory of segment files. */
+    private final Path directory;
+
+    /** Capacity of new segments in characters. */
+    private final int segmentChars;
+
+    /** Whether appended texts are forced to disk before they are committed. */
+    private final boolean sync;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Mapped segments by number. Guarded by lock. */
+    private final Map<Integer, Segment> segments = new HashMap<>();
+
+    /** Segment of each document indexed by document id, -1 if the document has no text. Guarded by lock. */
+    private int[] documentSegments = new int[1024];
+
+    /** Offset of text of each document in its segment indexed by document id. Guarded by lock. */
+    private int[] documentOffsets = new int[1024];
+
+    /** Length of text of each document indexed by document id. Guarded by lock. */
+    private int[] documentLengths = new int[1024];
+
+    /** Number of stored texts. Guarded by lock. */
+    private int documentCount = 0;
+
+    /** Segment texts are appended to, null if there is none. Guarded by this. */
+    private Segment active = null;
+
+    /** Channel writing the active segment, null if there is none. Guarded by this. */
+    private FileChannel channel = null;
+
+    /** Buffer of written characters. Guarded by this. */
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(2 * WRITE_CHUNK);
+
+    /** Characters of the write buffer. Guarded by this. */
+    private final CharBuffer writeChars = writeBuffer.asCharBuffer();
+
+    /** Number of appended texts. Guarded by this. */
+    private long appended = 0;
+
+    /** Lock of forcing appended texts to disk, it is held while the active segment is forced. */
+    private final Object forceLock = new Object();
+
+    /** Number of appended texts forced to disk. Guarded by forceLock. */
+    private long forced = 0;
+
+    /**
+     * Only constructor.
+     * @param jdbcTemplate The template used to load locations of texts
+     * @param directory The directory of segment files, it is created when the first text is appended
+     * @param segmentSize The size of new segment files in bytes, longer texts get a segment of their own
+     * @param sync Whether appended texts are forced to disk before they are committed
+     */
+    public DocumentStore(JdbcTemplate jdbcTemplate, String directory, long segmentSize, boolean sync) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.directory = Paths.get(directory);
+        this.segmentChars = (int) Math.min(Math.max(segmentSize / 2, 1), Integer.MAX_VALUE / 2);
+        this.sync = sync;
+        Arrays.fill(documentSegments, -1);
+    }
+
+    /**
+     * Maps segment files, loads locations of texts and moves texts left in the database to the store.
+     * @throws IOException if a segment cannot be mapped or moved texts cannot be written
+     */
+    public synchronized void open() throws IOException {
+        final long start = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            if (Files.isDirectory(directory)) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+                    for (Path file : files) {
+                        final Segment segment = map(file, 0);
+                        segments.put(segment.number, segment);
+                    }
+                }
+            }
+            jdbcTemplate.query("SELECT id_document, text_segment, text_offset, text_length FROM Document WHERE text_segment IS NOT NULL",
+                    rs -> {
+                        final Segment segment = segments.get(rs.getInt(2));
+                        if (segment == null || segment.capacity < rs.getLong(3) + rs.getInt(4)) {
+                            throw new IllegalStateException("Text of document " + rs.getInt(1) + " is missing in " + directory);
+                        }
+                        put(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getInt(4));
+                    });
+
+            //texts are appended to the last segment after its last referenced text
+            int last = -1;
+            for (int number : segments.keySet()) {
+                last = Math.max(last, number);
+            }
+            if (last >= 0) {
+                active = segments.get(last);
+                for (int document = 0; document < documentSegments.length; document++) {
+                    if (documentSegments[document] == last) {
+                        active.end = Math.max(active.end, documentOffsets[document] + documentLengths[document]);
+                    }
+                }
+                channel = FileChannel.open(active.file, StandardOpenOption.WRITE);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        LOG.info("Document store of {} texts in {} segments opened in {} ms",
+                documentCount, segments.size(), System.currentTimeMillis() - start);
+
+        migrate();
+    }
+
+    /**
+     * Closes the active segment, mapped segments stay readable until they are garbage collected.
+     * @throws IOException if the segment cannot be closed
+     */
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+            channel = null;
+            active = null;
+        }
+    }
+
+    /**
+     * Appends text of document. Its location is held in memory when the current transaction commits,
+     * or at once when there is no transaction.
+     * @param documentId The id of document
+     * @param text The text
+     * @return Returns location of the text to be saved with the document
+     * @throws DataAccessResourceFailureException if the text cannot be written
+     */
+    public Location append(int documentId, String text) {
+        try {
+            final Location location;
+            final long sequence;
+            synchronized (this) {
+                location = write(text);
+                sequence = ++appended;
+            }
+            if (sync) {
+                force(sequence);
+            }
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCommit() {
+                        put(documentId, location);
+                    }
+                });
+            } else {
+                put(documentId, location);
+            }
+            return location;
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Cannot write text of document " + documentId, e);
+        }
+    }
+
+    /**
+     * Writes text to the active segment, the monitor must be held.
+     * @param text The text
+     * @return Returns location of the text
+     * @throws IOException if the text cannot be written
+     */
+    private Location write(String text) throws IOException {
+        final int length = text.length();
+        if (active == null || active.capacity - active.end < length) {
+            roll(length);
+        }
+        final int offset = active.end;
+        long position = 2L * offset;
+        for (int from = 0; from < length; from += WRITE_CHUNK) {
+            final int to = Math.min(from + WRITE_CHUNK, length);
+            writeChars.clear();
+            writeChars.put(text, from, to);
+            writeBuffer.clear();
+            writeBuffer.limit(2 * (to - from));
+            while (writeBuffer.hasRemaining()) {
+                position += channel.write(writeBuffer, position);
+            }
+        }
+        active.end += length;
+        return new Location(active.number, offset, length);
+    }
+
+    /**
+     * Forces appended texts to disk. Threads waiting while another thread forces the segment
+     * are served by the next force together, so one force covers texts of many documents.
+     * The monitor must not be held.
+     * @param sequence The number of appended texts which must be forced
+     * @throws IOException if the segment cannot be forced
+     */
+    private void force(long sequence) throws IOException {
+        synchronized (forceLock) {
+            if (forced >= sequence) {
+                return;
+            }
+            final long target;
+            final FileChannel current;
+            synchronized (this) {
+                target = appended;
+                current = channel;
+            }
+            try {
+                current.force(false);
+            } catch (ClosedByInterruptException e) {
+                throw e;
+            } catch (ClosedChannelException e) {
+                //the segment was closed by roll or close, which force it first
+            }
+            forced = target;
+        }
+    }
+
+    /**
+     * Holds location of text in memory.
+     * @param documentId The id of document
+     * @param location The location of its text
+     */
+    private void put(int documentId, Location location) {
+        lock.writeLock().lock();
+        try {
+            put(documentId, location.segment, location.offset, location.length);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets text of document. The text is a read-only view of the mapped segment, it is not copied.
+     * @param documentId The id of document
+     * @return Returns the text or null if the document has no text
+     */
+    public CharBuffer getText(int documentId) {
+        lock.readLock().lock();
+        try {
+            if (documentId < 0 || documentId >= documentSegments.length || documentSegments[documentId] < 0) {
+                return null;
+            }
+            final ByteBuffer bytes = segments.get(documentSegments[documentId]).buffer.duplicate();
+            bytes.position(2 * documentOffsets[documentId]);
+            bytes.limit(2 * (documentOffsets[documentId] + documentLengths[documentId]));
+            return bytes.slice().asCharBuffer();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Passes texts of all documents to the callback in order of document ids.
+     * @param callback The callback processing texts
+     */
+    public void scan(TextCallback callback) {
+        final int count;
+        lock.readLock().lock();
+        try {
+            count = documentSegments.length;
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (int document = 0; document < count; document++) {
+            final CharBuffer text = getText(document);
+            if (text != null) {
+                callback.process(document, text);
+            }
+        }
+    }
+
+    /**
+     * Gets number of stored texts.
+     * @return Returns number of texts
+     */
+    public int getDocumentCount() {
+        lock.readLock().lock();
+        try {
+            return documentCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Moves texts of documents saved in the database before the store was used to the store,
+     * the text column is dropped when all texts are moved. Texts are moved in chunks, the texts
+     * of a chunk are forced to disk once before their locations are updated.
+     * @throws IOException if the texts cannot be forced to disk
+     */
+    private void migrate() throws IOException {
+        final Integer columns = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS"
+                + " WHERE TABLE_NAME = 'DOCUMENT' AND COLUMN_NAME = 'TEXT'", Integer.class);
+        if (columns == 0) {
+            return;
+        }
+
+        final long start = System.currentTimeMillis();
+        final JdbcTemplate template = new JdbcTemplate(jdbcTemplate.getDataSource());
+        template.setFetchSize(FETCH_SIZE);
+        final List<Object[]> locations = new ArrayList<>(MIGRATE_CHUNK);
+        int moved = 0;
+        int last = -1;
+        do {
+            locations.clear();
+            //locations are updated when the query is finished, so the table is not locked by both statements
+            template.query("SELECT id_document, text FROM Document WHERE text_segment IS NULL AND id_document > ?"
+                            + " ORDER BY id_document LIMIT ?",
+                    rs -> {
+                        final Location location;
+                        try {
+                            location = write(rs.getString(2));
+                        } catch (IOException e) {
+                            throw new DataAccessResourceFailureException("Cannot write text of document " + rs.getInt(1), e);
+                        }
+                        put(rs.getInt(1), location);
+                        locations.add(new Object[]{location.segment, location.offset, location.length, rs.getInt(1)});
+                    }, last, MIGRATE_CHUNK);
+            if (!locations.isEmpty()) {
+                channel.force(false);
+                jdbcTemplate.batchUpdate("UPDATE Document SET text_segment = ?, text_offset = ?, text_length = ? WHERE id_document = ?", locations);
+                last = (Integer) locations.get(locations.size() - 1)[3];
+                moved += locations.size();
+            }
+        } while (locations.size() == MIGRATE_CHUNK);
+        jdbcTemplate.execute("ALTER TABLE Document DROP COLUMN text");
+        LOG.info("Texts of {} documents moved from database to document store in {} ms",
+                moved, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Starts new segment.
+     * @param length The length of text which must fit the segment
+     * @throws IOException if the segment cannot be created
+     */
+    private void roll(int length) throws IOException {
+        if (channel != null) {
+            //texts of the closed segment are forced, so they are not left to a force of the new one
+            channel.force(false);
+            channel.close();
+        }
+        Files.createDirectories(directory);
+        int number = 0;
+        for (int existing : segments.keySet()) {
+            number = Math.max(number, existing + 1);
+        }
+        final Path file = directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        final Segment segment = map(file, Math.max(segmentChars, length));
+        lock.writeLock().lock();
+        try {
+            segments.put(number, segment);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        active = segment;
+        channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        LOG.info("Document store segment {} started", file);
+    }
+
+    /**
+     * Maps segment file, new files are created with given capacity.
+     * @param file The segment file
+     * @param capacity The capacity of new file in characters, 0 to map an existing file
+     * @return Returns the mapped segment
+     * @throws IOException if the file cannot be mapped
+     */
+    private static Segment map(Path file, int capacity) throws IOException {
+        final String name = file.getFileName().toString();
+        final int number = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        try (FileChannel mapped = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final long size = capacity > 0 ? 2L * capacity : mapped.size() & ~1L;
+            //mapping of a file open for writing extends the file to the mapped size
+            return new Segment(number, file, mapped.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Records location of text, the write lock must be held.
+     * @param document The id of document
+     * @param segment The number of segment
+     * @param offset The offset of text in characters
+     * @param length The length of text in characters
+     */
+    private void put(int document, int segment, int offset, int length) {
+        if (document >= documentSegments.length) {
+            final int size = Math.max(2 * documentSegments.length, document + 1);
+            final int oldSize = documentSegments.length;
+            documentSegments = Arrays.copyOf(documentSegments, size);
+            documentOffsets = Arrays.copyOf(documentOffsets, size);
+            documentLengths = Arrays.copyOf(documentLengths, size);
+            Arrays.fill(documentSegments, oldSize, size, -1);
+        }
+        if (documentSegments[document] < 0) {
+            documentCount++;
+        }
+        documentSegments[document] = segment;
+        documentOffsets[document] = offset;
+        documentLengths[document] = length;
+    }
+
+    /**
+     * Processes texts passed by {@link #scan(TextCallback)}.
+     */
+    public interface TextCallback {
+
+        /**
+         * Processes text of document.
+         * @param documentId The id of document
+         * @param text The read-only text, it is valid while the store is open
+         */
+        void process(int documentId, CharBuffer text);
+    }
+
+    /**
+     * Location of text in the store.
+     */
+    public static final class Location {
+
+        private final int segment;
+        private final int offset;
+        private final int length;
+
+        Location(int segment, int offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * Gets number of segment holding the text.
+         * @return Returns number of segment
+         */
+        public int getSegment() {
+            return segment;
+        }
+
+        /**
+         * Gets offset of the text in the segment.
+         * @return Returns offset in characters
+         */
+        public int getOffset() {
+            return offset;
+        }
+
+        /**
+         * Gets length of the text.
+         * @return Returns length in characters
+         */
+        public int getLength() {
+            return length;
+        }
+    }
+
+    /**
+     * Mapped segment file.
+     */
+    private static final class Segment {
+
+        final int number;
+        final Path file;
+        final MappedByteBuffer buffer;
+
+        /** Capacity of the segment in characters. */
+        final int capacity;
+
+        /** Offset after the last text in characters, it is maintained only for the active segment. */
+        int end = 0;
+
+        Segment(int number, Path file, MappedByteBuffer buffer) {
+            this.number = number;
+            this.file = file;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity() / 2;
+        }
+    }
+}
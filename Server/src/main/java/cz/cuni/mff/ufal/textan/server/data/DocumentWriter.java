@@ -0,0 +1,363 @@
+package cz.cuni.mff.ufal.textan.server.data;
+
+import cz.cuni.mff.ufal.textan.commons.Entity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Saves analysed documents with their aliases and relations.
+ *
+ * Texts are appended to {@link DocumentStore}, the Document table keeps only their locations.
+ * A document is saved in one transaction and every kind of row is inserted by a single JDBC batch,
+ * so saving a document with hundreds of occurrences takes about ten statements.
+ * Ids are reserved in blocks by {@link IdGenerator}, they do not need to be read back.
+ * Aliases are resolved to existing objects by {@link AliasIndex}, unknown aliases create new objects
+ * and are added to the index when the transaction commits.
+ * A transaction creating an alias claims its normalized text until it completes, transactions creating
+ * the same alias wait for it and then use the committed alias, so concurrent documents do not create
+ * duplicate objects. The database does not enforce it, since one alias can belong to more objects.
+ */
+public class DocumentWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DocumentWriter.class);
+
+    /** Placeholder of alias being created. */
+    private static final int[] MISSING = new int[0];
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final IdGenerator idGenerator;
+
+    private final AliasIndex aliasIndex;
+
+    private final DocumentStore documentStore;
+
+    /** Template of transactions saving documents. */
+    private final TransactionTemplate transactionTemplate;
+
+    /** Template of nested transactions inserting types, a type inserted concurrently rolls back only to a savepoint. */
+    private final TransactionTemplate typeTransactionTemplate;
+
+    /** Ids of object types by name. */
+    private final ConcurrentMap<String, Integer> objectTypes = new ConcurrentHashMap<>();
+
+    /** Ids of relation types by name. */
+    private final ConcurrentMap<String, Integer> relationTypes = new ConcurrentHashMap<>();
+
+    /** Normalized texts of aliases being created, released when the creating transaction completes. */
+    private final ConcurrentMap<String, CountDownLatch> creatingAliases = new ConcurrentHashMap<>();
+
+    /** Listeners notified about committed documents. */
+    private final List<IDocumentListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Only constructor.
+     * @param jdbcTemplate The template used for all statements
+     * @param transactionManager The transaction manager of the data source
+     * @param idGenerator The generator of ids
+     * @param aliasIndex The index resolving aliases
+     * @param documentStore The store of texts of documents
+     */
+    public DocumentWriter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, IdGenerator idGenerator,
+            AliasIndex aliasIndex, DocumentStore documentStore) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.idGenerator = idGenerator;
+        this.aliasIndex = aliasIndex;
+        this.documentStore = documentStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.typeTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.typeTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+    }
+
+    /**
+     * Registers listener notified about saved documents.
+     * @param listener The listener to add
+     */
+    public void addListener(IDocumentListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Saves analysed document.
+     * @param document The document to save
+     * @return Returns id of the saved document
+     */
+    public int write(final AnalysedDocument document) {
+        return transactionTemplate.execute(status -> doWrite(document));
+    }
+
+    /**
+     * Saves analysed document in current transaction.
+     * @param document The document to save
+     * @return Returns id of the saved document
+     */
+    private int doWrite(final AnalysedDocument document) {
+        final int documentId = idGenerator.next("Document", "id_document");
+        final DocumentStore.Location location = documentStore.append(documentId, document.getText());
+        jdbcTemplate.update("INSERT INTO Document (id_document, text_segment, text_offset, text_length, id_original) VALUES (?, ?, ?, ?, ?)",
+                documentId, location.getSegment(), location.getOffset(), location.getLength(),
+                document.getOriginalId() >= 0 ? document.getOriginalId() : null);
+
+        final List<Entity> entities = document.getEntities();
+        final int[] aliasIds = new int[entities.size()];
+        final int[] objectIds = new int[entities.size()];
+        resolveAliases(document, aliasIds, objectIds);
+
+        if (!entities.isEmpty()) {
+            final int firstId = idGenerator.reserve("AliasOccurrence", "id_alias_occurrence", entities.size());
+            final List<Object[]> occurrences = new ArrayList<>(entities.size());
+            for (int i = 0; i < entities.size(); i++) {
+                occurrences.add(new Object[]{firstId + i, aliasIds[i], documentId, entities.get(i).getStart()});
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO AliasOccurrence (id_alias_occurrence, id_alias, id_document, position) VALUES (?, ?, ?, ?)", occurrences);
+        }
+
+        final int[] relationIds = writeRelations(document, documentId, objectIds);
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                for (IDocumentListener listener : listeners) {
+                    listener.documentSaved(documentId, document, objectIds, relationIds);
+                }
+            }
+        });
+        LOG.debug("Document {} saved with {} aliases and {} relations", documentId, entities.size(), document.getRelations().size());
+        return documentId;
+    }
+
+    /**
+     * Finds aliases of entities, aliases which do not exist are inserted with new objects.
+     * @param document The document
+     * @param aliasIds The array filled with id of alias of each entity
+     * @param objectIds The array filled with id of object of each entity
+     */
+    private void resolveAliases(AnalysedDocument document, int[] aliasIds, int[] objectIds) {
+        final List<Entity> entities = document.getEntities();
+        final Set<String> texts = new LinkedHashSet<>();
+        for (Entity entity : entities) {
+            texts.add(document.getText(entity));
+        }
+        Map<String, int[]> aliases = aliasIndex.resolve(texts);
+
+        final Set<String> missing = new TreeSet<>();
+        for (String text : texts) {
+            if (!aliases.containsKey(text)) {
+                missing.add(AliasIndex.normalize(text));
+            }
+        }
+        if (!missing.isEmpty()) {
+            claimAliases(missing);
+            //aliases created by transactions which claimed them earlier are committed and indexed now
+            aliases = aliasIndex.resolve(texts);
+        }
+
+        //entities whose aliases differ only in normalization share one new alias
+        final Map<String, int[]> created = new HashMap<>();
+        final List<Entity> unknown = new ArrayList<>();
+        for (Entity entity : entities) {
+            String text = document.getText(entity);
+            if (!aliases.containsKey(text) && created.put(AliasIndex.normalize(text), MISSING) == null) {
+                unknown.add(entity);
+            }
+        }
+
+        if (!unknown.isEmpty()) {
+            final int firstObjectId = idGenerator.reserve("Object", "id_object", unknown.size());
+            final int firstAliasId = idGenerator.reserve("Alias", "id_alias", unknown.size());
+            final List<Object[]> objects = new ArrayList<>(unknown.size());
+            final List<Object[]> newAliases = new ArrayList<>(unknown.size());
+            for (int i = 0; i < unknown.size(); i++) {
+                Entity entity = unknown.get(i);
+                String text = document.getText(entity);
+                String normalized = AliasIndex.normalize(text);
+                objects.add(new Object[]{firstObjectId + i, getObjectTypeId(entity.getType()), text});
+                newAliases.add(new Object[]{firstAliasId + i, firstObjectId + i, text, normalized});
+                created.put(normalized, new int[]{firstAliasId + i, firstObjectId + i});
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO Object (id_object, id_object_type, data) VALUES (?, ?, ?)", objects);
+            jdbcTemplate.batchUpdate("INSERT INTO Alias (id_alias, id_object, alias, normalized) VALUES (?, ?, ?, ?)", newAliases);
+
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    for (Object[] alias : newAliases) {
+                        aliasIndex.add((String) alias[2], (Integer) alias[0], (Integer) alias[1]);
+                    }
+                }
+            });
+        }
+
+        for (int i = 0; i < entities.size(); i++) {
+            String text = document.getText(entities.get(i));
+            //an ambiguous alias is resolved to its oldest candidate
+            int[] alias = aliases.get(text);
+            if (alias == null) {
+                alias = created.get(AliasIndex.normalize(text));
+            }
+            aliasIds[i] = alias[0];
+            objectIds[i] = alias[1];
+        }
+    }
+
+    /**
+     * Claims normalized texts of aliases to create until the current transaction completes.
+     * Texts are claimed in sorted order, so transactions waiting for each other cannot deadlock.
+     * @param normalized The sorted normalized texts of aliases
+     * @throws CannotAcquireLockException if the thread is interrupted while waiting
+     */
+    private void claimAliases(Set<String> normalized) {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<String> claimed = new ArrayList<>(normalized.size());
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                for (String key : claimed) {
+                    creatingAliases.remove(key, latch);
+                }
+                latch.countDown();
+            }
+        });
+
+        for (String key : normalized) {
+            CountDownLatch other;
+            while ((other = creatingAliases.putIfAbsent(key, latch)) != null) {
+                try {
+                    other.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CannotAcquireLockException("Interrupted while waiting for alias " + key + " created by another document");
+                }
+            }
+            claimed.add(key);
+        }
+    }
+
+    /**
+     * Inserts relations, their members and occurrences.
+     * @param document The document
+     * @param documentId The id of document
+     * @param objectIds The id of object of each entity
+     * @return Returns the id of relation of each mention
+     */
+    private int[] writeRelations(AnalysedDocument document, int documentId, int[] objectIds) {
+        final List<RelationMention> mentions = document.getRelations();
+        final int[] relationIds = new int[mentions.size()];
+        if (mentions.isEmpty()) {
+            return relationIds;
+        }
+
+        int memberCount = 0;
+        for (RelationMention mention : mentions) {
+            memberCount += mention.getEntities().length;
+        }
+
+        final int firstRelationId = idGenerator.reserve("Relation", "id_relation", mentions.size());
+        final int firstOccurrenceId = idGenerator.reserve("RelationOccurrence", "id_relation_occurrence", mentions.size());
+        int memberId = idGenerator.reserve("IsInRelation", "id_is_in_relation", memberCount);
+
+        final List<Object[]> relations = new ArrayList<>(mentions.size());
+        final List<Object[]> members = new ArrayList<>(memberCount);
+        final List<Object[]> occurrences = new ArrayList<>(mentions.size());
+        for (int i = 0; i < mentions.size(); i++) {
+            RelationMention mention = mentions.get(i);
+            int relationId = firstRelationId + i;
+            relationIds[i] = relationId;
+            relations.add(new Object[]{relationId, getRelationTypeId(mention.getType())});
+            int[] entities = mention.getEntities();
+            for (int order = 0; order < entities.length; order++) {
+                members.add(new Object[]{memberId++, relationId, objectIds[entities[order]], order});
+            }
+            occurrences.add(new Object[]{firstOccurrenceId + i, relationId, documentId, mention.getPosition(), mention.getAnchor()});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO Relation (id_relation, id_relation_type) VALUES (?, ?)", relations);
+        jdbcTemplate.batchUpdate("INSERT INTO IsInRelation (id_is_in_relation, id_relation, id_object, order_in_relation) VALUES (?, ?, ?, ?)", members);
+        jdbcTemplate.batchUpdate("INSERT INTO RelationOccurrence (id_relation_occurrence, id_relation, id_document, position, anchor) VALUES (?, ?, ?, ?, ?)", occurrences);
+        return relationIds;
+    }
+
+    /**
+     * Gets id of object type, the type is created if it does not exist.
+     * @param name The name of type
+     * @return Returns id of type
+     */
+    public int getObjectTypeId(String name) {
+        return getTypeId(objectTypes, "ObjectType", "id_object_type", name);
+    }
+
+    /**
+     * Gets id of relation type, the type is created if it does not exist.
+     * @param name The name of type
+     * @return Returns id of type
+     */
+    public int getRelationTypeId(String name) {
+        return getTypeId(relationTypes, "RelationType", "id_relation_type", name);
+    }
+
+    /**
+     * Gets id of type from cache or from database, the type is inserted in the current transaction if it does not exist.
+     * The type is inserted under a savepoint, so the insert of a type committed concurrently is rolled back alone
+     * and the committed row is read back. Ids are cached once the current transaction commits, since an id read
+     * or inserted by a transaction which is rolled back later may not exist.
+     * @param cache The cache of ids of types
+     * @param table The name of table with types
+     * @param idColumn The name of primary key column
+     * @param name The name of type
+     * @return Returns id of type
+     */
+    private int getTypeId(final Map<String, Integer> cache, final String table, final String idColumn, final String name) {
+        Integer id = cache.get(name);
+        if (id != null) {
+            return id;
+        }
+
+        final String select = "SELECT " + idColumn + " FROM " + table + " WHERE name = ?";
+        final List<Integer> ids = jdbcTemplate.queryForList(select, Integer.class, name);
+        if (!ids.isEmpty()) {
+            id = ids.get(0);
+        } else {
+            final int newId = idGenerator.next(table, idColumn);
+            try {
+                typeTransactionTemplate.execute(status ->
+                        jdbcTemplate.update("INSERT INTO " + table + " (" + idColumn + ", name) VALUES (?, ?)", newId, name));
+                id = newId;
+            } catch (DuplicateKeyException e) {
+                //inserted concurrently
+                id = jdbcTemplate.queryForObject(select, Integer.class, name);
+            }
+        }
+
+        final int typeId = id;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    cache.put(name, typeId);
+                }
+            });
+        } else {
+            cache.put(name, typeId);
+        }
+        return typeId;
+    }
+}
@@ -0,0 +1,16 @@
+package cz.cuni.mff.ufal.textan.server.data;
+
+/**
+ * Listener notified by {@link DocumentWriter} when a saved document is committed.
+ */
+public interface IDocumentListener {
+
+    /**
+     * Called after the transaction saving the document has been committed.
+     * @param documentId The id of saved document
+     * @param document The saved document
+     * @param objectIds The id of object of each entity of the document
+     * @param relationIds The id of relation of each relation mention of the document
+     */
+    void documentSaved(int documentId, AnalysedDocument document, int[] objectIds, int[] relationIds);
+}
@@ -0,0 +1,14 @@
+package cz.cuni.mff.ufal.textan.server.data;
+
+/**
+ * Listener notified by {@link ObjectMerger} when objects have been joined.
+ */
+public interface IObjectMergeListener {
+
+    /**
+     * Called after all references to the joined objects have been rewritten to the new object.
+     * @param newObjectId The id of the new object
+     * @param oldObjectIds The ids of the joined objects
+     */
+    void objectsJoined(int newObjectId, int[] oldObjectIds);
+}
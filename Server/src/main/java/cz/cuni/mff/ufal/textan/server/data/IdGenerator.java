@@ -0,0 +1,53 @@
+package cz.cuni.mff.ufal.textan.server.data;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates primary keys of tables, the schema does not use identity columns.
+ *
+ * The last id of each table is read from the database on first use and then kept in memory,
+ * so whole blocks of ids can be reserved for batch inserts without a query.
+ * The database must not be written by another process while the server is running.
+ */
+public class IdGenerator {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /** The last id used in each table. */
+    private final ConcurrentMap<String, AtomicInteger> lastIds = new ConcurrentHashMap<>();
+
+    /**
+     * Only constructor.
+     * @param jdbcTemplate The template used to read the last ids
+     */
+    public IdGenerator(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Gets new id.
+     * @param table The name of table
+     * @param idColumn The name of primary key column
+     * @return Returns unused id
+     */
+    public int next(String table, String idColumn) {
+        return reserve(table, idColumn, 1);
+    }
+
+    /**
+     * Reserves block of consecutive ids.
+     * @param table The name of table
+     * @param idColumn The name of primary key column
+     * @param count The number of ids
+     * @return Returns the first id of the block
+     */
+    public int reserve(final String table, final String idColumn, int count) {
+        AtomicInteger lastId = lastIds.computeIfAbsent(table, t -> new AtomicInteger(
+                jdbcTemplate.queryForObject("SELECT COALESCE(MAX(" + idColumn + "), 0) FROM " + table, Integer.class)));
+        return lastId.getAndAdd(count) + 1;
+    }
+}
@@ -0,0 +1,326 @@
+package cz.cuni.mff.ufal.textan.server.data;
+
+import cz.cuni.mff.ufal.textan.commons.MergeProgress;
+import cz.cuni.mff.ufal.textan.commons.MergeStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Joins pairs of objects into new objects in background.
+ *
+ * The new object and the JoinedObjects row are inserted when a job is submitted.
+ * A background thread then rewrites aliases and relation members of the old objects to the new object
+ * in transactions of at most batch size rows, so the database is never locked for long.
+ * Alias occurrences reference aliases, so they follow their aliases.
+ * The last transaction rewrites references created meanwhile and marks the old objects as joined,
+ * caches are updated when it commits. Documents which resolved their aliases before that still write
+ * relation members of the old objects, so members are rewritten once more after the retry delay
+ * and members of all joined objects are rewritten at every start. Jobs run one by one, jobs interrupted
+ * by shutdown are resumed at next start. Failed jobs are retried after a delay, rows already rewritten
+ * are not read again.
+ */
+public class ObjectMerger {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ObjectMerger.class);
+
+    /** Maximal number of remembered jobs. */
+    private static final int MAX_JOBS = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final IdGenerator idGenerator;
+
+    private final AliasIndex aliasIndex;
+
+    /** Maximal number of rows rewritten in one transaction. */
+    private final int batchSize;
+
+    /** Milliseconds before a failed job is run again. */
+    private final long retryDelay;
+
+    /** Listeners notified about joined objects. */
+    private final List<IObjectMergeListener> listeners = new CopyOnWriteArrayList<>();
+
+    /** Recent jobs by id. Guarded by itself. */
+    private final Map<Integer, Job> jobs = new LinkedHashMap<Integer, Job>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Job> eldest) {
+            return size() > MAX_JOBS;
+        }
+    };
+
+    /** Id of the next job. Guarded by jobs. */
+    private int nextJobId = 1;
+
+    /** Thread running jobs. */
+    private ScheduledExecutorService executor;
+
+    /**
+     * Only constructor.
+     * @param jdbcTemplate The template used for all statements
+     * @param transactionManager The transaction manager of the data source
+     * @param idGenerator The generator of ids
+     * @param aliasIndex The index resolving aliases, it is updated when objects are joined
+     * @param batchSize The maximal number of rows rewritten in one transaction
+     * @param retryDelay The milliseconds before a failed job is run again
+     */
+    public ObjectMerger(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, IdGenerator idGenerator, AliasIndex aliasIndex,
+            int batchSize, long retryDelay) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.idGenerator = idGenerator;
+        this.aliasIndex = aliasIndex;
+        this.batchSize = batchSize;
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * Registers listener notified about joined objects.
+     * @param listener The listener to add
+     */
+    public void addListener(IObjectMergeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Starts the background thread and resumes unfinished jobs.
+     */
+    public synchronized void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "object-merge"));
+        rewriteAllLateMembers();
+        jdbcTemplate.query(
+                "SELECT j.id_new_object, j.id_old_object1, j.id_old_object2 FROM JoinedObjects j"
+                        + " JOIN Object o ON o.id_object = j.id_old_object1 WHERE o.alreadyJoined = FALSE",
+                rs -> {
+                    LOG.info("Resuming join of objects {} and {} into {}", rs.getInt(2), rs.getInt(3), rs.getInt(1));
+                    schedule(rs.getInt(1), new int[]{rs.getInt(2), rs.getInt(3)});
+                });
+    }
+
+    /**
+     * Stops the background thread, the running job is interrupted between transactions.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Creates new object joining two objects and schedules rewriting of references to them.
+     * @param objectId1 The id of the first object, the new object takes its type and data
+     * @param objectId2 The id of the second object
+     * @return Returns progress of the job
+     * @throws IllegalArgumentException if an object does not exist or is already being joined
+     */
+    public synchronized MergeProgress submit(final int objectId1, final int objectId2) {
+        if (objectId1 == objectId2) {
+            throw new IllegalArgumentException("Object " + objectId1 + " cannot be joined with itself");
+        }
+        final int newObjectId = transactionTemplate.execute(status -> {
+            for (int objectId : new int[]{objectId1, objectId2}) {
+                List<Boolean> joined = jdbcTemplate.queryForList("SELECT alreadyJoined FROM Object WHERE id_object = ?", Boolean.class, objectId);
+                if (joined.isEmpty()) {
+                    throw new IllegalArgumentException("Object " + objectId + " does not exist");
+                }
+                int joins = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM JoinedObjects WHERE id_old_object1 = ? OR id_old_object2 = ?", Integer.class, objectId, objectId);
+                if (joined.get(0) || joins > 0) {
+                    throw new IllegalArgumentException("Object " + objectId + " is already joined");
+                }
+            }
+            int id = idGenerator.next("Object", "id_object");
+            jdbcTemplate.update("INSERT INTO Object (id_object, id_object_type, data) SELECT ?, id_object_type, data FROM Object WHERE id_object = ?", id, objectId1);
+            jdbcTemplate.update("INSERT INTO JoinedObjects (id_new_object, id_old_object1, id_old_object2, joined_from) VALUES (?, ?, ?, CURRENT_DATE)", id, objectId1, objectId2);
+            return id;
+        });
+        return schedule(newObjectId, new int[]{objectId1, objectId2}).toProgress();
+    }
+
+    /**
+     * Gets progress of job.
+     * @param jobId The id of job
+     * @return Returns progress of the job or null if the job is unknown
+     */
+    public MergeProgress getProgress(int jobId) {
+        final Job job;
+        synchronized (jobs) {
+            job = jobs.get(jobId);
+        }
+        return job != null ? job.toProgress() : null;
+    }
+
+    private Job schedule(int newObjectId, int[] oldObjectIds) {
+        final Job job;
+        synchronized (jobs) {
+            job = new Job(nextJobId++, newObjectId, oldObjectIds);
+            jobs.put(job.id, job);
+        }
+        executor.execute(() -> run(job));
+        return job;
+    }
+
+    /**
+     * Rewrites references to old objects and marks them as joined.
+     * @param job The job to run
+     */
+    private void run(final Job job) {
+        job.status = MergeStatus.RUNNING;
+        final int[] old = job.oldObjectIds;
+        try {
+            List<Integer> aliases = jdbcTemplate.queryForList("SELECT id_alias FROM Alias WHERE id_object IN (?, ?)", Integer.class, old[0], old[1]);
+            List<Integer> members = jdbcTemplate.queryForList("SELECT id_is_in_relation FROM IsInRelation WHERE id_object IN (?, ?)", Integer.class, old[0], old[1]);
+            job.totalRows = job.processedRows + aliases.size() + members.size();
+
+            if (!rewrite(job, "UPDATE Alias SET id_object = ? WHERE id_alias = ?", aliases)
+                    || !rewrite(job, "UPDATE IsInRelation SET id_object = ? WHERE id_is_in_relation = ?", members)) {
+                job.status = MergeStatus.QUEUED;
+                LOG.info("Join of objects {} and {} interrupted, it is resumed at next start", old[0], old[1]);
+                return;
+            }
+
+            transactionTemplate.execute(status -> {
+                //references created by documents saved while the job was running
+                int late = jdbcTemplate.update("UPDATE Alias SET id_object = ? WHERE id_object IN (?, ?)", job.newObjectId, old[0], old[1])
+                        + jdbcTemplate.update("UPDATE IsInRelation SET id_object = ? WHERE id_object IN (?, ?)", job.newObjectId, old[0], old[1]);
+                jdbcTemplate.update("UPDATE Object SET alreadyJoined = TRUE WHERE id_object IN (?, ?)", old[0], old[1]);
+                job.totalRows += late;
+                job.processedRows += late;
+
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCommit() {
+                        aliasIndex.replaceObjects(job.newObjectId, old);
+                        for (IObjectMergeListener listener : listeners) {
+                            listener.objectsJoined(job.newObjectId, old);
+                        }
+                    }
+                });
+                return null;
+            });
+            job.status = MergeStatus.DONE;
+            LOG.info("Objects {} and {} joined into {}, {} references rewritten", old[0], old[1], job.newObjectId, job.processedRows);
+            schedule(() -> rewriteLateMembers(job));
+        } catch (RuntimeException e) {
+            job.status = MergeStatus.FAILED;
+            LOG.error("Join of objects {} and {} failed, it is retried in {} ms", old[0], old[1], retryDelay, e);
+            retry(job);
+        }
+    }
+
+    /**
+     * Runs failed job again after the retry delay.
+     * @param job The failed job
+     */
+    private void retry(final Job job) {
+        schedule(() -> run(job));
+    }
+
+    /**
+     * Runs task after the retry delay, nothing is done if the merger is stopped.
+     * @param task The task to run
+     */
+    private synchronized void schedule(Runnable task) {
+        if (executor != null && !executor.isShutdown()) {
+            executor.schedule(task, retryDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Rewrites relation members of the old objects of a finished job written by documents saved during its last transaction.
+     * @param job The finished job
+     */
+    private void rewriteLateMembers(Job job) {
+        final int[] old = job.oldObjectIds;
+        try {
+            int late = jdbcTemplate.update("UPDATE IsInRelation SET id_object = ? WHERE id_object IN (?, ?)", job.newObjectId, old[0], old[1]);
+            if (late > 0) {
+                LOG.info("{} relation members of objects {} and {} written after their join rewritten", late, old[0], old[1]);
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Relation members of objects {} and {} written after their join not rewritten, they are rewritten at next start", old[0], old[1], e);
+        }
+    }
+
+    /**
+     * Rewrites relation members of all joined objects to the objects they were joined into.
+     * Objects joined repeatedly are followed one join per statement.
+     */
+    private void rewriteAllLateMembers() {
+        int late = 0;
+        int updated;
+        do {
+            updated = jdbcTemplate.update("UPDATE IsInRelation SET id_object = (SELECT j.id_new_object FROM JoinedObjects j"
+                    + " WHERE j.id_old_object1 = IsInRelation.id_object OR j.id_old_object2 = IsInRelation.id_object)"
+                    + " WHERE id_object IN (SELECT id_object FROM Object WHERE alreadyJoined = TRUE)");
+            late += updated;
+        } while (updated > 0);
+        if (late > 0) {
+            LOG.info("{} relation members of joined objects rewritten", late);
+        }
+    }
+
+    /**
+     * Rewrites references to new object, every batch in its own transaction.
+     * @param job The job
+     * @param update The statement setting object id of row with given id
+     * @param ids The ids of rows
+     * @return Returns false if the thread was interrupted before all rows were rewritten
+     */
+    private boolean rewrite(final Job job, final String update, List<Integer> ids) {
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            final List<Integer> part = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            transactionTemplate.execute(status -> {
+                List<Object[]> args = new ArrayList<>(part.size());
+                for (Integer id : part) {
+                    args.add(new Object[]{job.newObjectId, id});
+                }
+                return jdbcTemplate.batchUpdate(update, args);
+            });
+            job.processedRows += part.size();
+        }
+        return true;
+    }
+
+    /**
+     * Job joining two objects, its fields are written only by the thread running it.
+     */
+    private static class Job {
+
+        final int id;
+        final int newObjectId;
+        final int[] oldObjectIds;
+        volatile MergeStatus status = MergeStatus.QUEUED;
+        volatile int processedRows = 0;
+        volatile int totalRows = 0;
+
+        Job(int id, int newObjectId, int[] oldObjectIds) {
+            this.id = id;
+            this.newObjectId = newObjectId;
+            this.oldObjectIds = oldObjectIds;
+        }
+
+        MergeProgress toProgress() {
+            return new MergeProgress(id, newObjectId, status, processedRows, totalRows);
+        }
+    }
+}
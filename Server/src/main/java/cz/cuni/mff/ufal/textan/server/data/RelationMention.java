@@ -0,0 +1,49 @@
+package cz.cuni.mff.ufal.textan.server.data;
+
+/**
+ * Occurrence of relation among entities of an analysed document.
+ */
+public class RelationMention {
+
+    /** Name of relation type. */
+    private final String type;
+
+    /** Offset of the occurrence in text of document. */
+    private final int position;
+
+    /** Text expressing the relation, can be null. */
+    private final String anchor;
+
+    /** Indices of entities of the document in the relation, in their order in the relation. */
+    private final int[] entities;
+
+    /**
+     * Only constructor.
+     * @param type The name of relation type
+     * @param position The offset of the occurrence in text of document
+     * @param anchor The text expressing the relation, can be null
+     * @param entities The indices of entities of the document in the relation
+     */
+    public RelationMention(String type, int position, String anchor, int[] entities) {
+        this.type = type;
+        this.position = position;
+        this.anchor = anchor;
+        this.entities = entities;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public String getAnchor() {
+        return anchor;
+    }
+
+    public int[] getEntities() {
+        return entities;
+    }
+}
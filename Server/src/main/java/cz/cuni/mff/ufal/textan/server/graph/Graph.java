@@ -0,0 +1,314 @@
+package cz.cuni.mff.ufal.textan.server.graph;
+
+import cz.cuni.mff.ufal.textan.commons.GraphEdge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable undirected graph of objects in compressed sparse row form.
+ *
+ * Objects are numbered by their position in the sorted array of object ids. Edges of object with
+ * index i are stored at indices offsets[i] to offsets[i + 1] of targets (indices of neighbours)
+ * and relations (ids of relations), sorted by neighbour. Every edge is stored in both directions.
+ * Instances are created by {@link GraphBuilder} and can be queried by any number of threads.
+ */
+public class Graph {
+
+    /** Empty graph. */
+    public static final Graph EMPTY = new Graph(new int[0], new int[1], new int[0], new int[0]);
+
+    /** Sorted ids of objects. */
+    final int[] ids;
+
+    /** Start of edges of each object, the last item is the number of edges. */
+    final int[] offsets;
+
+    /** Index of neighbour of each edge. */
+    final int[] targets;
+
+    /** Id of relation of each edge. */
+    final int[] relations;
+
+    Graph(int[] ids, int[] offsets, int[] targets, int[] relations) {
+        this.ids = ids;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.relations = relations;
+    }
+
+    /**
+     * Gets number of objects.
+     * @return Returns number of objects
+     */
+    public int getObjectCount() {
+        return ids.length;
+    }
+
+    /**
+     * Gets number of edges, each edge is counted in both directions.
+     * @return Returns number of edges
+     */
+    public int getEdgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * Gets index of object.
+     * @param objectId The id of object
+     * @return Returns index of object or negative number if the graph does not contain the object
+     */
+    int indexOf(int objectId) {
+        return Arrays.binarySearch(ids, objectId);
+    }
+
+    /**
+     * Gets objects which are in some relation with the object.
+     * @param objectId The id of object
+     * @return Returns sorted ids of neighbours, empty if the graph does not contain the object
+     */
+    public int[] getNeighbours(int objectId) {
+        final int node = indexOf(objectId);
+        if (node < 0) {
+            return new int[0];
+        }
+        final int[] neighbours = new int[offsets[node + 1] - offsets[node]];
+        int count = 0;
+        for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+            int neighbour = ids[targets[edge]];
+            if (count == 0 || neighbours[count - 1] != neighbour) {
+                neighbours[count++] = neighbour;
+            }
+        }
+        return Arrays.copyOf(neighbours, count);
+    }
+
+    /**
+     * Gets edges of objects reachable by breadth-first search.
+     * Each edge is reported once, from the object which was reached first.
+     * @param objectId The id of the start object
+     * @param hops The maximal distance of reported objects
+     * @param limit The maximal number of edges
+     * @return Returns edges in breadth-first order
+     */
+    public List<GraphEdge> getNeighbourhood(int objectId, int hops, int limit) {
+        final List<GraphEdge> edges = new ArrayList<>();
+        final int start = indexOf(objectId);
+        if (start < 0 || hops <= 0 || limit <= 0) {
+            return edges;
+        }
+
+        final NodeMap depths = new NodeMap();
+        final IntQueue queue = new IntQueue();
+        depths.put(start, 0);
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            int depth = depths.get(node);
+            for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                int target = targets[edge];
+                int targetDepth = depths.get(target);
+                if (targetDepth < 0) {
+                    depths.put(target, depth + 1);
+                    if (depth + 1 < hops) {
+                        queue.add(target);
+                    }
+                } else if (targetDepth < depth || (targetDepth == depth && target < node)) {
+                    //reported from the other end
+                    continue;
+                }
+                edges.add(new GraphEdge(ids[node], ids[target], relations[edge]));
+                if (edges.size() == limit) {
+                    return edges;
+                }
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * Finds the shortest path by breadth-first search from both ends, the smaller frontier is always expanded.
+     * @param fromObjectId The id of the first object
+     * @param toObjectId The id of the last object
+     * @param maxHops The maximal number of edges of path
+     * @return Returns ids of objects on the path, empty if there is no such path
+     */
+    public int[] getShortestPath(int fromObjectId, int toObjectId, int maxHops) {
+        final int from = indexOf(fromObjectId);
+        final int to = indexOf(toObjectId);
+        if (from < 0 || to < 0) {
+            return new int[0];
+        }
+        if (from == to) {
+            return new int[]{fromObjectId};
+        }
+
+        //predecessors towards the start of each search
+        final NodeMap forward = new NodeMap();
+        final NodeMap backward = new NodeMap();
+        IntQueue forwardFrontier = new IntQueue();
+        IntQueue backwardFrontier = new IntQueue();
+        forward.put(from, from);
+        backward.put(to, to);
+        forwardFrontier.add(from);
+        backwardFrontier.add(to);
+
+        for (int hops = 0; hops < maxHops && !forwardFrontier.isEmpty() && !backwardFrontier.isEmpty(); hops++) {
+            boolean expandForward = forwardFrontier.size() <= backwardFrontier.size();
+            NodeMap visited = expandForward ? forward : backward;
+            NodeMap other = expandForward ? backward : forward;
+            IntQueue frontier = expandForward ? forwardFrontier : backwardFrontier;
+            IntQueue next = new IntQueue();
+            while (!frontier.isEmpty()) {
+                int node = frontier.poll();
+                for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                    int target = targets[edge];
+                    if (visited.get(target) >= 0) {
+                        continue;
+                    }
+                    visited.put(target, node);
+                    if (other.get(target) >= 0) {
+                        return path(target, forward, backward);
+                    }
+                    next.add(target);
+                }
+            }
+            if (expandForward) {
+                forwardFrontier = next;
+            } else {
+                backwardFrontier = next;
+            }
+        }
+        return new int[0];
+    }
+
+    /**
+     * Joins paths found by both searches.
+     * @param meeting The index of object reached by both searches
+     * @param forward The predecessors of the search from the first object
+     * @param backward The predecessors of the search from the last object
+     * @return Returns ids of objects on the path
+     */
+    private int[] path(int meeting, NodeMap forward, NodeMap backward) {
+        final IntQueue head = new IntQueue();
+        for (int node = meeting; ; node = forward.get(node)) {
+            head.add(node);
+            if (forward.get(node) == node) {
+                break;
+            }
+        }
+        final IntQueue tail = new IntQueue();
+        for (int node = meeting; backward.get(node) != node; ) {
+            node = backward.get(node);
+            tail.add(node);
+        }
+
+        final int[] path = new int[head.size() + tail.size()];
+        for (int i = 0; i < head.size(); i++) {
+            path[head.size() - 1 - i] = ids[head.get(i)];
+        }
+        for (int i = 0; i < tail.size(); i++) {
+            path[head.size() + i] = ids[tail.get(i)];
+        }
+        return path;
+    }
+
+    /**
+     * Map from index of object to non-negative number, open addressing keeps small searches cheap on big graphs.
+     */
+    static class NodeMap {
+
+        private int[] keys = new int[64];
+        private int[] values = new int[64];
+        private int size = 0;
+
+        NodeMap() {
+            Arrays.fill(keys, -1);
+        }
+
+        /**
+         * Gets value of node.
+         * @param node The index of node
+         * @return Returns the value or -1 if the node has no value
+         */
+        int get(int node) {
+            int mask = keys.length - 1;
+            for (int slot = hash(node) & mask; ; slot = (slot + 1) & mask) {
+                if (keys[slot] == node) {
+                    return values[slot];
+                }
+                if (keys[slot] < 0) {
+                    return -1;
+                }
+            }
+        }
+
+        void put(int node, int value) {
+            if (2 * (size + 1) > keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int slot = hash(node) & mask;
+            while (keys[slot] >= 0 && keys[slot] != node) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] < 0) {
+                size++;
+            }
+            keys[slot] = node;
+            values[slot] = value;
+        }
+
+        private void grow() {
+            final int[] oldKeys = keys;
+            final int[] oldValues = values;
+            keys = new int[2 * oldKeys.length];
+            values = new int[2 * oldKeys.length];
+            Arrays.fill(keys, -1);
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] >= 0) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int hash(int node) {
+            return node * 0x9E3779B9 >>> 7;
+        }
+    }
+
+    /**
+     * Growable FIFO queue of ints which keeps polled items.
+     */
+    static class IntQueue {
+
+        private int[] items = new int[16];
+        private int head = 0;
+        private int tail = 0;
+
+        void add(int item) {
+            if (tail == items.length) {
+                items = Arrays.copyOf(items, 2 * items.length);
+            }
+            items[tail++] = item;
+        }
+
+        int poll() {
+            return items[head++];
+        }
+
+        int get(int i) {
+            return items[i];
+        }
+
+        boolean isEmpty() {
+            return head == tail;
+        }
+
+        int size() {
+            return tail - head;
+        }
+    }
+}
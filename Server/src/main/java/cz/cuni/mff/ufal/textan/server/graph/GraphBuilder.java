@@ -0,0 +1,247 @@
+package cz.cuni.mff.ufal.textan.server.graph;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Collects objects and relations and builds {@link Graph}.
+ *
+ * Members of a relation are connected to each other, so a relation of n objects
+ * makes n * (n - 1) / 2 edges. Edges to objects which were not added are ignored.
+ * The class is not thread-safe.
+ */
+public class GraphBuilder {
+
+    private int[] objects = new int[1024];
+    private int objectCount = 0;
+
+    /** Pairs of ids of connected objects. */
+    private int[] ends = new int[2048];
+
+    /** Id of relation of each pair. */
+    private int[] relations = new int[1024];
+    private int edgeCount = 0;
+
+    /**
+     * Adds object.
+     * @param objectId The id of object
+     * @return Returns the builder
+     */
+    public GraphBuilder addObject(int objectId) {
+        if (objectCount == objects.length) {
+            objects = Arrays.copyOf(objects, 2 * objects.length);
+        }
+        objects[objectCount++] = objectId;
+        return this;
+    }
+
+    /**
+     * Adds relation connecting all its members.
+     * @param relationId The id of relation
+     * @param members The ids of objects in the relation
+     * @param count The number of used members
+     * @return Returns the builder
+     */
+    public GraphBuilder addRelation(int relationId, int[] members, int count) {
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                addEdge(members[i], members[j], relationId);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Adds edge.
+     * @param source The id of one object
+     * @param target The id of other object
+     * @param relationId The id of relation
+     * @return Returns the builder
+     */
+    public GraphBuilder addEdge(int source, int target, int relationId) {
+        if (edgeCount == relations.length) {
+            relations = Arrays.copyOf(relations, 2 * relations.length);
+            ends = Arrays.copyOf(ends, 2 * ends.length);
+        }
+        ends[2 * edgeCount] = source;
+        ends[2 * edgeCount + 1] = target;
+        relations[edgeCount++] = relationId;
+        return this;
+    }
+
+    /**
+     * Adds objects and edges added to other builder.
+     * @param other The builder whose objects and edges are added, it is not modified
+     * @return Returns the builder
+     */
+    public GraphBuilder addAll(GraphBuilder other) {
+        return addAll(other, IntUnaryOperator.identity());
+    }
+
+    /**
+     * Adds objects and edges added to other builder with ids of objects mapped.
+     * @param other The builder whose objects and edges are added, it is not modified
+     * @param map The function mapping ids of objects
+     * @return Returns the builder
+     */
+    public GraphBuilder addAll(GraphBuilder other, IntUnaryOperator map) {
+        for (int i = 0; i < other.objectCount; i++) {
+            addObject(map.applyAsInt(other.objects[i]));
+        }
+        for (int i = 0; i < other.edgeCount; i++) {
+            addEdge(map.applyAsInt(other.ends[2 * i]), map.applyAsInt(other.ends[2 * i + 1]), other.relations[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Tells whether nothing has been added.
+     * @return Returns true if there are no objects and no edges
+     */
+    public boolean isEmpty() {
+        return objectCount == 0 && edgeCount == 0;
+    }
+
+    /**
+     * Builds graph of added objects and edges, duplicate objects and edges are merged.
+     * @return Returns new graph
+     */
+    public Graph build() {
+        return build(Graph.EMPTY);
+    }
+
+    /**
+     * Builds graph containing objects and edges of base graph and added objects and edges.
+     * Rows of the base graph are already sorted, so only the added edges are sorted
+     * and the base graph is merged in linear time. The base graph is not modified.
+     * @param base The graph to extend
+     * @return Returns new graph
+     */
+    public Graph build(Graph base) {
+        final int[] nodes = union(base.ids, unique(Arrays.copyOf(objects, objectCount)));
+        final int[] remap = new int[base.ids.length];
+        for (int i = 0, node = 0; i < base.ids.length; i++) {
+            while (nodes[node] != base.ids[i]) {
+                node++;
+            }
+            remap[i] = node;
+        }
+
+        //count added edges of each object, every edge is stored in both directions
+        final int[] sources = new int[edgeCount];
+        final int[] targets = new int[edgeCount];
+        final int[] deltaOffsets = new int[nodes.length + 1];
+        for (int i = 0; i < edgeCount; i++) {
+            sources[i] = Arrays.binarySearch(nodes, ends[2 * i]);
+            targets[i] = Arrays.binarySearch(nodes, ends[2 * i + 1]);
+            if (sources[i] < 0 || targets[i] < 0 || sources[i] == targets[i]) {
+                sources[i] = -1;
+                continue;
+            }
+            deltaOffsets[sources[i] + 1]++;
+            deltaOffsets[targets[i] + 1]++;
+        }
+        for (int node = 0; node < nodes.length; node++) {
+            deltaOffsets[node + 1] += deltaOffsets[node];
+        }
+
+        //fill rows with neighbour and relation packed into one number, so a row is sorted by one call
+        final long[] delta = new long[deltaOffsets[nodes.length]];
+        final int[] fill = Arrays.copyOf(deltaOffsets, nodes.length);
+        for (int i = 0; i < edgeCount; i++) {
+            if (sources[i] >= 0) {
+                delta[fill[sources[i]]++] = pack(targets[i], relations[i]);
+                delta[fill[targets[i]]++] = pack(sources[i], relations[i]);
+            }
+        }
+
+        //merge sorted rows of the base graph with sorted added rows and drop duplicate edges
+        final int[] offsets = new int[nodes.length + 1];
+        final int[] edgeTargets = new int[base.targets.length + delta.length];
+        final int[] edgeRelations = new int[edgeTargets.length];
+        int count = 0;
+        int baseNode = 0;
+        for (int node = 0; node < nodes.length; node++) {
+            offsets[node] = count;
+            int b = 0;
+            int bEnd = 0;
+            if (baseNode < remap.length && remap[baseNode] == node) {
+                b = base.offsets[baseNode];
+                bEnd = base.offsets[baseNode + 1];
+                baseNode++;
+            }
+            int d = deltaOffsets[node];
+            int dEnd = deltaOffsets[node + 1];
+            Arrays.sort(delta, d, dEnd);
+
+            long last = -1;
+            while (b < bEnd || d < dEnd) {
+                long baseEdge = b < bEnd ? pack(remap[base.targets[b]], base.relations[b]) : Long.MAX_VALUE;
+                long edge;
+                if (d < dEnd && delta[d] < baseEdge) {
+                    edge = delta[d++];
+                } else {
+                    edge = baseEdge;
+                    b++;
+                }
+                if (edge != last) {
+                    edgeTargets[count] = (int) (edge >>> 32);
+                    edgeRelations[count++] = (int) edge;
+                    last = edge;
+                }
+            }
+        }
+        offsets[nodes.length] = count;
+        return new Graph(nodes, offsets, Arrays.copyOf(edgeTargets, count), Arrays.copyOf(edgeRelations, count));
+    }
+
+    /**
+     * Packs edge so that packed edges are ordered by neighbour and relation.
+     * @param target The index of neighbour
+     * @param relation The id of relation
+     * @return Returns the packed edge, it is not negative
+     */
+    private static long pack(int target, int relation) {
+        return ((long) target << 32) | (relation & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Sorts array and removes duplicates.
+     * @param ids The array to sort, it is modified
+     * @return Returns sorted distinct items
+     */
+    private static int[] unique(int[] ids) {
+        Arrays.sort(ids);
+        int count = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (count == 0 || ids[count - 1] != ids[i]) {
+                ids[count++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * Merges sorted arrays of distinct items.
+     * @param first The first array
+     * @param second The second array
+     * @return Returns sorted distinct items of both arrays
+     */
+    private static int[] union(int[] first, int[] second) {
+        final int[] result = new int[first.length + second.length];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < first.length || j < second.length) {
+            if (j >= second.length || (i < first.length && first[i] < second[j])) {
+                result[count++] = first[i++];
+            } else if (i >= first.length || second[j] < first[i]) {
+                result[count++] = second[j++];
+            } else {
+                result[count++] = first[i++];
+                j++;
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+}
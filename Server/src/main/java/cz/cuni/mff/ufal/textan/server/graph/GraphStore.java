@@ -0,0 +1,278 @@
+package cz.cuni.mff.ufal.textan.server.graph;
+
+import cz.cuni.mff.ufal.textan.server.data.AnalysedDocument;
+import cz.cuni.mff.ufal.textan.server.data.IDocumentListener;
+import cz.cuni.mff.ufal.textan.server.data.IObjectMergeListener;
+import cz.cuni.mff.ufal.textan.server.data.RelationMention;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds graph of objects and relations loaded from the database and updated by saved documents.
+ *
+ * Objects joined into other objects are left out. Queries run on an immutable {@link Graph},
+ * so they never wait. Objects and relations of committed documents are appended to a buffer
+ * which is periodically merged with the current graph into a new graph by a background thread,
+ * the new graph then replaces the current one. Saved documents thus appear in queries
+ * after at most one compaction interval and a merge costs time linear in the size of the graph.
+ * Joined objects are replaced by the new object in the next compaction, which then copies the graph
+ * with ids of objects mapped, so any number of joins costs one copy like any other compaction.
+ */
+public class GraphStore implements IDocumentListener, IObjectMergeListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GraphStore.class);
+
+    /** Number of rows fetched at once when the graph is loaded. */
+    private static final int FETCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /** Milliseconds between compactions, every compaction copies the whole graph into a new one. */
+    private final long compactionInterval;
+
+    /** Current graph. */
+    private volatile Graph graph = Graph.EMPTY;
+
+    /** Lock of pending changes, it is held only while changes are appended or taken. */
+    private final Object pendingLock = new Object();
+
+    /** Objects and relations not yet merged into the graph. Guarded by pendingLock. */
+    private GraphBuilder pending = new GraphBuilder();
+
+    /** Whether objects were joined since the last compaction. Guarded by pendingLock. */
+    private boolean joinsPending = false;
+
+    /** Ids of new objects by ids of joined objects, saved documents may still refer to joined objects. */
+    private final Map<Integer, Integer> joined = new ConcurrentHashMap<>();
+
+    /** Thread merging pending changes. */
+    private ScheduledExecutorService compactor;
+
+    /**
+     * Only constructor.
+     * @param jdbcTemplate The template used to load the graph
+     * @param compactionInterval The milliseconds between merges of pending changes into the graph
+     */
+    public GraphStore(JdbcTemplate jdbcTemplate, long compactionInterval) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.compactionInterval = compactionInterval;
+    }
+
+    /**
+     * Loads the graph and starts periodic compaction.
+     */
+    public synchronized void start() {
+        load();
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "graph-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compactSafely, compactionInterval, compactionInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops periodic compaction.
+     */
+    public synchronized void stop() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+            compactor = null;
+        }
+    }
+
+    /**
+     * Loads objects and members of relations from the database and replaces the current graph.
+     * Pending changes are dropped, the loaded graph contains them. Members of relations may still refer
+     * to joined objects written by documents saved during the join, they are mapped by JoinedObjects.
+     */
+    public synchronized void load() {
+        final long start = System.currentTimeMillis();
+        final JdbcTemplate template = new JdbcTemplate(jdbcTemplate.getDataSource());
+        template.setFetchSize(FETCH_SIZE);
+
+        synchronized (pendingLock) {
+            pending = new GraphBuilder();
+        }
+
+        template.query("SELECT j.id_new_object, j.id_old_object1, j.id_old_object2 FROM JoinedObjects j"
+                + " JOIN Object o ON o.id_object = j.id_old_object1 WHERE o.alreadyJoined = TRUE", rs -> {
+            joined.put(rs.getInt(2), rs.getInt(1));
+            joined.put(rs.getInt(3), rs.getInt(1));
+        });
+
+        final GraphBuilder builder = new GraphBuilder();
+        template.query("SELECT id_object FROM Object WHERE alreadyJoined = FALSE", rs -> {
+            builder.addObject(rs.getInt(1));
+        });
+
+        final RelationReader reader = new RelationReader(builder);
+        template.query("SELECT id_relation, id_object FROM IsInRelation ORDER BY id_relation, order_in_relation", rs -> {
+            reader.add(rs.getInt(1), map(rs.getInt(2)));
+        });
+        reader.flush();
+
+        graph = builder.build();
+        LOG.info("Graph of {} objects and {} edges loaded in {} ms",
+                graph.getObjectCount(), graph.getEdgeCount() / 2, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Merges pending changes into the graph, readers use the old graph until the new one is built.
+     * If the merge fails, the changes stay pending for the next compaction.
+     */
+    public synchronized void compact() {
+        final GraphBuilder changes;
+        final boolean joins;
+        synchronized (pendingLock) {
+            if (pending.isEmpty() && !joinsPending) {
+                return;
+            }
+            changes = pending;
+            pending = new GraphBuilder();
+            joins = joinsPending;
+            joinsPending = false;
+        }
+
+        final long start = System.currentTimeMillis();
+        try {
+            graph = joins ? rebuild(graph, changes) : changes.build(graph);
+        } catch (RuntimeException | Error e) {
+            synchronized (pendingLock) {
+                pending = changes.addAll(pending);
+                joinsPending |= joins;
+            }
+            throw e;
+        }
+        LOG.debug("Graph compacted to {} objects and {} edges in {} ms",
+                graph.getObjectCount(), graph.getEdgeCount() / 2, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Gets current graph.
+     * @return Returns the graph
+     */
+    public Graph getGraph() {
+        return graph;
+    }
+
+    @Override
+    public void documentSaved(int documentId, AnalysedDocument document, int[] objectIds, int[] relationIds) {
+        final List<RelationMention> mentions = document.getRelations();
+        synchronized (pendingLock) {
+            for (int objectId : objectIds) {
+                pending.addObject(map(objectId));
+            }
+            int[] members = new int[4];
+            for (int i = 0; i < mentions.size(); i++) {
+                int[] entities = mentions.get(i).getEntities();
+                if (members.length < entities.length) {
+                    members = new int[entities.length];
+                }
+                for (int j = 0; j < entities.length; j++) {
+                    members[j] = map(objectIds[entities[j]]);
+                }
+                pending.addRelation(relationIds[i], members, entities.length);
+            }
+        }
+    }
+
+    @Override
+    public void objectsJoined(int newObjectId, int[] oldObjectIds) {
+        synchronized (pendingLock) {
+            for (int oldObjectId : oldObjectIds) {
+                joined.put(oldObjectId, newObjectId);
+            }
+            pending.addObject(newObjectId);
+            joinsPending = true;
+        }
+        LOG.debug("Objects {} joined into {}, the graph is rebuilt by the next compaction", Arrays.toString(oldObjectIds), newObjectId);
+    }
+
+    /**
+     * Builds graph of the current graph and changes with joined objects replaced by the new objects.
+     * @param current The current graph
+     * @param changes The pending changes
+     * @return Returns new graph
+     */
+    private Graph rebuild(Graph current, GraphBuilder changes) {
+        final GraphBuilder builder = new GraphBuilder();
+        for (int node = 0; node < current.ids.length; node++) {
+            int id = map(current.ids[node]);
+            if (id == current.ids[node]) {
+                builder.addObject(id);
+            }
+            for (int edge = current.offsets[node]; edge < current.offsets[node + 1]; edge++) {
+                int target = map(current.ids[current.targets[edge]]);
+                if (id < target) {
+                    builder.addEdge(id, target, current.relations[edge]);
+                }
+            }
+        }
+        return builder.addAll(changes, this::map).build();
+    }
+
+    /**
+     * Maps id of joined object to the object it was joined into.
+     * @param objectId The id of object
+     * @return Returns id of the new object or the given id if the object was not joined
+     */
+    private int map(int objectId) {
+        Integer newObjectId = joined.get(objectId);
+        while (newObjectId != null) {
+            objectId = newObjectId;
+            newObjectId = joined.get(objectId);
+        }
+        return objectId;
+    }
+
+    private void compactSafely() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            LOG.error("Graph compaction failed", e);
+        }
+    }
+
+    /**
+     * Groups members of relations read in order of relation ids.
+     */
+    private static class RelationReader {
+
+        private final GraphBuilder builder;
+        private int relation = -1;
+        private int[] members = new int[4];
+        private int count = 0;
+
+        RelationReader(GraphBuilder builder) {
+            this.builder = builder;
+        }
+
+        void add(int relationId, int objectId) {
+            if (relationId != relation) {
+                flush();
+                relation = relationId;
+            }
+            if (count == members.length) {
+                members = Arrays.copyOf(members, 2 * count);
+            }
+            members[count++] = objectId;
+        }
+
+        void flush() {
+            if (count > 0) {
+                builder.addRelation(relation, members, count);
+                count = 0;
+            }
+        }
+    }
+}
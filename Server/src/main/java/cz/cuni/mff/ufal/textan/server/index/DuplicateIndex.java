@@ -0,0 +1,422 @@
+package cz.cuni.mff.ufal.textan.server.index;
+
+import cz.cuni.mff.ufal.textan.commons.utils.ReaderTokenizer;
+import cz.cuni.mff.ufal.textan.commons.utils.TokenType;
+import cz.cuni.mff.ufal.textan.commons.utils.Tokenizer;
+import cz.cuni.mff.ufal.textan.commons.utils.Tokens;
+import cz.cuni.mff.ufal.textan.server.data.AnalysedDocument;
+import cz.cuni.mff.ufal.textan.server.data.DocumentStore;
+import cz.cuni.mff.ufal.textan.server.data.IDocumentListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of saved documents detecting duplicates of new documents.
+ *
+ * Exact duplicates are found by SHA-256 of the text. Near duplicates are found by 64-bit SimHash
+ * of shingles of two words, documents whose SimHashes differ in at most the maximal distance
+ * of bits are duplicates. SimHashes are split to maximal distance + 1 bands, so a near duplicate
+ * has at least one equal band, and documents are found by their bands (locality sensitive hashing),
+ * only documents sharing a band are compared. Texts too short for reliable SimHash are found only
+ * as exact duplicates. The index is rebuilt from texts of {@link DocumentStore} at start and then updated
+ * by committed documents as {@link IDocumentListener}.
+ */
+public class DuplicateIndex implements IDocumentListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DuplicateIndex.class);
+
+    /** Number of words of one shingle. */
+    private static final int SHINGLE_WORDS = 2;
+
+    /** Minimal number of shingles of text with SimHash. */
+    private static final int MIN_SHINGLES = 8;
+
+    private final DocumentStore documentStore;
+
+    /** Maximal number of different bits of SimHashes of near duplicates, negative to find only exact duplicates. */
+    private final int maxDistance;
+
+    /** First bit of each band, the last item is 64. */
+    private final int[] bands;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Document ids by SHA-256 of their texts. Guarded by lock. */
+    private final Map<ByteBuffer, Integer> hashes = new HashMap<>();
+
+    /** Ids of documents by band index and band of their SimHashes. Guarded by lock. */
+    private final Map<Long, int[]> buckets = new HashMap<>();
+
+    /** SimHash of each document indexed by document id. Guarded by lock. */
+    private long[] simHashes = new long[1024];
+
+    /**
+     * Only constructor.
+     * @param documentStore The store of texts used to rebuild the index
+     * @param maxDistance The maximal number of different bits of SimHashes of near duplicates,
+     *                    negative to find only exact duplicates
+     */
+    public DuplicateIndex(DocumentStore documentStore, int maxDistance) {
+        this.documentStore = documentStore;
+        this.maxDistance = Math.min(maxDistance, 63);
+        final int count = Math.max(this.maxDistance + 1, 1);
+        this.bands = new int[count + 1];
+        for (int i = 0; i <= count; i++) {
+            bands[i] = i * 64 / count;
+        }
+    }
+
+    /**
+     * Builds the index from texts of saved documents.
+     */
+    public void rebuild() {
+        final long start = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            hashes.clear();
+            buckets.clear();
+            documentStore.scan((document, text) -> add(document, sign(text)));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        LOG.info("Duplicate index of {} documents built in {} ms", hashes.size(), System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public void documentSaved(int documentId, AnalysedDocument document, int[] objectIds, int[] relationIds) {
+        final Signature signature = document instanceof SignedDocument
+                ? ((SignedDocument) document).signature
+                : sign(document.getText());
+        lock.writeLock().lock();
+        try {
+            add(documentId, signature);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Computes signature of text.
+     * @param text The text
+     * @return Returns signature of the text
+     */
+    public static Signature sign(CharSequence text) {
+        final MessageDigest digest = newDigest();
+        digest.update(StandardCharsets.UTF_8.encode(CharBuffer.wrap(text)));
+        final byte[] hash = digest.digest();
+        final SimHasher hasher = new SimHasher();
+        final Tokens tokens = Tokenizer.tokenize(text);
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.getType(i) == TokenType.WORD) {
+                hasher.addWord(tokens.getText(text, i));
+            }
+        }
+        return hasher.sign(hash);
+    }
+
+    /**
+     * Computes signature of UTF-8 encoded text while it is read from stream, so the text is read only once.
+     * The hash is computed from the read bytes, so malformed UTF-8 is rejected rather than replaced,
+     * which keeps the signature equal to the signature of the decoded text.
+     * @param stream The stream of the text, it is not closed
+     * @param text The builder the decoded text is appended to
+     * @return Returns signature of the text
+     * @throws IOException if the stream cannot be read or it is not valid UTF-8
+     */
+    public static Signature sign(InputStream stream, StringBuilder text) throws IOException {
+        final MessageDigest digest = newDigest();
+        final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        final Reader reader = new CopyingReader(new InputStreamReader(new DigestInputStream(stream, digest), decoder), text);
+
+        final SimHasher hasher = new SimHasher();
+        final ReaderTokenizer tokenizer = new ReaderTokenizer(reader);
+        while (tokenizer.next()) {
+            if (tokenizer.getType() == TokenType.WORD) {
+                hasher.addWord(tokenizer.getText());
+            }
+        }
+        return hasher.sign(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    /**
+     * Tells whether texts with given signatures are duplicates.
+     * @param first The signature of the first text
+     * @param second The signature of the second text
+     * @return Returns true if the texts are equal or near duplicates
+     */
+    public boolean isDuplicate(Signature first, Signature second) {
+        if (isExactDuplicate(first, second)) {
+            return true;
+        }
+        return first.similar && second.similar && Long.bitCount(first.simHash ^ second.simHash) <= maxDistance;
+    }
+
+    /**
+     * Tells whether texts with given signatures are equal.
+     * @param first The signature of the first text
+     * @param second The signature of the second text
+     * @return Returns true if the texts are equal
+     */
+    public static boolean isExactDuplicate(Signature first, Signature second) {
+        return Arrays.equals(first.hash, second.hash);
+    }
+
+    /**
+     * Tells whether a saved document has the text with given signature.
+     * @param signature The signature of the text
+     * @return Returns true if the text is saved
+     */
+    public boolean isExactDuplicate(Signature signature) {
+        lock.readLock().lock();
+        try {
+            return hashes.containsKey(ByteBuffer.wrap(signature.hash));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds saved document duplicated by text with given signature.
+     * @param signature The signature of the text
+     * @return Returns id of the duplicated document or -1 if there is none,
+     *         an exact duplicate is preferred to near duplicates
+     */
+    public int find(Signature signature) {
+        lock.readLock().lock();
+        try {
+            final Integer exact = hashes.get(ByteBuffer.wrap(signature.hash));
+            if (exact != null) {
+                return exact;
+            }
+            if (maxDistance < 0 || !signature.similar) {
+                return -1;
+            }
+
+            int best = -1;
+            int bestDistance = maxDistance + 1;
+            for (int band = 0; band < bands.length - 1; band++) {
+                final int[] bucket = buckets.get(bucket(band, signature.simHash));
+                if (bucket == null) {
+                    continue;
+                }
+                for (int i = 1; i <= bucket[0]; i++) {
+                    int distance = Long.bitCount(simHashes[bucket[i]] ^ signature.simHash);
+                    if (distance < bestDistance || (distance == bestDistance && bucket[i] < best)) {
+                        best = bucket[i];
+                        bestDistance = distance;
+                    }
+                }
+            }
+            return best;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds document to the index, the write lock must be held.
+     * @param document The id of document
+     * @param signature The signature of text of the document
+     */
+    private void add(int document, Signature signature) {
+        hashes.putIfAbsent(ByteBuffer.wrap(signature.hash), document);
+        if (maxDistance < 0 || !signature.similar) {
+            return;
+        }
+
+        if (document >= simHashes.length) {
+            simHashes = Arrays.copyOf(simHashes, Math.max(2 * simHashes.length, document + 1));
+        }
+        simHashes[document] = signature.simHash;
+        for (int band = 0; band < bands.length - 1; band++) {
+            //bucket holds its size followed by document ids
+            final Long key = bucket(band, signature.simHash);
+            int[] bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new int[2];
+            } else if (bucket[0] + 1 == bucket.length) {
+                bucket = Arrays.copyOf(bucket, 2 * bucket.length);
+            }
+            bucket[++bucket[0]] = document;
+            buckets.put(key, bucket);
+        }
+    }
+
+    /**
+     * Gets key of bucket of band of SimHash.
+     * Keys of different bands may collide, candidates are always compared by distance.
+     * @param band The index of band
+     * @param simHash The SimHash
+     * @return Returns the key
+     */
+    private long bucket(int band, long simHash) {
+        final int width = bands[band + 1] - bands[band];
+        final long value = (simHash >>> bands[band]) & (width == 64 ? -1L : (1L << width) - 1);
+        return mix(value * 0x9E3779B97F4A7C15L + band);
+    }
+
+    /**
+     * Mixes bits of number (finalizer of MurmurHash3).
+     * @param value The number
+     * @return Returns the mixed number
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    /**
+     * Accumulates SimHash of shingles of words of text.
+     */
+    private static final class SimHasher {
+
+        /** Weights of bits of SimHash, every shingle adds 1 to bits it has set and subtracts 1 from the others. */
+        private final int[] weights = new int[64];
+
+        /** Hashes of the last words, indexed by word number modulo the shingle size. */
+        private final long[] words = new long[SHINGLE_WORDS];
+
+        private int wordCount = 0;
+
+        /**
+         * Adds next word of the text.
+         * @param word The word
+         */
+        void addWord(String word) {
+            words[wordCount++ % SHINGLE_WORDS] = word.toLowerCase(Locale.ROOT).hashCode();
+            if (wordCount >= SHINGLE_WORDS) {
+                long shingle = 0;
+                for (int j = wordCount - SHINGLE_WORDS; j < wordCount; j++) {
+                    shingle = shingle * 0x9E3779B97F4A7C15L + words[j % SHINGLE_WORDS];
+                }
+                shingle = mix(shingle);
+                for (int bit = 0; bit < 64; bit++) {
+                    weights[bit] += ((shingle >>> bit) & 1) != 0 ? 1 : -1;
+                }
+            }
+        }
+
+        /**
+         * Creates signature of the text.
+         * @param hash The SHA-256 of the text
+         * @return Returns the signature
+         */
+        Signature sign(byte[] hash) {
+            long simHash = 0;
+            for (int bit = 0; bit < 64; bit++) {
+                if (weights[bit] > 0) {
+                    simHash |= 1L << bit;
+                }
+            }
+            return new Signature(hash, simHash, wordCount - SHINGLE_WORDS + 1 >= MIN_SHINGLES);
+        }
+    }
+
+    /**
+     * Reader appending read characters to a builder.
+     */
+    private static final class CopyingReader extends Reader {
+
+        private final Reader reader;
+        private final StringBuilder text;
+
+        CopyingReader(Reader reader, StringBuilder text) {
+            this.reader = reader;
+            this.text = text;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            final int read = reader.read(buffer, offset, length);
+            if (read > 0) {
+                text.append(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * Document with signature computed when it was read, so it is not signed again when it is saved.
+     */
+    public static class SignedDocument extends AnalysedDocument {
+
+        private final Signature signature;
+
+        /**
+         * Only constructor.
+         * @param document The document
+         * @param signature The signature of text of the document
+         */
+        public SignedDocument(AnalysedDocument document, Signature signature) {
+            super(document.getText(), document.getEntities(), document.getRelations(), document.getOriginalId());
+            this.signature = signature;
+        }
+    }
+
+    /**
+     * Signature of text, it is used to find duplicates.
+     */
+    public static final class Signature {
+
+        /** SHA-256 of the text. */
+        final byte[] hash;
+
+        /** SimHash of shingles of the text. */
+        final long simHash;
+
+        /** Whether the text is long enough to find near duplicates by SimHash. */
+        final boolean similar;
+
+        Signature(byte[] hash, long simHash, boolean similar) {
+            this.hash = hash;
+            this.simHash = simHash;
+            this.similar = similar;
+        }
+
+        /**
+         * Gets SHA-256 of the text, the returned array must not be modified.
+         * @return Returns the hash of the text encoded in UTF-8
+         */
+        public byte[] getHash() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package cz.cuni.mff.ufal.textan.server.index;
+
+import cz.cuni.mff.ufal.textan.commons.Entity;
+import cz.cuni.mff.ufal.textan.commons.SearchHit;
+import cz.cuni.mff.ufal.textan.commons.utils.TokenType;
+import cz.cuni.mff.ufal.textan.commons.utils.Tokenizer;
+import cz.cuni.mff.ufal.textan.commons.utils.Tokens;
+import cz.cuni.mff.ufal.textan.server.data.AliasIndex;
+import cz.cuni.mff.ufal.textan.server.data.AnalysedDocument;
+import cz.cuni.mff.ufal.textan.server.data.DocumentStore;
+import cz.cuni.mff.ufal.textan.server.data.IDocumentListener;
+import cz.cuni.mff.ufal.textan.server.data.IObjectMergeListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index of documents ranking hits by BM25.
+ *
+ * Words are indexed by their normalized form ({@link AliasIndex#normalize(String)}) with character
+ * offsets of their occurrences, objects are indexed by special terms with offsets of their alias occurrences.
+ * Postings are compressed by {@link PostingList}. The index is rebuilt from texts of {@link DocumentStore}
+ * and alias occurrences in the database at start and then updated by committed documents
+ * as {@link IDocumentListener}, postings of joined objects are merged into postings of the new object.
+ * Documents saved after a join may still refer to the joined objects, their objects are mapped to the new object.
+ */
+public class InvertedIndex implements IDocumentListener, IObjectMergeListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InvertedIndex.class);
+
+    /** BM25 term frequency saturation. */
+    private static final float K1 = 1.2f;
+
+    /** BM25 document length normalization. */
+    private static final float B = 0.75f;
+
+    /** Number of characters of snippet before and after the first match. */
+    private static final int SNIPPET_CONTEXT = 80;
+
+    /** Number of rows fetched at once when the index is rebuilt. */
+    private static final int FETCH_SIZE = 1000;
+
+    /** Prefix of terms of objects, it cannot occur in a word. */
+    private static final String OBJECT_TERM = " object:";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final AliasIndex aliasIndex;
+
+    private final DocumentStore documentStore;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Postings by term. Guarded by lock. */
+    private final Map<String, PostingList> postings = new HashMap<>();
+
+    /** Number of words of each document indexed by document id. Guarded by lock. */
+    private int[] documentWords = new int[1024];
+
+    /** Number of characters of each document indexed by document id. Guarded by lock. */
+    private int[] documentChars = new int[1024];
+
+    /** Number of indexed documents. Guarded by lock. */
+    private int documentCount = 0;
+
+    /** Sum of numbers of words of all documents. Guarded by lock. */
+    private long totalWords = 0;
+
+    /** Ids of new objects by ids of joined objects. Guarded by lock. */
+    private final Map<Integer, Integer> joined = new HashMap<>();
+
+    /**
+     * Only constructor.
+     * @param jdbcTemplate The template used to rebuild the index
+     * @param aliasIndex The index resolving queries to objects
+     * @param documentStore The store of texts used to rebuild the index
+     */
+    public InvertedIndex(JdbcTemplate jdbcTemplate, AliasIndex aliasIndex, DocumentStore documentStore) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.aliasIndex = aliasIndex;
+        this.documentStore = documentStore;
+    }
+
+    /**
+     * Builds the index from texts of documents and alias occurrences in the database.
+     * Texts and rows are read in order of document ids, so postings are only appended.
+     */
+    public void rebuild() {
+        final long start = System.currentTimeMillis();
+        final JdbcTemplate template = new JdbcTemplate(jdbcTemplate.getDataSource());
+        template.setFetchSize(FETCH_SIZE);
+
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documentCount = 0;
+            totalWords = 0;
+            Arrays.fill(documentWords, 0);
+            Arrays.fill(documentChars, 0);
+
+            documentStore.scan(this::addText);
+
+            final Map<Integer, Positions> objects = new HashMap<>();
+            final int[] current = {-1};
+            template.query("SELECT o.id_document, a.id_object, o.position FROM AliasOccurrence o"
+                            + " JOIN Alias a ON a.id_alias = o.id_alias ORDER BY o.id_document",
+                    rs -> {
+                        int document = rs.getInt(1);
+                        if (document != current[0]) {
+                            addObjects(current[0], objects);
+                            objects.clear();
+                            current[0] = document;
+                        }
+                        positions(objects, rs.getInt(2)).add(rs.getInt(3));
+                    });
+            addObjects(current[0], objects);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        LOG.info("Inverted index of {} documents and {} terms built in {} ms",
+                documentCount, postings.size(), System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public void documentSaved(int documentId, AnalysedDocument document, int[] objectIds, int[] relationIds) {
+        final Map<Integer, Positions> objects = new HashMap<>();
+        final List<Entity> entities = document.getEntities();
+
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < entities.size(); i++) {
+                positions(objects, map(objectIds[i])).add(entities.get(i).getStart());
+            }
+            addText(documentId, document.getText());
+            addObjects(documentId, objects);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void objectsJoined(int newObjectId, int[] oldObjectIds) {
+        lock.writeLock().lock();
+        try {
+            PostingList merged = postings.get(OBJECT_TERM + newObjectId);
+            for (int oldObjectId : oldObjectIds) {
+                joined.put(oldObjectId, newObjectId);
+                PostingList old = postings.remove(OBJECT_TERM + oldObjectId);
+                if (old != null) {
+                    merged = merged == null ? old : PostingList.merge(merged, old);
+                }
+            }
+            if (merged != null) {
+                postings.put(OBJECT_TERM + newObjectId, merged);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds documents containing words of query or mentioning an object the whole query is an alias of.
+     * @param query The searched words
+     * @param limit The maximal number of hits
+     * @return Returns hits ordered by decreasing score
+     */
+    public List<SearchHit> search(String query, int limit) {
+        final Set<String> terms = new LinkedHashSet<>();
+        final Tokens tokens = Tokenizer.tokenize(query);
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.getType(i) == TokenType.WORD) {
+                terms.add(AliasIndex.normalize(tokens.getText(query, i)));
+            }
+        }
+        final int[] candidates = aliasIndex.resolve(query);
+        if (candidates != null) {
+            for (int i = 1; i < candidates.length; i += 2) {
+                terms.add(OBJECT_TERM + candidates[i]);
+            }
+        }
+        if (terms.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        final Map<Integer, Accumulator> accumulators = new HashMap<>();
+        final PriorityQueue<Accumulator> best = new PriorityQueue<>(limit, (a, b) -> Float.compare(a.score, b.score));
+        lock.readLock().lock();
+        try {
+            final float averageWords = documentCount == 0 ? 1 : (float) totalWords / documentCount;
+            for (String term : terms) {
+                PostingList list = postings.get(term);
+                if (list == null) {
+                    continue;
+                }
+                float idf = (float) Math.log(1 + (documentCount - list.getDocumentCount() + 0.5) / (list.getDocumentCount() + 0.5));
+                PostingList.Cursor cursor = list.cursor();
+                while (cursor.next()) {
+                    int document = cursor.getDocument();
+                    int frequency = cursor.getFrequency();
+                    float norm = K1 * (1 - B + B * documentWords[document] / averageWords);
+                    Accumulator accumulator = accumulators.get(document);
+                    if (accumulator == null) {
+                        accumulator = new Accumulator(document, cursor.getPositions()[0]);
+                        accumulators.put(document, accumulator);
+                    }
+                    accumulator.score += idf * frequency * (K1 + 1) / (frequency + norm);
+                    accumulator.position = Math.min(accumulator.position, cursor.getPositions()[0]);
+                }
+            }
+
+            for (Accumulator accumulator : accumulators.values()) {
+                if (best.size() < limit) {
+                    best.add(accumulator);
+                } else if (best.peek().score < accumulator.score) {
+                    best.poll();
+                    best.add(accumulator);
+                }
+            }
+
+            final SearchHit[] hits = new SearchHit[best.size()];
+            for (int i = hits.length - 1; i >= 0; i--) {
+                Accumulator accumulator = best.poll();
+                hits[i] = new SearchHit(
+                        accumulator.document,
+                        accumulator.score,
+                        Math.max(0, accumulator.position - SNIPPET_CONTEXT),
+                        Math.min(documentChars[accumulator.document], accumulator.position + SNIPPET_CONTEXT));
+            }
+            return Arrays.asList(hits);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets number of indexed documents.
+     * @return Returns number of documents
+     */
+    public int getDocumentCount() {
+        lock.readLock().lock();
+        try {
+            return documentCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets number of distinct terms.
+     * @return Returns number of terms
+     */
+    public int getTermCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Maps id of joined object to the object it was joined into, the write lock must be held.
+     * @param objectId The id of object
+     * @return Returns id of the new object or the given id if the object was not joined
+     */
+    private int map(int objectId) {
+        Integer newObjectId = joined.get(objectId);
+        while (newObjectId != null) {
+            objectId = newObjectId;
+            newObjectId = joined.get(objectId);
+        }
+        return objectId;
+    }
+
+    /**
+     * Indexes words of document, the write lock must be held.
+     * @param document The id of document
+     * @param text The text of document
+     */
+    private void addText(int document, CharSequence text) {
+        final Map<String, Positions> words = new HashMap<>();
+        final Tokens tokens = Tokenizer.tokenize(text);
+        int count = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.getType(i) == TokenType.WORD) {
+                String term = AliasIndex.normalize(tokens.getText(text, i));
+                Positions positions = words.get(term);
+                if (positions == null) {
+                    positions = new Positions();
+                    words.put(term, positions);
+                }
+                positions.add(tokens.getStart(i));
+                count++;
+            }
+        }
+
+        if (document >= documentWords.length) {
+            int size = Math.max(2 * documentWords.length, document + 1);
+            documentWords = Arrays.copyOf(documentWords, size);
+            documentChars = Arrays.copyOf(documentChars, size);
+        }
+        if (documentChars[document] == 0) {
+            documentCount++;
+        }
+        totalWords += count - documentWords[document];
+        documentWords[document] = count;
+        documentChars[document] = Math.max(text.length(), 1);
+
+        for (Map.Entry<String, Positions> entry : words.entrySet()) {
+            add(entry.getKey(), document, entry.getValue());
+        }
+    }
+
+    /**
+     * Indexes objects mentioned in document, the write lock must be held.
+     * @param document The id of document, nothing is done if negative
+     * @param objects The positions of alias occurrences by object id
+     */
+    private void addObjects(int document, Map<Integer, Positions> objects) {
+        if (document < 0) {
+            return;
+        }
+        for (Map.Entry<Integer, Positions> entry : objects.entrySet()) {
+            Positions positions = entry.getValue();
+            Arrays.sort(positions.items, 0, positions.size);
+            add(OBJECT_TERM + entry.getKey(), document, positions);
+        }
+    }
+
+    private void add(String term, int document, Positions positions) {
+        PostingList list = postings.get(term);
+        if (list == null) {
+            list = new PostingList();
+            postings.put(term, list);
+        }
+        list.add(document, positions.items, positions.size);
+    }
+
+    private static Positions positions(Map<Integer, Positions> objects, int objectId) {
+        Positions positions = objects.get(objectId);
+        if (positions == null) {
+            positions = new Positions();
+            objects.put(objectId, positions);
+        }
+        return positions;
+    }
+
+    /**
+     * Growable array of positions.
+     */
+    private static class Positions {
+
+        int[] items = new int[2];
+        int size = 0;
+
+        void add(int position) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, 2 * size);
+            }
+            items[size++] = position;
+        }
+    }
+
+    /**
+     * Score of document being ranked.
+     */
+    private static class Accumulator {
+
+        final int document;
+        float score = 0;
+        int position;
+
+        Accumulator(int document, int position) {
+            this.document = document;
+            this.position = position;
+        }
+    }
+}
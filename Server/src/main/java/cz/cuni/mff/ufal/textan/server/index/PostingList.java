@@ -0,0 +1,232 @@
+package cz.cuni.mff.ufal.textan.server.index;
+
+import java.util.Arrays;
+
+/**
+ * Postings of one term compressed by delta and variable-length byte encoding.
+ *
+ * Each posting is stored as the difference of document id from the previous posting,
+ * the number of positions and the differences of consecutive positions,
+ * every number takes one byte per seven bits. Documents are expected to be added
+ * in increasing order of ids, an out-of-order document makes the list to be re-encoded.
+ * The class is not thread-safe.
+ */
+class PostingList {
+
+    /** Encoded postings. */
+    private byte[] data = new byte[8];
+
+    /** Number of used bytes of data. */
+    private int length = 0;
+
+    /** Number of documents in the list. */
+    private int documentCount = 0;
+
+    /** Id of the last document in the list. */
+    private int lastDocument = 0;
+
+    /**
+     * Gets number of documents containing the term.
+     * @return Returns document frequency
+     */
+    int getDocumentCount() {
+        return documentCount;
+    }
+
+    /**
+     * Gets size of encoded postings.
+     * @return Returns number of bytes
+     */
+    int getByteSize() {
+        return length;
+    }
+
+    /**
+     * Adds occurrences of the term in a document.
+     * @param document The id of document, greater than zero
+     * @param positions The sorted positions of the term in the document
+     * @param count The number of used positions
+     */
+    void add(int document, int[] positions, int count) {
+        if (document <= lastDocument) {
+            insert(document, Arrays.copyOf(positions, count));
+            return;
+        }
+        write(document - lastDocument);
+        write(count);
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            write(positions[i] - previous);
+            previous = positions[i];
+        }
+        lastDocument = document;
+        documentCount++;
+    }
+
+    /**
+     * Merges two lists, positions of documents contained in both lists are merged.
+     * @param first The first list
+     * @param second The second list
+     * @return Returns new list
+     */
+    static PostingList merge(PostingList first, PostingList second) {
+        final PostingList merged = new PostingList();
+        final Cursor a = first.cursor();
+        final Cursor b = second.cursor();
+        boolean hasA = a.next();
+        boolean hasB = b.next();
+        int[] positions = new int[8];
+        while (hasA || hasB) {
+            if (!hasB || (hasA && a.getDocument() < b.getDocument())) {
+                merged.add(a.getDocument(), a.getPositions(), a.getFrequency());
+                hasA = a.next();
+            } else if (!hasA || b.getDocument() < a.getDocument()) {
+                merged.add(b.getDocument(), b.getPositions(), b.getFrequency());
+                hasB = b.next();
+            } else {
+                int count = a.getFrequency() + b.getFrequency();
+                if (positions.length < count) {
+                    positions = new int[count];
+                }
+                System.arraycopy(a.getPositions(), 0, positions, 0, a.getFrequency());
+                System.arraycopy(b.getPositions(), 0, positions, a.getFrequency(), b.getFrequency());
+                Arrays.sort(positions, 0, count);
+                merged.add(a.getDocument(), positions, count);
+                hasA = a.next();
+                hasB = b.next();
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Creates cursor iterating the postings in order of document ids.
+     * @return Returns new cursor
+     */
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Inserts document which is not greater than the last one by re-encoding the list.
+     * @param document The id of document
+     * @param positions The sorted positions of the term in the document
+     */
+    private void insert(int document, int[] positions) {
+        final Cursor cursor = cursor();
+        data = new byte[Math.max(8, length + 5 * (positions.length + 2))];
+        length = 0;
+        documentCount = 0;
+        lastDocument = 0;
+
+        boolean inserted = false;
+        while (cursor.next()) {
+            if (!inserted && document <= cursor.getDocument()) {
+                inserted = true;
+                if (document == cursor.getDocument()) {
+                    //the document is replaced
+                    add(document, positions, positions.length);
+                    continue;
+                }
+                add(document, positions, positions.length);
+            }
+            add(cursor.getDocument(), cursor.getPositions(), cursor.getFrequency());
+        }
+        if (!inserted) {
+            add(document, positions, positions.length);
+        }
+    }
+
+    /**
+     * Appends number in variable-length encoding.
+     * @param value The non-negative number
+     */
+    private void write(int value) {
+        if (length + 5 > data.length) {
+            data = Arrays.copyOf(data, Math.max(2 * data.length, length + 5));
+        }
+        while ((value & ~0x7F) != 0) {
+            data[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte) value;
+    }
+
+    /**
+     * Cursor decoding the postings. It does not see documents added after its creation.
+     */
+    class Cursor {
+
+        /** Postings encoded when the cursor was created. */
+        private final byte[] bytes = data;
+
+        /** Number of valid bytes. */
+        private final int end = length;
+
+        /** Offset of the next byte to read. */
+        private int offset = 0;
+
+        private int document = 0;
+
+        private int frequency = 0;
+
+        private int[] positions = new int[4];
+
+        /**
+         * Moves to the next posting.
+         * @return Returns false if there are no more postings
+         */
+        boolean next() {
+            if (offset >= end) {
+                return false;
+            }
+            document += read();
+            frequency = read();
+            if (positions.length < frequency) {
+                positions = new int[Math.max(frequency, 2 * positions.length)];
+            }
+            int position = 0;
+            for (int i = 0; i < frequency; i++) {
+                position += read();
+                positions[i] = position;
+            }
+            return true;
+        }
+
+        /**
+         * Gets id of current document.
+         * @return Returns document id
+         */
+        int getDocument() {
+            return document;
+        }
+
+        /**
+         * Gets number of occurrences of the term in current document.
+         * @return Returns term frequency
+         */
+        int getFrequency() {
+            return frequency;
+        }
+
+        /**
+         * Gets positions of the term in current document, only first {@link #getFrequency()} items are valid.
+         * @return Returns positions, the array is reused by the cursor
+         */
+        int[] getPositions() {
+            return positions;
+        }
+
+        private int read() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[offset++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+-- Schema of TEXTANAL database for embedded H2 database.
+-- It follows database/Schemas and UML/db.puml, columns named by reserved words are renamed
+-- (IsInRelation.order to order_in_relation, JoinedObjects.from/to to joined_from/joined_to).
+-- Misspelled primary keys of database/Schemas are spelled correctly here
+-- (AliasOccurrence.id_alias_occurence to id_alias_occurrence,
+-- RelationOccurrence.id_relation_occurence to id_relation_occurrence). Only databases created by this script
+-- are used by the server, a database created from database/Schemas needs the two columns renamed
+-- (ALTER TABLE ... ALTER COLUMN ... RENAME TO ...) before it is used.
+-- Alias.normalized is the alias normalized by AliasIndex.normalize, aliases are resolved by it.
+-- All statements are idempotent, the script is run on every start of the server.
+
+CREATE TABLE IF NOT EXISTS ObjectType (
+    id_object_type INT PRIMARY KEY,
+    name NVARCHAR(255) UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS Object (
+    id_object INT PRIMARY KEY,
+    id_object_type INT NOT NULL REFERENCES ObjectType(id_object_type),
+    alreadyJoined BOOLEAN DEFAULT FALSE NOT NULL,
+    data NVARCHAR(4000)
+);
+
+CREATE TABLE IF NOT EXISTS RelationType (
+    id_relation_type INT PRIMARY KEY,
+    name NVARCHAR(255) UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS Relation (
+    id_relation INT PRIMARY KEY,
+    id_relation_type INT NOT NULL REFERENCES RelationType(id_relation_type)
+);
+
+CREATE TABLE IF NOT EXISTS IsInRelation (
+    id_is_in_relation INT PRIMARY KEY,
+    id_relation INT NOT NULL REFERENCES Relation(id_relation),
+    id_object INT NOT NULL REFERENCES Object(id_object),
+    order_in_relation INT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS JoinedObjects (
+    id_new_object INT PRIMARY KEY REFERENCES Object(id_object),
+    id_old_object1 INT NOT NULL REFERENCES Object(id_object),
+    id_old_object2 INT NOT NULL REFERENCES Object(id_object),
+    joined_from DATE,
+    joined_to DATE
+);
+
+CREATE TABLE IF NOT EXISTS Document (
+    id_document INT PRIMARY KEY,
+    added DATE DEFAULT CURRENT_DATE,
+    processed DATE NULL,
+    text_segment INT NOT NULL,
+    text_offset INT NOT NULL,
+    text_length INT NOT NULL,
+    id_original INT NULL REFERENCES Document(id_document)
+);
+
+-- Texts of documents are kept by DocumentStore, databases created with the text column get locations of texts
+-- and their texts are moved to the store when it is opened.
+ALTER TABLE Document ADD COLUMN IF NOT EXISTS text_segment INT;
+ALTER TABLE Document ADD COLUMN IF NOT EXISTS text_offset INT;
+ALTER TABLE Document ADD COLUMN IF NOT EXISTS text_length INT;
+
+-- Near duplicates are saved without analysis and refer to the similar document.
+ALTER TABLE Document ADD COLUMN IF NOT EXISTS id_original INT NULL;
+
+CREATE TABLE IF NOT EXISTS Alias (
+    id_alias INT PRIMARY KEY,
+    id_object INT NOT NULL REFERENCES Object(id_object),
+    alias NVARCHAR(1000) NOT NULL,
+    normalized NVARCHAR(1000) NOT NULL
+);
+
+-- Databases created before aliases were normalized get the column, AliasIndex fills it when it is loaded.
+ALTER TABLE Alias ADD COLUMN IF NOT EXISTS normalized NVARCHAR(1000);
+DROP INDEX IF EXISTS IX_Alias_alias;
+
+-- Not unique, one alias can belong to more objects. DocumentWriter prevents concurrent creation of the same new alias.
+CREATE INDEX IF NOT EXISTS IX_Alias_normalized ON Alias(normalized);
+
+CREATE TABLE IF NOT EXISTS AliasOccurrence (
+    id_alias_occurrence INT PRIMARY KEY,
+    id_alias INT NOT NULL REFERENCES Alias(id_alias),
+    id_document INT NOT NULL REFERENCES Document(id_document),
+    position INT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS RelationOccurrence (
+    id_relation_occurrence INT PRIMARY KEY,
+    id_relation INT NOT NULL REFERENCES Relation(id_relation),
+    id_document INT NOT NULL REFERENCES Document(id_document),
+    position INT NOT NULL,
+    anchor NVARCHAR(1000)
+);
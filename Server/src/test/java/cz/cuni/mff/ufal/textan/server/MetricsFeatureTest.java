@@ -0,0 +1,142 @@
+package cz.cuni.mff.ufal.textan.server;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.cxf.Bus;
+import org.apache.cxf.BusFactory;
+import org.apache.cxf.endpoint.Server;
+import org.apache.cxf.endpoint.ServerLifeCycleManager;
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.interceptor.InterceptorChain;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+import org.apache.cxf.phase.PhaseManager;
+import org.apache.cxf.transport.Destination;
+import org.apache.cxf.transport.MessageObserver;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that {@link MetricsFeature} records requests which end without sending a response.
+ */
+public class MetricsFeatureTest {
+
+    private Bus bus;
+
+    private MetricRegistry metrics;
+
+    /** Observer of the server wrapped by the feature. */
+    private MessageObserver observer;
+
+    /** Interceptor added to the end of the chains of requests, if any. */
+    private AbstractPhaseInterceptor<Message> last;
+
+    @Before
+    public void setUp() {
+        bus = BusFactory.newInstance().createBus();
+        metrics = new MetricRegistry();
+        new MetricsFeature(metrics).initialize(bus);
+
+        //transport passing requests to chains of the bus interceptors, a paused chain is resumed by the next request
+        final MessageObserver chains = new MessageObserver() {
+            @Override
+            public void onMessage(Message message) {
+                if (message.getInterceptorChain() != null) {
+                    message.getInterceptorChain().resume();
+                    return;
+                }
+                final PhaseInterceptorChain chain = new PhaseInterceptorChain(bus.getExtension(PhaseManager.class).getInPhases());
+                chain.add(bus.getInInterceptors());
+                if (last != null) {
+                    chain.add(last);
+                }
+                message.setInterceptorChain(chain);
+                chain.doIntercept(message);
+            }
+        };
+        final MessageObserver[] current = {chains};
+        final Destination destination = (Destination) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Destination.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getMessageObserver")) {
+                        return current[0];
+                    } else if (method.getName().equals("setMessageObserver")) {
+                        current[0] = (MessageObserver) args[0];
+                    }
+                    return null;
+                });
+        final Server server = (Server) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Server.class},
+                (proxy, method, args) -> method.getName().equals("getDestination") ? destination : null);
+        bus.getExtension(ServerLifeCycleManager.class).startServer(server);
+        observer = current[0];
+    }
+
+    @After
+    public void tearDown() {
+        bus.shutdown(true);
+    }
+
+    @Test
+    public void testOneWayRequestIsRecorded() {
+        final Message message = request();
+        message.getExchange().setOneWay(true);
+        observer.onMessage(message);
+
+        assertEquals(0, metrics.counter("soap.requests.active").getCount());
+        assertEquals(1, metrics.timer("soap.requests").getCount());
+        assertEquals(0, metrics.meter("soap.faults").getCount());
+    }
+
+    @Test
+    public void testRequestWithoutResponseIsFault() {
+        last = new AbstractPhaseInterceptor<Message>(Phase.INVOKE) {
+            @Override
+            public void handleMessage(Message message) {
+                throw new Fault(new IllegalStateException("Client disconnected"));
+            }
+        };
+        observer.onMessage(request());
+
+        assertEquals(0, metrics.counter("soap.requests.active").getCount());
+        assertEquals(1, metrics.meter("soap.faults").getCount());
+    }
+
+    @Test
+    public void testSuspendedRequestIsRecordedWhenResumed() {
+        last = new AbstractPhaseInterceptor<Message>(Phase.INVOKE) {
+            @Override
+            public void handleMessage(Message message) {
+                if (!message.containsKey("resumed")) {
+                    message.put("resumed", Boolean.TRUE);
+                    message.getInterceptorChain().pause();
+                }
+            }
+        };
+        final Message message = request();
+        message.getExchange().setOneWay(true);
+        observer.onMessage(message);
+        assertEquals(InterceptorChain.State.PAUSED, message.getInterceptorChain().getState());
+        assertEquals(1, metrics.counter("soap.requests.active").getCount());
+
+        observer.onMessage(message);
+        assertEquals(0, metrics.counter("soap.requests.active").getCount());
+        assertEquals(1, metrics.timer("soap.requests").getCount());
+    }
+
+    private static Message request() {
+        final Message message = new MessageImpl();
+        final Exchange exchange = new ExchangeImpl();
+        exchange.setInMessage(message);
+        message.setExchange(exchange);
+        message.put(Message.HTTP_REQUEST_METHOD, "POST");
+        return message;
+    }
+}
@@ -0,0 +1,68 @@
+package cz.cuni.mff.ufal.textan.server;
+
+import org.junit.rules.ExternalResource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rule providing each test with a new in-memory H2 database created by schema.sql of the server.
+ */
+public class TestDatabase extends ExternalResource {
+
+    /** Number of created databases, each test gets a database of its own name. */
+    private static final AtomicInteger databases = new AtomicInteger();
+
+    private String url;
+
+    private DataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private DataSourceTransactionManager transactionManager;
+
+    @Override
+    protected void before() {
+        url = "jdbc:h2:mem:test" + databases.getAndIncrement() + ";DB_CLOSE_DELAY=-1";
+        dataSource = new DriverManagerDataSource(url, "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        createSchema();
+    }
+
+    @Override
+    protected void after() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    /**
+     * Runs schema.sql, as the server does on every start.
+     */
+    public void createSchema() {
+        final ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
+        populator.addScript(new ClassPathResource("schema.sql"));
+        DatabasePopulatorUtils.execute(populator, dataSource);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    public DataSourceTransactionManager getTransactionManager() {
+        return transactionManager;
+    }
+}
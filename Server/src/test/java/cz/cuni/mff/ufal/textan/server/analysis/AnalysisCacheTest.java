@@ -0,0 +1,90 @@
+package cz.cuni.mff.ufal.textan.server.analysis;
+
+import com.codahale.metrics.MetricRegistry;
+import cz.cuni.mff.ufal.textan.commons.Document;
+import cz.cuni.mff.ufal.textan.commons.Entity;
+import cz.cuni.mff.ufal.textan.server.index.DuplicateIndex;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests of {@link AnalysisCache} keys and of the cache used by {@link AnalysisPipeline}.
+ */
+public class AnalysisCacheTest {
+
+    private static final String TEXT = "Karel Novák potkal 12 května Janu Dvořákovou. Příliš žluťoučký kůň 😀.";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testKeyOfSignatureEqualsKeyOfText() throws IOException {
+        final AnalysisCache cache = new AnalysisCache("1", 1000, null);
+        final byte[] bytes = TEXT.getBytes(StandardCharsets.UTF_8);
+        final byte[] signed = DuplicateIndex.sign(new ByteArrayInputStream(bytes), new StringBuilder()).getHash();
+
+        assertEquals(cache.key(AnalysisCache.hash(TEXT)), cache.key(signed));
+        assertEquals(cache.key(AnalysisCache.hash(TEXT)), cache.key(DuplicateIndex.sign(TEXT).getHash()));
+    }
+
+    @Test
+    public void testResultsOfOtherModelsAreNotUsed() throws IOException {
+        final String directory = folder.getRoot().getPath();
+        final AnalysisCache cache = new AnalysisCache("1", 1000, directory);
+        final AnalysisCache other = new AnalysisCache("2", 1000, directory);
+        cache.put(cache.key(AnalysisCache.hash(TEXT)), Collections.singletonList(new Entity(0, 11, "NAME")));
+
+        assertNull(other.get(other.key(AnalysisCache.hash(TEXT))));
+        final List<Entity> entities = new AnalysisCache("1", 1000, directory).get(cache.key(AnalysisCache.hash(TEXT)));
+        assertEquals(1, entities.size());
+        assertEquals(11, entities.get(0).getEnd());
+    }
+
+    @Test
+    public void testPipelineCachesUnderKeyOfSignature() throws Exception {
+        final AtomicInteger tagged = new AtomicInteger();
+        final AnalysisCache cache = new AnalysisCache("1", 100000, null);
+        final AnalysisPipeline pipeline = new AnalysisPipeline(() -> new MockTagger() {
+            @Override
+            public String[][] tag(String[][] forms) {
+                tagged.addAndGet(forms.length);
+                return super.tag(forms);
+            }
+        }, 1, 4, 10, 1000, 0, cache, new MetricRegistry());
+        pipeline.start();
+        try {
+            final List<Entity> analysed = pipeline.submit(new Document(TEXT)).get();
+            final int taggedOnce = tagged.get();
+
+            final List<Entity> cached = pipeline.submit(new Document(TEXT), DuplicateIndex.sign(TEXT).getHash()).get();
+            assertEquals(taggedOnce, tagged.get());
+            assertEquals(analysed.size(), cached.size());
+            assertEquals(1, cache.getHits());
+            assertEquals(1, cache.getMisses());
+        } finally {
+            pipeline.stop();
+        }
+    }
+
+    @Test
+    public void testDisabledCache() throws IOException {
+        final AnalysisCache cache = new AnalysisCache("1", 0, "");
+        assertFalse(cache.isEnabled());
+        final String key = cache.key(AnalysisCache.hash(TEXT));
+        cache.put(key, Collections.singletonList(new Entity(0, 1, "NAME")));
+        assertNull(cache.get(key));
+        assertEquals(0, cache.getMisses());
+    }
+}
@@ -0,0 +1,157 @@
+package cz.cuni.mff.ufal.textan.server.data;
+
+import cz.cuni.mff.ufal.textan.server.TestDatabase;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link AliasIndex} over an in-memory database.
+ */
+public class AliasIndexTest {
+
+    @Rule
+    public TestDatabase database = new TestDatabase();
+
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setUp() {
+        jdbcTemplate = database.getJdbcTemplate();
+        jdbcTemplate.update("INSERT INTO ObjectType (id_object_type, name) VALUES (1, 'person')");
+        for (int object = 1; object <= 5; object++) {
+            jdbcTemplate.update("INSERT INTO Object (id_object, id_object_type) VALUES (?, 1)", object);
+        }
+    }
+
+    @Test
+    public void testNormalize() {
+        assertEquals("jana dvorakova", AliasIndex.normalize("  Jana \t Dvořáková\n"));
+        assertEquals("zlutoucky kun", AliasIndex.normalize("ŽLUŤOUČKÝ KŮŇ"));
+        //combining acute accent
+        assertEquals("cafe", AliasIndex.normalize("Cafe\u0301"));
+        assertEquals("", AliasIndex.normalize(" \t "));
+    }
+
+    @Test
+    public void testGetObjectId() {
+        assertEquals(-1, AliasIndex.getObjectId(null));
+        assertEquals(-1, AliasIndex.getObjectId(new int[0]));
+        assertEquals(2, AliasIndex.getObjectId(new int[]{1, 2}));
+        assertEquals(2, AliasIndex.getObjectId(new int[]{1, 2, 3, 2}));
+        assertEquals(-1, AliasIndex.getObjectId(new int[]{1, 2, 3, 4}));
+    }
+
+    @Test
+    public void testResolvesNormalizedAliasToAllCandidates() {
+        insertAlias(1, 1, "Karel Novák");
+        insertAlias(2, 2, "karel  novak");
+        insertAlias(3, 3, "Jan Svoboda");
+        final AliasIndex index = new AliasIndex(jdbcTemplate, 100);
+        index.load();
+
+        assertArrayEquals(new int[]{1, 1, 2, 2}, index.resolve("KAREL NOVÁK"));
+        assertArrayEquals(new int[]{3, 3}, index.resolve("Jan Svoboda"));
+        assertNull(index.resolve("Petr Dvořák"));
+
+        index.add("Petr Dvořák", 4, 4);
+        assertArrayEquals(new int[]{4, 4}, index.resolve("petr dvorak"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedAliasIsEvicted() {
+        insertAlias(1, 1, "a");
+        insertAlias(2, 2, "b");
+        insertAlias(3, 3, "c");
+        final AliasIndex index = new AliasIndex(jdbcTemplate, 2);
+        index.load();
+        //the third alias does not fit the index, it is read on demand
+        assertEquals(2, index.size());
+
+        assertArrayEquals(new int[]{1, 1}, index.resolve("a"));
+        assertArrayEquals(new int[]{3, 3}, index.resolve("c"));
+        assertEquals(2, index.size());
+
+        //cached entries are not read again, the evicted one is
+        jdbcTemplate.update("UPDATE Alias SET id_object = 5");
+        assertArrayEquals(new int[]{1, 1}, index.resolve("a"));
+        assertArrayEquals(new int[]{3, 3}, index.resolve("c"));
+        assertArrayEquals(new int[]{2, 5}, index.resolve("b"));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void testMissingAliasIsCachedAfterEviction() {
+        insertAlias(1, 1, "a");
+        insertAlias(2, 2, "b");
+        final AliasIndex index = new AliasIndex(jdbcTemplate, 1);
+        index.load();
+
+        assertNull(index.resolve("x"));
+        //negative result is cached, an alias inserted behind the index is not seen until the entry is evicted
+        insertAlias(3, 3, "x");
+        assertNull(index.resolve("x"));
+        assertArrayEquals(new int[]{1, 1}, index.resolve("a"));
+        assertArrayEquals(new int[]{3, 3}, index.resolve("x"));
+    }
+
+    @Test
+    public void testReplaceObjects() {
+        insertAlias(1, 1, "a");
+        insertAlias(2, 2, "a");
+        insertAlias(3, 3, "b");
+        final AliasIndex index = new AliasIndex(jdbcTemplate, 100);
+        index.load();
+
+        index.replaceObjects(4, new int[]{1, 2});
+        assertArrayEquals(new int[]{1, 4, 2, 4}, index.resolve("a"));
+        assertEquals(4, AliasIndex.getObjectId(index.resolve("a")));
+        assertArrayEquals(new int[]{3, 3}, index.resolve("b"));
+    }
+
+    @Test
+    public void testLoadNormalizesExistingAliases() {
+        jdbcTemplate.execute("ALTER TABLE Alias ALTER COLUMN normalized SET NULL");
+        jdbcTemplate.update("INSERT INTO Alias (id_alias, id_object, alias) VALUES (1, 1, 'Jana Dvořáková')");
+        jdbcTemplate.update("INSERT INTO Alias (id_alias, id_object, alias) VALUES (2, 2, 'JANA  DVORAKOVA')");
+        final AliasIndex index = new AliasIndex(jdbcTemplate, 100);
+        index.load();
+
+        assertEquals(Arrays.asList("jana dvorakova", "jana dvorakova"),
+                jdbcTemplate.queryForList("SELECT normalized FROM Alias ORDER BY id_alias", String.class));
+        assertEquals("NO", jdbcTemplate.queryForObject("SELECT IS_NULLABLE FROM INFORMATION_SCHEMA.COLUMNS"
+                + " WHERE TABLE_NAME = 'ALIAS' AND COLUMN_NAME = 'NORMALIZED'", String.class));
+        assertArrayEquals(new int[]{1, 1, 2, 2}, index.resolve("jana dvořáková"));
+        assertEquals(-1, AliasIndex.getObjectId(index.resolve("jana dvořáková")));
+    }
+
+    @Test
+    public void testResolveMany() {
+        insertAlias(1, 1, "a");
+        insertAlias(2, 2, "b");
+        final AliasIndex index = new AliasIndex(jdbcTemplate, 1);
+        index.load();
+
+        final Map<String, int[]> resolved = index.resolve(Arrays.asList("A", "b", "c"));
+        assertEquals(2, resolved.size());
+        assertArrayEquals(new int[]{1, 1}, resolved.get("A"));
+        assertArrayEquals(new int[]{2, 2}, resolved.get("b"));
+        assertFalse(resolved.containsKey("c"));
+        assertTrue(index.size() <= 1);
+    }
+
+    private void insertAlias(int aliasId, int objectId, String alias) {
+        jdbcTemplate.update("INSERT INTO Alias (id_alias, id_object, alias, normalized) VALUES (?, ?, ?, ?)",
+                aliasId, objectId, alias, AliasIndex.normalize(alias));
+    }
+}
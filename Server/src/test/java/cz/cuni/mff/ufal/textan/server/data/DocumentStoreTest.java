@@ -0,0 +1,187 @@
+package cz.cuni.mff.ufal.textan.server.data;
+
+import cz.cuni.mff.ufal.textan.server.TestDatabase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests of {@link DocumentStore} over an in-memory database.
+ */
+public class DocumentStoreTest {
+
+    @Rule
+    public TestDatabase database = new TestDatabase();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate transactionTemplate;
+
+    private DocumentStore store;
+
+    @Before
+    public void setUp() {
+        jdbcTemplate = database.getJdbcTemplate();
+        transactionTemplate = new TransactionTemplate(database.getTransactionManager());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testAppendedTextIsRead() throws IOException {
+        store = open();
+        save(1, "první dokument");
+        save(2, "second");
+
+        assertEquals("první dokument", store.getText(1).toString());
+        assertEquals("second", store.getText(2).toString());
+        assertNull(store.getText(3));
+        assertEquals(2, store.getDocumentCount());
+    }
+
+    @Test
+    public void testReopenOverwritesUnreferencedTexts() throws IOException {
+        store = open();
+        save(1, "kept");
+        //text appended but its document never saved, as after a crash before commit
+        store.append(2, "lost");
+        store.close();
+
+        store = open();
+        assertEquals("kept", store.getText(1).toString());
+        assertNull(store.getText(2));
+        assertEquals(1, store.getDocumentCount());
+
+        final DocumentStore.Location location = save(3, "next");
+        assertEquals(4, location.getOffset());
+        assertEquals("kept", store.getText(1).toString());
+        assertEquals("next", store.getText(3).toString());
+    }
+
+    @Test
+    public void testRolledBackTextIsNotReferenced() throws IOException {
+        store = open();
+        transactionTemplate.execute(status -> {
+            insert(1, store.append(1, "rolled back"));
+            status.setRollbackOnly();
+            return null;
+        });
+        assertNull(store.getText(1));
+        assertEquals(0, store.getDocumentCount());
+
+        transactionTemplate.execute(status -> insert(2, store.append(2, "committed")));
+        assertEquals("committed", store.getText(2).toString());
+        assertEquals(1, store.getDocumentCount());
+        store.close();
+
+        store = open();
+        assertNull(store.getText(1));
+        assertEquals("committed", store.getText(2).toString());
+        final DocumentStore.Location location = save(3, "after");
+        assertEquals("rolled back".length() + "committed".length(), location.getOffset());
+        assertEquals("after", store.getText(3).toString());
+    }
+
+    @Test
+    public void testReopenAfterOnlyDocumentRolledBack() throws IOException {
+        store = open();
+        transactionTemplate.execute(status -> {
+            insert(1, store.append(1, "rolled back"));
+            status.setRollbackOnly();
+            return null;
+        });
+        store.close();
+
+        store = open();
+        assertEquals(0, store.getDocumentCount());
+        final DocumentStore.Location location = save(2, "first");
+        assertEquals(0, location.getOffset());
+        assertEquals("first", store.getText(2).toString());
+    }
+
+    @Test
+    public void testSegmentsRoll() throws IOException {
+        store = new DocumentStore(jdbcTemplate, folder.getRoot().getPath(), 16, true);
+        store.open();
+        save(1, "12345678");
+        save(2, "abcdefgh");
+        save(3, "longer than one segment");
+
+        assertEquals(0, save(4, "x").getOffset());
+        store.close();
+
+        store = new DocumentStore(jdbcTemplate, folder.getRoot().getPath(), 16, true);
+        store.open();
+        assertEquals("12345678", store.getText(1).toString());
+        assertEquals("abcdefgh", store.getText(2).toString());
+        assertEquals("longer than one segment", store.getText(3).toString());
+        assertEquals("x", store.getText(4).toString());
+    }
+
+    @Test
+    public void testTextColumnIsMigrated() throws IOException {
+        //database created before texts were moved to the store, it is upgraded by schema.sql
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+        jdbcTemplate.execute("CREATE TABLE Document (id_document INT PRIMARY KEY, added DATE, processed DATE, text NVARCHAR NOT NULL)");
+        database.createSchema();
+        //more documents than one chunk of migration
+        final int count = 2500;
+        for (int i = 1; i <= count; i++) {
+            jdbcTemplate.update("INSERT INTO Document (id_document, text) VALUES (?, ?)", i, "text " + i);
+        }
+
+        store = open();
+        assertEquals(count, store.getDocumentCount());
+        for (int i = 1; i <= count; i++) {
+            assertEquals("text " + i, store.getText(i).toString());
+        }
+        assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS"
+                + " WHERE TABLE_NAME = 'DOCUMENT' AND COLUMN_NAME = 'TEXT'", Integer.class));
+        assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM Document WHERE text_segment IS NULL", Integer.class));
+        store.close();
+
+        store = open();
+        assertEquals(count, store.getDocumentCount());
+        assertEquals("text " + count, store.getText(count).toString());
+    }
+
+    private DocumentStore open() throws IOException {
+        final DocumentStore opened = new DocumentStore(jdbcTemplate, folder.getRoot().getPath(), 1 << 20, true);
+        opened.open();
+        return opened;
+    }
+
+    /**
+     * Saves document in a committed transaction.
+     */
+    private DocumentStore.Location save(int documentId, String text) {
+        return transactionTemplate.execute(status -> {
+            final DocumentStore.Location location = store.append(documentId, text);
+            insert(documentId, location);
+            return location;
+        });
+    }
+
+    private int insert(int documentId, DocumentStore.Location location) {
+        return jdbcTemplate.update("INSERT INTO Document (id_document, text_segment, text_offset, text_length) VALUES (?, ?, ?, ?)",
+                documentId, location.getSegment(), location.getOffset(), location.getLength());
+    }
+}
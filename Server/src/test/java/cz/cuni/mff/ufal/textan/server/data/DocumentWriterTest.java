@@ -0,0 +1,115 @@
+package cz.cuni.mff.ufal.textan.server.data;
+
+import cz.cuni.mff.ufal.textan.commons.Entity;
+import cz.cuni.mff.ufal.textan.server.TestDatabase;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of {@link DocumentWriter} creating types over a pool of a single connection.
+ */
+public class DocumentWriterTest {
+
+    @Rule
+    public TestDatabase database = new TestDatabase();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private BasicDataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private DocumentStore documentStore;
+
+    private DocumentWriter writer;
+
+    @Before
+    public void setUp() throws IOException {
+        //a transaction needing another connection fails instead of waiting forever
+        dataSource = new BasicDataSource();
+        dataSource.setUrl(database.getUrl());
+        dataSource.setUsername("sa");
+        dataSource.setMaxActive(1);
+        dataSource.setMaxWait(1000);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        final AliasIndex aliasIndex = new AliasIndex(jdbcTemplate, 100);
+        aliasIndex.load();
+        documentStore = new DocumentStore(jdbcTemplate, folder.getRoot().getPath(), 1 << 16, false);
+        documentStore.open();
+        writer = new DocumentWriter(jdbcTemplate, new DataSourceTransactionManager(dataSource), new IdGenerator(jdbcTemplate),
+                aliasIndex, documentStore);
+    }
+
+    @After
+    public void tearDown() throws IOException, SQLException {
+        documentStore.close();
+        dataSource.close();
+    }
+
+    @Test
+    public void testTypesAreCreatedInDocumentTransaction() {
+        writer.write(document("Karel Novák a Jan Svoboda", "person", "meeting"));
+        writer.write(document("Karel Novák a Petr Dvořák", "person", "meeting"));
+        writer.write(document("Karel Novák a Praha", "city", "visit"));
+
+        assertEquals(Arrays.asList("person", "city"),
+                jdbcTemplate.queryForList("SELECT name FROM ObjectType ORDER BY id_object_type", String.class));
+        assertEquals(Arrays.asList("meeting", "visit"),
+                jdbcTemplate.queryForList("SELECT name FROM RelationType ORDER BY id_relation_type", String.class));
+        assertEquals(Integer.valueOf(3), jdbcTemplate.queryForObject("SELECT COUNT(*) FROM Relation", Integer.class));
+    }
+
+    @Test
+    public void testTypeOfRolledBackDocumentIsNotCached() {
+        final TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        transactionTemplate.execute(status -> {
+            writer.write(document("Karel Novák a Jan Svoboda", "person", "meeting"));
+            status.setRollbackOnly();
+            return null;
+        });
+        assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ObjectType", Integer.class));
+
+        //the types are inserted again rather than taken from the cache
+        writer.write(document("Karel Novák a Jan Svoboda", "person", "meeting"));
+        assertEquals(Collections.singletonList(writer.getObjectTypeId("person")),
+                jdbcTemplate.queryForList("SELECT id_object_type FROM ObjectType", Integer.class));
+        assertEquals(Collections.singletonList(writer.getRelationTypeId("meeting")),
+                jdbcTemplate.queryForList("SELECT id_relation_type FROM RelationType", Integer.class));
+    }
+
+    @Test
+    public void testTypeCreatedByAnotherWriterIsRead() {
+        final int typeId = writer.getObjectTypeId("person");
+        final DocumentWriter other = new DocumentWriter(jdbcTemplate, new DataSourceTransactionManager(dataSource),
+                new IdGenerator(jdbcTemplate), new AliasIndex(jdbcTemplate, 100), documentStore);
+
+        assertEquals(typeId, other.getObjectTypeId("person"));
+        assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ObjectType", Integer.class));
+    }
+
+    /**
+     * Creates document of two entities of the given type in a relation of the given type.
+     */
+    private static AnalysedDocument document(String text, String objectType, String relationType) {
+        final int and = text.indexOf(" a ");
+        return new AnalysedDocument(text,
+                Arrays.asList(new Entity(0, and, objectType), new Entity(and + 3, text.length(), objectType)),
+                Collections.singletonList(new RelationMention(relationType, and + 1, "a", new int[]{0, 1})));
+    }
+}
@@ -0,0 +1,221 @@
+package cz.cuni.mff.ufal.textan.server.data;
+
+import cz.cuni.mff.ufal.textan.commons.MergeProgress;
+import cz.cuni.mff.ufal.textan.commons.MergeStatus;
+import cz.cuni.mff.ufal.textan.server.TestDatabase;
+import cz.cuni.mff.ufal.textan.server.graph.Graph;
+import cz.cuni.mff.ufal.textan.server.graph.GraphStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Tests of {@link ObjectMerger} joining objects of an in-memory database and of {@link GraphStore} following the joins.
+ */
+public class ObjectMergerTest {
+
+    /** Milliseconds waited for a job at most. */
+    private static final long TIMEOUT = 10000;
+
+    @Rule
+    public TestDatabase database = new TestDatabase();
+
+    private JdbcTemplate jdbcTemplate;
+
+    private AliasIndex aliasIndex;
+
+    private GraphStore graphStore;
+
+    /** Number of transactions of the merging thread which fail. */
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private ObjectMerger merger;
+
+    @Before
+    public void setUp() {
+        jdbcTemplate = database.getJdbcTemplate();
+        jdbcTemplate.update("INSERT INTO ObjectType (id_object_type, name) VALUES (1, 'person')");
+        jdbcTemplate.update("INSERT INTO RelationType (id_relation_type, name) VALUES (1, 'meeting')");
+        for (int object = 1; object <= 3; object++) {
+            jdbcTemplate.update("INSERT INTO Object (id_object, id_object_type) VALUES (?, 1)", object);
+            jdbcTemplate.update("INSERT INTO Alias (id_alias, id_object, alias, normalized) VALUES (?, ?, ?, ?)",
+                    object, object, "alias " + object, "alias " + object);
+        }
+        //relations of both joined objects with the third one and between them
+        insertRelation(1, 1, 3);
+        insertRelation(2, 2, 3);
+        insertRelation(3, 1, 2);
+
+        aliasIndex = new AliasIndex(jdbcTemplate, 100);
+        aliasIndex.load();
+        graphStore = new GraphStore(jdbcTemplate, 1000);
+        graphStore.load();
+        merger = createMerger();
+        merger.start();
+    }
+
+    @After
+    public void tearDown() {
+        merger.stop();
+    }
+
+    @Test
+    public void testJoinRewritesReferences() throws InterruptedException {
+        final int newObjectId = join(merger.submit(1, 2));
+
+        assertEquals(Arrays.asList(newObjectId, newObjectId, newObjectId, newObjectId, 3, 3),
+                jdbcTemplate.queryForList("SELECT id_object FROM IsInRelation ORDER BY id_object DESC", Integer.class));
+        assertEquals(Arrays.asList(newObjectId, newObjectId, 3),
+                jdbcTemplate.queryForList("SELECT id_object FROM Alias ORDER BY id_alias", Integer.class));
+        assertEquals(Arrays.asList(true, true, false, false),
+                jdbcTemplate.queryForList("SELECT alreadyJoined FROM Object ORDER BY id_object", Boolean.class));
+        assertEquals(newObjectId, AliasIndex.getObjectId(aliasIndex.resolve("alias 1")));
+        assertEquals(newObjectId, AliasIndex.getObjectId(aliasIndex.resolve("alias 2")));
+
+        graphStore.compact();
+        assertJoinedGraph(graphStore.getGraph(), newObjectId);
+        graphStore.load();
+        assertJoinedGraph(graphStore.getGraph(), newObjectId);
+    }
+
+    @Test
+    public void testMembersWrittenAfterJoinAreRewritten() throws InterruptedException {
+        final int newObjectId = join(merger.submit(1, 2));
+        //a document resolved its alias before the join committed and saved its relation after it
+        insertRelation(4, 1, 3);
+
+        //the graph follows the join before the member is rewritten
+        final GraphStore loaded = new GraphStore(jdbcTemplate, 1000);
+        loaded.load();
+        assertJoinedGraph(loaded.getGraph(), newObjectId);
+
+        final long end = System.currentTimeMillis() + TIMEOUT;
+        while (jdbcTemplate.queryForObject("SELECT COUNT(*) FROM IsInRelation WHERE id_object = 1", Integer.class) > 0) {
+            if (System.currentTimeMillis() > end) {
+                throw new AssertionError("Late member not rewritten");
+            }
+            Thread.sleep(10);
+        }
+        assertEquals(Integer.valueOf(newObjectId),
+                jdbcTemplate.queryForObject("SELECT id_object FROM IsInRelation WHERE id_relation = 4 AND order_in_relation = 0", Integer.class));
+    }
+
+    @Test
+    public void testMembersOfJoinedObjectsAreRewrittenAtStart() throws InterruptedException {
+        final int newObjectId = join(merger.submit(1, 2));
+        merger.stop();
+        insertRelation(4, 2, 3);
+
+        merger = createMerger();
+        merger.start();
+        assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject("SELECT COUNT(*) FROM IsInRelation WHERE id_object IN (1, 2)", Integer.class));
+        assertEquals(Integer.valueOf(newObjectId),
+                jdbcTemplate.queryForObject("SELECT id_object FROM IsInRelation WHERE id_relation = 4 AND order_in_relation = 0", Integer.class));
+    }
+
+    @Test
+    public void testUnfinishedJoinIsResumedAtStart() throws InterruptedException {
+        merger.stop();
+        //join submitted but not run before shutdown
+        jdbcTemplate.update("INSERT INTO Object (id_object, id_object_type) VALUES (4, 1)");
+        jdbcTemplate.update("INSERT INTO JoinedObjects (id_new_object, id_old_object1, id_old_object2) VALUES (4, 1, 2)");
+
+        merger = createMerger();
+        merger.start();
+        assertEquals(4, join(merger.getProgress(1)));
+        assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject("SELECT COUNT(*) FROM IsInRelation WHERE id_object IN (1, 2)", Integer.class));
+        assertEquals(4, AliasIndex.getObjectId(aliasIndex.resolve("alias 1")));
+    }
+
+    @Test
+    public void testFailedJobIsRetried() throws InterruptedException {
+        //no connection for the first transactions of the job
+        failures.set(2);
+        final int newObjectId = join(merger.submit(1, 2));
+
+        assertEquals(0, failures.get());
+        assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject("SELECT COUNT(*) FROM IsInRelation WHERE id_object IN (1, 2)", Integer.class));
+        assertEquals(newObjectId, AliasIndex.getObjectId(aliasIndex.resolve("alias 2")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testJoinedObjectCannotBeJoinedAgain() throws InterruptedException {
+        join(merger.submit(1, 2));
+        merger.submit(1, 3);
+    }
+
+    private ObjectMerger createMerger() {
+        final PlatformTransactionManager transactionManager = database.getTransactionManager();
+        //transactions of the merging thread fail while there are failures left
+        final PlatformTransactionManager failing = new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                if (Thread.currentThread().getName().equals("object-merge") && failures.get() > 0) {
+                    failures.decrementAndGet();
+                    throw new CannotCreateTransactionException("No connection");
+                }
+                return transactionManager.getTransaction(definition);
+            }
+
+            @Override
+            public void commit(TransactionStatus status) {
+                transactionManager.commit(status);
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+                transactionManager.rollback(status);
+            }
+        };
+        final ObjectMerger created = new ObjectMerger(jdbcTemplate, failing, new IdGenerator(jdbcTemplate), aliasIndex, 1, 500);
+        created.addListener(graphStore);
+        return created;
+    }
+
+    /**
+     * Waits until job is done.
+     * @return Returns id of the new object
+     */
+    private int join(MergeProgress progress) throws InterruptedException {
+        assertNotNull(progress);
+        final long end = System.currentTimeMillis() + TIMEOUT;
+        while (merger.getProgress(progress.getJobId()).getStatus() != MergeStatus.DONE) {
+            if (System.currentTimeMillis() > end) {
+                throw new AssertionError("Job " + progress.getJobId() + " not done");
+            }
+            Thread.sleep(10);
+        }
+        return progress.getNewObjectId();
+    }
+
+    private void insertRelation(int relationId, int objectId1, int objectId2) {
+        jdbcTemplate.update("INSERT INTO Relation (id_relation, id_relation_type) VALUES (?, 1)", relationId);
+        jdbcTemplate.update("INSERT INTO IsInRelation (id_is_in_relation, id_relation, id_object, order_in_relation) VALUES (?, ?, ?, 0)",
+                2 * relationId, relationId, objectId1);
+        jdbcTemplate.update("INSERT INTO IsInRelation (id_is_in_relation, id_relation, id_object, order_in_relation) VALUES (?, ?, ?, 1)",
+                2 * relationId + 1, relationId, objectId2);
+    }
+
+    /**
+     * Checks graph of the new object and the third object, the relation between the joined objects is left out.
+     */
+    private static void assertJoinedGraph(Graph graph, int newObjectId) {
+        assertEquals(2, graph.getObjectCount());
+        assertArrayEquals(new int[]{3}, graph.getNeighbours(newObjectId));
+        assertArrayEquals(new int[]{newObjectId}, graph.getNeighbours(3));
+        assertArrayEquals(new int[0], graph.getNeighbours(1));
+    }
+}
@@ -0,0 +1,209 @@
+package cz.cuni.mff.ufal.textan.server.graph;
+
+import cz.cuni.mff.ufal.textan.commons.GraphEdge;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of breadth-first queries of {@link Graph}.
+ */
+public class GraphTest {
+
+    @Test
+    public void testPathOnLine() {
+        final Graph graph = line(1, 2, 3, 4, 5);
+
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5}, graph.getShortestPath(1, 5, 10));
+        assertArrayEquals(new int[]{5, 4, 3, 2, 1}, graph.getShortestPath(5, 1, 10));
+        assertArrayEquals(new int[]{2, 3}, graph.getShortestPath(2, 3, 1));
+    }
+
+    @Test
+    public void testPathIsLimitedByHops() {
+        final Graph graph = line(1, 2, 3, 4, 5);
+
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5}, graph.getShortestPath(1, 5, 4));
+        assertArrayEquals(new int[0], graph.getShortestPath(1, 5, 3));
+        assertArrayEquals(new int[0], graph.getShortestPath(1, 2, 0));
+    }
+
+    @Test
+    public void testTrivialAndMissingPaths() {
+        final Graph graph = edges(1, 2).addObject(3).build();
+
+        assertArrayEquals(new int[]{1}, graph.getShortestPath(1, 1, 0));
+        assertArrayEquals(new int[0], graph.getShortestPath(1, 3, 10));
+        assertArrayEquals(new int[0], graph.getShortestPath(1, 9, 10));
+        assertArrayEquals(new int[0], graph.getShortestPath(9, 1, 10));
+        assertArrayEquals(new int[0], Graph.EMPTY.getShortestPath(1, 2, 10));
+    }
+
+    @Test
+    public void testSearchesMeetInTheMiddle() {
+        //both frontiers have one object, they are expanded alternately and meet at 3
+        final Graph graph = line(1, 2, 3, 4);
+
+        assertArrayEquals(new int[]{1, 2, 3, 4}, graph.getShortestPath(1, 4, 3));
+    }
+
+    @Test
+    public void testSmallerFrontierIsExpanded() {
+        //the first object has many neighbours, so the search from the last object goes further and meets at 13
+        final Graph graph = edges(1, 10, 1, 11, 1, 12, 1, 13, 13, 20, 20, 30).build();
+
+        assertArrayEquals(new int[]{1, 13, 20, 30}, graph.getShortestPath(1, 30, 3));
+        assertArrayEquals(new int[]{30, 20, 13, 1}, graph.getShortestPath(30, 1, 3));
+        assertArrayEquals(new int[0], graph.getShortestPath(1, 30, 2));
+    }
+
+    @Test
+    public void testShortcutIsPreferred() {
+        final Graph graph = edges(1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 1, 7, 7, 6).build();
+
+        assertArrayEquals(new int[]{1, 7, 6}, graph.getShortestPath(1, 6, 10));
+    }
+
+    @Test
+    public void testPathsOfRandomGraphsAreShortest() {
+        final Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            final int objects = 2 + random.nextInt(40);
+            final int edges = random.nextInt(3 * objects);
+            final GraphBuilder builder = new GraphBuilder();
+            for (int object = 0; object < objects; object++) {
+                builder.addObject(object * 3);
+            }
+            for (int edge = 0; edge < edges; edge++) {
+                builder.addEdge(3 * random.nextInt(objects), 3 * random.nextInt(objects), edge);
+            }
+            final Graph graph = builder.build();
+
+            for (int query = 0; query < 10; query++) {
+                final int from = 3 * random.nextInt(objects);
+                final int to = 3 * random.nextInt(objects);
+                final int maxHops = random.nextInt(8);
+                final int distance = distance(graph, from, to);
+                final int[] path = graph.getShortestPath(from, to, maxHops);
+                if (distance < 0 || distance > maxHops) {
+                    assertEquals(from == to ? 1 : 0, path.length);
+                } else {
+                    assertEquals(distance + 1, path.length);
+                    assertEquals(from, path[0]);
+                    assertEquals(to, path[path.length - 1]);
+                    for (int i = 1; i < path.length; i++) {
+                        assertTrue(Arrays.binarySearch(graph.getNeighbours(path[i - 1]), path[i]) >= 0);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNeighbours() {
+        final Graph graph = edges(1, 2, 4, 1)
+                .addObject(3)
+                .addRelation(100, new int[]{1, 2, 3}, 3)
+                .build();
+
+        assertArrayEquals(new int[]{2, 3, 4}, graph.getNeighbours(1));
+        assertArrayEquals(new int[]{1}, graph.getNeighbours(4));
+        assertArrayEquals(new int[0], graph.getNeighbours(5));
+    }
+
+    @Test
+    public void testNeighbourhoodReportsEachEdgeOnce() {
+        //triangle 1-2-3 with a tail 3-4-5
+        final Graph graph = edges(1, 2, 2, 3, 3, 1, 3, 4, 4, 5).build();
+
+        final Set<Integer> relations = new HashSet<>();
+        for (GraphEdge edge : graph.getNeighbourhood(1, 10, 100)) {
+            assertTrue("Edge reported twice", relations.add(edge.getRelationId()));
+        }
+        assertEquals(new HashSet<>(Arrays.asList(1, 2, 3, 4, 5)), relations);
+
+        //edges of objects closer than the hops, they lead to objects at most the hops away
+        assertEquals(new HashSet<>(Arrays.asList(1, 3)), relations(graph.getNeighbourhood(1, 1, 100)));
+        assertEquals(new HashSet<>(Arrays.asList(1, 2, 3, 4)), relations(graph.getNeighbourhood(1, 2, 100)));
+
+        final List<GraphEdge> limited = graph.getNeighbourhood(1, 10, 2);
+        assertEquals(2, limited.size());
+        assertEquals(0, graph.getNeighbourhood(1, 0, 100).size());
+        assertEquals(0, graph.getNeighbourhood(9, 2, 100).size());
+    }
+
+    @Test
+    public void testEdgesOfUnknownObjectsAreDropped() {
+        final Graph graph = new GraphBuilder().addObject(1).addObject(2).addEdge(1, 2, 1).addEdge(2, 3, 2).build();
+
+        assertEquals(2, graph.getObjectCount());
+        assertEquals(2, graph.getEdgeCount());
+        assertArrayEquals(new int[]{1}, graph.getNeighbours(2));
+    }
+
+    private static Set<Integer> relations(List<GraphEdge> edges) {
+        final Set<Integer> relations = new HashSet<>();
+        for (GraphEdge edge : edges) {
+            relations.add(edge.getRelationId());
+        }
+        return relations;
+    }
+
+    private static Graph line(int... objects) {
+        final GraphBuilder builder = new GraphBuilder();
+        for (int i = 0; i < objects.length; i++) {
+            builder.addObject(objects[i]);
+            if (i > 0) {
+                builder.addEdge(objects[i - 1], objects[i], i);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates builder of objects connected by edges numbered from 1.
+     * @param pairs The pairs of ids of connected objects
+     */
+    private static GraphBuilder edges(int... pairs) {
+        final GraphBuilder builder = new GraphBuilder();
+        for (int i = 0; i < pairs.length; i += 2) {
+            builder.addObject(pairs[i]).addObject(pairs[i + 1]).addEdge(pairs[i], pairs[i + 1], i / 2 + 1);
+        }
+        return builder;
+    }
+
+    /**
+     * Computes distance by plain breadth-first search.
+     */
+    private static int distance(Graph graph, int from, int to) {
+        final Map<Integer, Integer> distances = new HashMap<>();
+        final Queue<Integer> queue = new ArrayDeque<>();
+        distances.put(from, 0);
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            final int object = queue.poll();
+            if (object == to) {
+                return distances.get(object);
+            }
+            for (int neighbour : graph.getNeighbours(object)) {
+                if (!distances.containsKey(neighbour)) {
+                    distances.put(neighbour, distances.get(object) + 1);
+                    queue.add(neighbour);
+                }
+            }
+        }
+        return -1;
+    }
+}
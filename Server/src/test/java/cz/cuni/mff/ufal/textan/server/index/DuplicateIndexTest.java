@@ -0,0 +1,235 @@
+package cz.cuni.mff.ufal.textan.server.index;
+
+import cz.cuni.mff.ufal.textan.commons.Entity;
+import cz.cuni.mff.ufal.textan.server.data.AnalysedDocument;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of {@link DuplicateIndex} finding exact and near duplicates and of signatures of texts.
+ */
+public class DuplicateIndexTest {
+
+    private static final String TEXT = "Policie v úterý večer zadržela v Praze muže, který byl podezřelý z vloupání do několika "
+            + "rodinných domů na okraji města. Při domovní prohlídce u něj policisté našli nářadí, šperky a elektroniku, "
+            + "kterou majitelé domů později poznali jako svou. Muž se k činům přiznal a hrozí mu až pět let vězení.";
+
+    /** The text with one word replaced. */
+    private static final String NEAR = TEXT.replace("úterý", "středu");
+
+    private static final String OTHER = "Hasiči ve čtvrtek odpoledne vyjížděli k požáru skladu dřeva v Kolíně, oheň se jim "
+            + "podařilo dostat pod kontrolu po třech hodinách a nikdo nebyl zraněn, škoda byla vyčíslena na dva miliony korun.";
+
+    @Test
+    public void testExactDuplicateIsFound() {
+        final DuplicateIndex index = new DuplicateIndex(null, 6);
+        save(index, 1, TEXT);
+        save(index, 2, OTHER);
+
+        assertEquals(1, index.find(DuplicateIndex.sign(TEXT)));
+        assertEquals(2, index.find(DuplicateIndex.sign(OTHER)));
+        assertTrue(index.isExactDuplicate(DuplicateIndex.sign(TEXT)));
+        assertFalse(index.isExactDuplicate(DuplicateIndex.sign(NEAR)));
+    }
+
+    @Test
+    public void testNearDuplicateIsFound() {
+        final DuplicateIndex index = new DuplicateIndex(null, 6);
+        save(index, 1, TEXT);
+        save(index, 2, OTHER);
+
+        assertEquals(1, index.find(DuplicateIndex.sign(NEAR)));
+        assertTrue(index.isDuplicate(DuplicateIndex.sign(TEXT), DuplicateIndex.sign(NEAR)));
+        assertFalse(index.isDuplicate(DuplicateIndex.sign(TEXT), DuplicateIndex.sign(OTHER)));
+        assertEquals(-1, index.find(DuplicateIndex.sign(OTHER.replace("Kolíně", "Nymburce") + " " + TEXT)));
+    }
+
+    @Test
+    public void testDistanceIsLimited() {
+        final long distance = Long.bitCount(DuplicateIndex.sign(TEXT).simHash ^ DuplicateIndex.sign(NEAR).simHash);
+        assertTrue(distance > 0);
+
+        final DuplicateIndex within = new DuplicateIndex(null, (int) distance);
+        save(within, 1, TEXT);
+        assertEquals(1, within.find(DuplicateIndex.sign(NEAR)));
+
+        final DuplicateIndex beyond = new DuplicateIndex(null, (int) distance - 1);
+        save(beyond, 1, TEXT);
+        assertEquals(-1, beyond.find(DuplicateIndex.sign(NEAR)));
+    }
+
+    @Test
+    public void testNegativeDistanceFindsOnlyExactDuplicates() {
+        final DuplicateIndex index = new DuplicateIndex(null, -1);
+        save(index, 1, TEXT);
+
+        assertEquals(1, index.find(DuplicateIndex.sign(TEXT)));
+        assertEquals(-1, index.find(DuplicateIndex.sign(NEAR)));
+        assertFalse(index.isDuplicate(DuplicateIndex.sign(TEXT), DuplicateIndex.sign(NEAR)));
+        assertEquals(-1, index.find(signature(1, DuplicateIndex.sign(TEXT).simHash)));
+    }
+
+    @Test
+    public void testShortTextsAreFoundOnlyAsExactDuplicates() {
+        //nine words make the minimal eight shingles
+        final String shortest = "jedna dva tři čtyři pět šest sedm osm devět";
+        assertTrue(DuplicateIndex.sign(shortest).similar);
+        final String tooShort = "jedna dva tři čtyři pět šest sedm osm";
+        assertFalse(DuplicateIndex.sign(tooShort).similar);
+        assertFalse(DuplicateIndex.sign("").similar);
+
+        final DuplicateIndex index = new DuplicateIndex(null, 63);
+        save(index, 1, tooShort);
+        assertEquals(1, index.find(DuplicateIndex.sign(tooShort)));
+        assertEquals(-1, index.find(DuplicateIndex.sign("jedna dva tři čtyři pět šest sedm devět")));
+        assertEquals(-1, index.find(signature(2, DuplicateIndex.sign(tooShort).simHash)));
+        assertFalse(index.isDuplicate(DuplicateIndex.sign(tooShort), DuplicateIndex.sign("jedna dva tři čtyři pět šest sedm devět")));
+    }
+
+    @Test
+    public void testBandsFindAllSignaturesWithinDistance() {
+        final Random random = new Random(42);
+        for (int maxDistance : new int[]{0, 1, 2, 3, 5, 7, 10, 31, 63, 100}) {
+            final int limit = Math.min(maxDistance, 63);
+            final DuplicateIndex index = new DuplicateIndex(null, maxDistance);
+            final long simHash = random.nextLong();
+            index.documentSaved(1, new DuplicateIndex.SignedDocument(document(""), signature(1, simHash)),
+                    new int[0], new int[0]);
+
+            for (int distance = 0; distance <= Math.min(limit + 2, 64); distance++) {
+                for (int attempt = 0; attempt < 20; attempt++) {
+                    final long flipped = simHash ^ randomBits(random, distance);
+                    final int expected = distance <= limit ? 1 : -1;
+                    assertEquals("distance " + distance + " of " + maxDistance, expected, index.find(signature(2, flipped)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDifferencesInOneBandAreFound() {
+        //four bands of 16 bits, the other bands are equal
+        final DuplicateIndex index = new DuplicateIndex(null, 3);
+        index.documentSaved(1, new DuplicateIndex.SignedDocument(document(""), signature(1, 0L)), new int[0], new int[0]);
+
+        assertEquals(1, index.find(signature(2, 0x7L)));
+        assertEquals(1, index.find(signature(2, 0x7L << 61)));
+        assertEquals(1, index.find(signature(2, 1L | 1L << 16 | 1L << 32)));
+        //one bit in each band
+        assertEquals(-1, index.find(signature(2, 1L | 1L << 16 | 1L << 32 | 1L << 48)));
+        assertEquals(-1, index.find(signature(2, 0xFL)));
+    }
+
+    @Test
+    public void testNearestDuplicateWithLowestIdIsFound() {
+        final DuplicateIndex index = new DuplicateIndex(null, 5);
+        saveSignature(index, 9, 0x3L);
+        saveSignature(index, 5, 0x3L << 20);
+        saveSignature(index, 3, 0x3L << 40);
+        saveSignature(index, 7, 0x1L << 60);
+
+        //distance 1 from 7 beats distance 2 from the others
+        assertEquals(7, index.find(signature(1, 0x0L)));
+        //distance 2 from 9 and 5, the lower id wins regardless of the order of saving
+        assertEquals(5, index.find(signature(1, 0x1L | 0x1L << 20)));
+        //exact duplicate is preferred to a nearer document
+        saveSignature(index, 2, 0x7L << 30);
+        assertEquals(2, index.find(signature(2, 0x0L)));
+    }
+
+    @Test
+    public void testFirstDocumentOfExactDuplicatesIsFound() {
+        final DuplicateIndex index = new DuplicateIndex(null, 6);
+        save(index, 4, TEXT);
+        save(index, 2, TEXT);
+
+        assertEquals(4, index.find(DuplicateIndex.sign(TEXT)));
+    }
+
+    @Test
+    public void testSignatureOfStreamEqualsSignatureOfText() throws IOException {
+        final StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            large.append(TEXT).append(" 😀 ").append(i).append('\n');
+        }
+        for (String text : new String[]{"", "slovo", TEXT, NEAR, OTHER, "Žluťoučký 😀😀 kůň úpěl 𝔘𝔫𝔦 ďábelské ódy", large.toString()}) {
+            final StringBuilder read = new StringBuilder();
+            final DuplicateIndex.Signature streamed = DuplicateIndex.sign(
+                    new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), read);
+            final DuplicateIndex.Signature signed = DuplicateIndex.sign(text);
+
+            assertEquals(text, read.toString());
+            assertArrayEquals(signed.getHash(), streamed.getHash());
+            assertEquals(signed.simHash, streamed.simHash);
+            assertEquals(signed.similar, streamed.similar);
+            assertTrue(DuplicateIndex.isExactDuplicate(signed, streamed));
+        }
+    }
+
+    @Test
+    public void testMalformedStreamIsRejected() throws IOException {
+        final byte[][] malformed = {
+                {'a', ' ', (byte) 0xC3, '(', ' ', 'b'},
+                {'a', ' ', (byte) 0xFF, ' ', 'b'},
+                //lone surrogate encoded in three bytes
+                {'a', (byte) 0xED, (byte) 0xA0, (byte) 0x80},
+                //truncated at the end
+                {'a', ' ', (byte) 0xE2, (byte) 0x82},
+        };
+        for (byte[] bytes : malformed) {
+            try {
+                DuplicateIndex.sign(new ByteArrayInputStream(bytes), new StringBuilder());
+                fail("Malformed input accepted: " + Arrays.toString(bytes));
+            } catch (CharacterCodingException e) {
+                //expected, the decoded text would not match the hash of the bytes
+            }
+        }
+    }
+
+    private static void save(DuplicateIndex index, int documentId, String text) {
+        index.documentSaved(documentId, document(text), new int[0], new int[0]);
+    }
+
+    private static void saveSignature(DuplicateIndex index, int documentId, long simHash) {
+        index.documentSaved(documentId, new DuplicateIndex.SignedDocument(document(""), signature(documentId, simHash)),
+                new int[0], new int[0]);
+    }
+
+    private static AnalysedDocument document(String text) {
+        return new AnalysedDocument(text, Collections.<Entity>emptyList());
+    }
+
+    /**
+     * Creates signature of long text with given SimHash, texts of different numbers are not equal.
+     */
+    private static DuplicateIndex.Signature signature(int number, long simHash) {
+        final byte[] hash = new byte[32];
+        hash[0] = (byte) number;
+        hash[1] = (byte) (number >>> 8);
+        return new DuplicateIndex.Signature(hash, simHash, true);
+    }
+
+    /**
+     * Creates number with given count of random bits set.
+     */
+    private static long randomBits(Random random, int count) {
+        long bits = 0;
+        while (Long.bitCount(bits) < count) {
+            bits |= 1L << random.nextInt(64);
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,207 @@
+package cz.cuni.mff.ufal.textan.server.index;
+
+import cz.cuni.mff.ufal.textan.commons.Entity;
+import cz.cuni.mff.ufal.textan.commons.SearchHit;
+import cz.cuni.mff.ufal.textan.server.TestDatabase;
+import cz.cuni.mff.ufal.textan.server.data.AliasIndex;
+import cz.cuni.mff.ufal.textan.server.data.AnalysedDocument;
+import cz.cuni.mff.ufal.textan.server.data.DocumentStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of BM25 ranking of {@link InvertedIndex}.
+ */
+public class InvertedIndexTest {
+
+    @Rule
+    public TestDatabase database = new TestDatabase();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private JdbcTemplate jdbcTemplate;
+
+    private AliasIndex aliasIndex;
+
+    private DocumentStore documentStore;
+
+    private InvertedIndex index;
+
+    @Before
+    public void setUp() throws IOException {
+        jdbcTemplate = database.getJdbcTemplate();
+        jdbcTemplate.update("INSERT INTO ObjectType (id_object_type, name) VALUES (1, 'person')");
+        jdbcTemplate.update("INSERT INTO Object (id_object, id_object_type) VALUES (7, 1)");
+        jdbcTemplate.update("INSERT INTO Alias (id_alias, id_object, alias, normalized) VALUES (1, 7, 'Karel Novák', 'karel novak')");
+
+        aliasIndex = new AliasIndex(jdbcTemplate, 100);
+        aliasIndex.load();
+        documentStore = new DocumentStore(jdbcTemplate, folder.getRoot().getPath(), 1 << 16, false);
+        documentStore.open();
+        index = new InvertedIndex(jdbcTemplate, aliasIndex, documentStore);
+        index.rebuild();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        documentStore.close();
+    }
+
+    @Test
+    public void testScoreFollowsBm25() {
+        save(1, "alfa beta gama delta");
+        save(2, "beta gama delta epsilon");
+
+        final List<SearchHit> hits = index.search("alfa", 10);
+        assertEquals(1, hits.size());
+        //one of two documents contains the term, both have the average length
+        final double idf = Math.log(1 + (2 - 1 + 0.5) / (1 + 0.5));
+        final double expected = idf * 1 * (1.2 + 1) / (1 + 1.2);
+        assertEquals(expected, hits.get(0).getScore(), 1e-5);
+    }
+
+    @Test
+    public void testMoreOccurrencesRankHigher() {
+        save(1, "alfa beta gama delta");
+        save(2, "alfa alfa alfa delta");
+        save(3, "beta gama delta epsilon");
+
+        assertRanking(index.search("alfa", 10), 2, 1);
+    }
+
+    @Test
+    public void testShorterDocumentRanksHigher() {
+        save(1, "alfa beta gama delta epsilon zeta eta theta iota kappa");
+        save(2, "alfa beta");
+        save(3, "beta gama delta epsilon");
+
+        assertRanking(index.search("alfa", 10), 2, 1);
+    }
+
+    @Test
+    public void testRareTermWeighsMore() {
+        save(1, "common rare");
+        save(2, "common common");
+        save(3, "common other");
+        save(4, "common other");
+
+        final List<SearchHit> hits = index.search("common rare", 10);
+        assertEquals(1, hits.get(0).getDocumentId());
+        assertEquals(4, hits.size());
+        assertDecreasing(hits);
+    }
+
+    @Test
+    public void testQueryIsNormalized() {
+        save(1, "Zadržen byl ŘIDIČ vozidla");
+        save(2, "bez shody");
+
+        assertRanking(index.search("ridic", 10), 1);
+        assertRanking(index.search("Řidič", 10), 1);
+    }
+
+    @Test
+    public void testLimitKeepsBestHits() {
+        for (int document = 1; document <= 20; document++) {
+            final StringBuilder text = new StringBuilder();
+            for (int i = 0; i < document; i++) {
+                text.append("alfa ");
+            }
+            text.append("beta gama delta epsilon zeta eta theta iota kappa lambda mi ni xi omikron pi rho sigma tau");
+            save(document, text.toString());
+        }
+
+        final List<SearchHit> hits = index.search("alfa", 3);
+        assertRanking(hits, 20, 19, 18);
+        assertEquals(Collections.emptyList(), index.search("alfa", 0));
+        assertEquals(Collections.emptyList(), index.search("missing", 3));
+    }
+
+    @Test
+    public void testAliasQueryFindsMentionsOfObject() {
+        save(1, "Policie zadržela muže jménem K. N.", new Entity(27, 34, "person"), 7);
+        save(2, "Karel přišel a Novák odešel");
+        save(3, "nic");
+
+        final List<SearchHit> hits = index.search("Karel Novák", 10);
+        final List<Integer> documents = new ArrayList<>();
+        for (SearchHit hit : hits) {
+            documents.add(hit.getDocumentId());
+        }
+        assertTrue(documents.contains(1));
+        assertTrue(documents.contains(2));
+        assertEquals(2, hits.size());
+    }
+
+    @Test
+    public void testJoinedObjectsAreSearchedByNewObject() {
+        save(1, "muž K. N.", new Entity(4, 9, "person"), 7);
+        index.objectsJoined(8, new int[]{7});
+        //saved after the join, its entity still refers to the joined object
+        save(2, "pan K. N.", new Entity(4, 9, "person"), 7);
+        aliasIndex.add("Pan Novák", 2, 8);
+
+        final List<SearchHit> hits = index.search("pan novák", 10);
+        final List<Integer> documents = new ArrayList<>();
+        for (SearchHit hit : hits) {
+            documents.add(hit.getDocumentId());
+        }
+        Collections.sort(documents);
+        assertEquals(Arrays.asList(1, 2), documents);
+    }
+
+    @Test
+    public void testSnippetSurroundsFirstMatch() {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            text.append("slovo ");
+        }
+        final int position = text.length();
+        text.append("hledane");
+        for (int i = 0; i < 50; i++) {
+            text.append(" slovo");
+        }
+        save(1, text.toString());
+
+        final SearchHit hit = index.search("hledané", 1).get(0);
+        assertEquals(position - 80, hit.getSnippetStart());
+        assertEquals(position + 80, hit.getSnippetEnd());
+    }
+
+    private void save(int documentId, String text) {
+        index.documentSaved(documentId, new AnalysedDocument(text, Collections.<Entity>emptyList()), new int[0], new int[0]);
+    }
+
+    private void save(int documentId, String text, Entity entity, int objectId) {
+        index.documentSaved(documentId, new AnalysedDocument(text, Collections.singletonList(entity)),
+                new int[]{objectId}, new int[0]);
+    }
+
+    private static void assertRanking(List<SearchHit> hits, int... documents) {
+        assertEquals(documents.length, hits.size());
+        for (int i = 0; i < documents.length; i++) {
+            assertEquals(documents[i], hits.get(i).getDocumentId());
+        }
+        assertDecreasing(hits);
+    }
+
+    private static void assertDecreasing(List<SearchHit> hits) {
+        for (int i = 1; i < hits.size(); i++) {
+            assertTrue(hits.get(i - 1).getScore() >= hits.get(i).getScore());
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package cz.cuni.mff.ufal.textan.server.index;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link PostingList} encoding, out-of-order insertion and merging.
+ */
+public class PostingListTest {
+
+    @Test
+    public void testEmptyList() {
+        final PostingList list = new PostingList();
+        assertFalse(list.cursor().next());
+        assertEquals(0, list.getDocumentCount());
+        assertEquals(0, list.getByteSize());
+    }
+
+    @Test
+    public void testAppendedPostingsRoundTrip() {
+        final PostingList list = new PostingList();
+        final Map<Integer, int[]> expected = new TreeMap<>();
+        add(list, expected, 1, 0);
+        add(list, expected, 2, 5, 17, 300);
+        //numbers taking more bytes of variable-length encoding
+        add(list, expected, 200, 127, 128, 16383, 16384, 2097152);
+        add(list, expected, Integer.MAX_VALUE, Integer.MAX_VALUE - 1, Integer.MAX_VALUE);
+
+        assertPostings(expected, list);
+        assertEquals(4, list.getDocumentCount());
+    }
+
+    @Test
+    public void testSmallNumbersTakeOneByte() {
+        final PostingList list = new PostingList();
+        list.add(1, new int[]{3, 10}, 2);
+        list.add(5, new int[]{127}, 1);
+        //document delta, count and position deltas of each posting
+        assertEquals(4 + 3, list.getByteSize());
+    }
+
+    @Test
+    public void testOutOfOrderDocumentsAreInserted() {
+        final PostingList list = new PostingList();
+        final Map<Integer, int[]> expected = new TreeMap<>();
+        add(list, expected, 10, 1);
+        add(list, expected, 30, 2, 3);
+        add(list, expected, 20, 4);
+        add(list, expected, 1, 5, 6, 7);
+        add(list, expected, 40, 8);
+
+        assertPostings(expected, list);
+        assertEquals(5, list.getDocumentCount());
+    }
+
+    @Test
+    public void testReAddedDocumentIsReplaced() {
+        final PostingList list = new PostingList();
+        final Map<Integer, int[]> expected = new TreeMap<>();
+        add(list, expected, 10, 1);
+        add(list, expected, 20, 2);
+        add(list, expected, 10, 3, 4);
+        add(list, expected, 20, 5);
+
+        assertPostings(expected, list);
+        assertEquals(2, list.getDocumentCount());
+    }
+
+    @Test
+    public void testRandomPostingsRoundTrip() {
+        final Random random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            final PostingList list = new PostingList();
+            final Map<Integer, int[]> expected = new TreeMap<>();
+            final List<Integer> documents = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                documents.add(1 + random.nextInt(1000000));
+            }
+            //mostly increasing ids with some out of order
+            Collections.sort(documents);
+            for (int i = 0; i < 10; i++) {
+                Collections.swap(documents, random.nextInt(documents.size()), random.nextInt(documents.size()));
+            }
+            for (int document : documents) {
+                add(list, expected, document, randomPositions(random));
+            }
+            assertPostings(expected, list);
+        }
+    }
+
+    @Test
+    public void testMergeDisjointAndSharedDocuments() {
+        final PostingList first = new PostingList();
+        final PostingList second = new PostingList();
+        first.add(1, new int[]{1, 9}, 2);
+        first.add(3, new int[]{2}, 1);
+        first.add(7, new int[]{4}, 1);
+        second.add(2, new int[]{3}, 1);
+        second.add(3, new int[]{1, 5}, 2);
+        second.add(8, new int[]{6}, 1);
+
+        final Map<Integer, int[]> expected = new TreeMap<>();
+        expected.put(1, new int[]{1, 9});
+        expected.put(2, new int[]{3});
+        expected.put(3, new int[]{1, 2, 5});
+        expected.put(7, new int[]{4});
+        expected.put(8, new int[]{6});
+        final PostingList merged = PostingList.merge(first, second);
+        assertPostings(expected, merged);
+        assertEquals(5, merged.getDocumentCount());
+
+        assertPostings(expected, PostingList.merge(second, first));
+    }
+
+    @Test
+    public void testMergeWithEmptyList() {
+        final PostingList list = new PostingList();
+        list.add(4, new int[]{1, 2}, 2);
+        final Map<Integer, int[]> expected = new TreeMap<>();
+        expected.put(4, new int[]{1, 2});
+
+        assertPostings(expected, PostingList.merge(list, new PostingList()));
+        assertPostings(expected, PostingList.merge(new PostingList(), list));
+    }
+
+    @Test
+    public void testCursorDoesNotSeeLaterDocuments() {
+        final PostingList list = new PostingList();
+        list.add(1, new int[]{1}, 1);
+        final PostingList.Cursor cursor = list.cursor();
+        list.add(2, new int[]{2}, 1);
+
+        assertTrue(cursor.next());
+        assertEquals(1, cursor.getDocument());
+        assertFalse(cursor.next());
+    }
+
+    private static void add(PostingList list, Map<Integer, int[]> expected, int document, int... positions) {
+        //only the used part of the array is encoded
+        final int[] padded = Arrays.copyOf(positions, positions.length + 3);
+        list.add(document, padded, positions.length);
+        expected.put(document, positions);
+    }
+
+    private static int[] randomPositions(Random random) {
+        final TreeSet<Integer> positions = new TreeSet<>();
+        final int count = 1 + random.nextInt(random.nextBoolean() ? 3 : 50);
+        while (positions.size() < count) {
+            positions.add(random.nextInt(random.nextBoolean() ? 100 : 10000000));
+        }
+        final int[] result = new int[count];
+        int i = 0;
+        for (int position : positions) {
+            result[i++] = position;
+        }
+        return result;
+    }
+
+    private static void assertPostings(Map<Integer, int[]> expected, PostingList list) {
+        final PostingList.Cursor cursor = list.cursor();
+        for (Map.Entry<Integer, int[]> entry : expected.entrySet()) {
+            assertTrue("Missing document " + entry.getKey(), cursor.next());
+            assertEquals(entry.getKey().intValue(), cursor.getDocument());
+            assertEquals(entry.getValue().length, cursor.getFrequency());
+            assertArrayEquals(entry.getValue(), Arrays.copyOf(cursor.getPositions(), cursor.getFrequency()));
+        }
+        assertFalse(cursor.next());
+        assertEquals(expected.size(), list.getDocumentCount());
+    }
+}